@@ -0,0 +1,56 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import com.nonninz.robomodel.storage.FileStorageProvider;
+import com.nonninz.robomodel.storage.JvmContext;
+import com.nonninz.robomodel.storage.Storage;
+
+/**
+ * A Context whose databases are files in a temporary directory. Creating it installs their storage provider,
+ * {@link #close()} uninstalls it and deletes the files.
+ */
+class BenchContext extends JvmContext {
+  private final File mDirectory;
+  private final FileStorageProvider mProvider;
+
+  BenchContext() {
+    super("com.nonninz.robomodel.benchmarks");
+    try {
+      mDirectory = Files.createTempDirectory("robomodel-bench").toFile();
+    } catch (final IOException e) {
+      throw new IllegalStateException(e);
+    }
+    mProvider = new FileStorageProvider(mDirectory);
+    Storage.setProvider(mProvider);
+  }
+
+  void close() {
+    Storage.setProvider(null);
+    mProvider.close();
+    final File[] files = mDirectory.listFiles();
+    if (files != null) {
+      for (final File file : files) {
+        file.delete();
+      }
+    }
+    mDirectory.delete();
+  }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixtures shared by the benchmarks
+ */
+final class Fixtures {
+  private Fixtures() {
+  }
+
+  /**
+   * @param shape
+   *          "narrow" for 4 columns, "wide" for 24
+   */
+  static Class<? extends RoboModel> modelClass(String shape) {
+    if ("narrow".equals(shape)) {
+      return NarrowModel.class;
+    } else if ("wide".equals(shape)) {
+      return WideModel.class;
+    }
+    throw new IllegalArgumentException("Unknown shape " + shape);
+  }
+
+  /**
+   * Saves count new models in a single transaction
+   */
+  static <T extends RoboModel> List<T> populate(BenchContext context, RoboManager<T> manager, int count) {
+    final List<T> models = new ArrayList<T>(count);
+    for (int i = 0; i < count; i++) {
+      models.add(manager.create());
+    }
+    new DatabaseManager(context).saveTrees(manager.getDatabaseName(), models);
+    return models;
+  }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding and decoding of JSON columns, alone and as part of a save
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonFieldBenchmark {
+  @Param({ "10", "1000" })
+  public int size;
+
+  private BenchContext mContext;
+  private JsonModel mModel;
+  private Field mField;
+  private String mJson;
+
+  @Setup(Level.Trial)
+  public void setUp() throws NoSuchFieldException {
+    mContext = new BenchContext();
+    mModel = RoboManager.get(mContext, JsonModel.class).create();
+    mModel.fill(size);
+    mModel.save();
+    mField = JsonModel.class.getField("samples");
+    mJson = JsonAdapters.write(mField, mModel.samples);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    mContext.close();
+  }
+
+  @Benchmark
+  public String encode() {
+    return JsonAdapters.write(mField, mModel.samples);
+  }
+
+  @Benchmark
+  public Object decode() {
+    return JsonAdapters.read(mField, mJson);
+  }
+
+  @Benchmark
+  public JsonModel save() {
+    mModel.save();
+    return mModel;
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.Context;
+
+import com.google.gson.annotations.Expose;
+
+/**
+ * A model with JSON columns of configurable size
+ */
+public class JsonModel extends RoboModel {
+  @Expose
+  public String name = "json";
+  @Expose
+  public List<Double> samples = new ArrayList<Double>();
+  @Expose
+  public Map<String, String> attributes = new HashMap<String, String>();
+
+  JsonModel(Context context) {
+    super(context);
+  }
+
+  void fill(int size) {
+    samples.clear();
+    attributes.clear();
+    for (int i = 0; i < size; i++) {
+      samples.add(i * 1.5);
+      attributes.put("key" + i, "value" + i);
+    }
+  }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import android.content.Context;
+
+import com.google.gson.annotations.Expose;
+import com.nonninz.robomodel.annotations.BelongsTo;
+
+/**
+ * The child of a one to many relationship
+ */
+public class LineItemModel extends RoboModel {
+  @BelongsTo(OrderModel.class)
+  public OrderModel owner;
+  @Expose
+  public String product = "product";
+  @Expose
+  public int quantity = 1;
+  @Expose
+  public double price = 9.99;
+
+  LineItemModel(Context context) {
+    super(context);
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nonninz.robomodel.exceptions.InstanceNotFoundException;
+
+/**
+ * Loading models by id and by query, from tables of different sizes, on one thread and in parallel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBenchmark {
+  @Param({ "narrow", "wide" })
+  public String shape;
+
+  @Param({ "100", "1000" })
+  public int rows;
+
+  private BenchContext mContext;
+  private RoboManager<? extends RoboModel> mManager;
+  private RoboManager<? extends RoboModel> mParallelManager;
+  private RoboModel mModel;
+  private String[] mHalf;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    mContext = new BenchContext();
+    mManager = RoboManager.get(mContext, Fixtures.modelClass(shape));
+    final List<? extends RoboModel> models = Fixtures.populate(mContext, mManager, rows);
+    mModel = models.get(rows / 2);
+    mHalf = new String[] { String.valueOf(mModel.getId()) };
+    mParallelManager = RoboManager.get(mContext, Fixtures.modelClass(shape));
+    mParallelManager.enableParallelLoading(0, null);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    mContext.close();
+  }
+
+  @Benchmark
+  public RoboModel reload() throws InstanceNotFoundException {
+    mModel.reload();
+    return mModel;
+  }
+
+  @Benchmark
+  public RoboModel find() throws InstanceNotFoundException {
+    return mManager.find(mModel.getId());
+  }
+
+  @Benchmark
+  public List<? extends RoboModel> all() {
+    return mManager.all();
+  }
+
+  @Benchmark
+  public List<? extends RoboModel> allParallel() {
+    return mParallelManager.all();
+  }
+
+  @Benchmark
+  public List<? extends RoboModel> where() {
+    return mManager.where("_id <= ?", mHalf);
+  }
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import android.content.Context;
+
+import com.google.gson.annotations.Expose;
+
+/**
+ * A model with 4 columns
+ */
+public class NarrowModel extends RoboModel {
+  @Expose
+  public String name = "narrow";
+  @Expose
+  public int count = 42;
+  @Expose
+  public long timestamp = 1325376000000L;
+  @Expose
+  public double value = 42.4242;
+
+  NarrowModel(Context context) {
+    super(context);
+  }
+}
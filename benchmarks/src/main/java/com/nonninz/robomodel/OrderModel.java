@@ -0,0 +1,39 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+
+import com.google.gson.annotations.Expose;
+import com.nonninz.robomodel.annotations.HasMany;
+
+/**
+ * The parent of a one to many relationship
+ */
+public class OrderModel extends RoboModel {
+  @Expose
+  public String customer = "customer";
+  @Expose
+  @HasMany(LineItemModel.class)
+  public List<LineItemModel> items = new ArrayList<LineItemModel>();
+
+  OrderModel(Context context) {
+    super(context);
+  }
+}
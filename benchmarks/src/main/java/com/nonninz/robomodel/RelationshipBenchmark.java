@@ -0,0 +1,93 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nonninz.robomodel.exceptions.InstanceNotFoundException;
+
+/**
+ * Saving and loading a parent with its @HasMany children, for different numbers of children
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RelationshipBenchmark {
+  @Param({ "1", "10", "100" })
+  public int fanOut;
+
+  private BenchContext mContext;
+  private RoboManager<OrderModel> mOrders;
+  private RoboManager<LineItemModel> mItems;
+  private OrderModel mOrder;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    mContext = new BenchContext();
+    mOrders = RoboManager.get(mContext, OrderModel.class);
+    mItems = RoboManager.get(mContext, LineItemModel.class);
+    mOrder = newOrder();
+    mOrder.save();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    mContext.close();
+  }
+
+  @Benchmark
+  public OrderModel loadTree() throws InstanceNotFoundException {
+    return mOrders.find(mOrder.getId());
+  }
+
+  @Benchmark
+  public OrderModel saveNewTree() {
+    final OrderModel order = newOrder();
+    order.save();
+    return order;
+  }
+
+  @Benchmark
+  public OrderModel saveUnchangedTree() {
+    mOrder.save();
+    return mOrder;
+  }
+
+  private OrderModel newOrder() {
+    final OrderModel order = mOrders.create();
+    for (int i = 0; i < fanOut; i++) {
+      order.items.add(mItems.create());
+    }
+    return order;
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RoboModel.save() of new and saved models, and the TypedContentValues it builds
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaveBenchmark {
+  @Param({ "narrow", "wide" })
+  public String shape;
+
+  private BenchContext mContext;
+  private RoboManager<? extends RoboModel> mManager;
+  private RoboModel mSaved;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    mContext = new BenchContext();
+    mManager = RoboManager.get(mContext, Fixtures.modelClass(shape));
+    mSaved = mManager.create();
+    mSaved.save();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    mContext.close();
+  }
+
+  @Benchmark
+  public long insert() {
+    final RoboModel model = mManager.create();
+    model.save();
+    return model.getId();
+  }
+
+  @Benchmark
+  public RoboModel update() {
+    mSaved.save();
+    return mSaved;
+  }
+
+  @Benchmark
+  public TypedContentValues contentValues() {
+    return mSaved.getContentValues();
+  }
+
+  @Benchmark
+  public TypedContentValues reusedContentValues() {
+    final TypedContentValues values = ModelInfo.get(mSaved.getClass()).obtainValues();
+    mSaved.fillContentValues(values);
+    return values;
+  }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import android.content.Context;
+
+import com.google.gson.annotations.Expose;
+
+/**
+ * A model with 24 columns of all the primitive kinds
+ */
+public class WideModel extends RoboModel {
+  @Expose
+  public String field0 = "column 0";
+  @Expose
+  public int field1 = 1;
+  @Expose
+  public long field2 = 2L;
+  @Expose
+  public double field3 = 3.5;
+  @Expose
+  public boolean field4 = true;
+  @Expose
+  public float field5 = 5.25f;
+  @Expose
+  public String field6 = "column 6";
+  @Expose
+  public int field7 = 7;
+  @Expose
+  public long field8 = 8L;
+  @Expose
+  public double field9 = 9.5;
+  @Expose
+  public boolean field10 = true;
+  @Expose
+  public float field11 = 11.25f;
+  @Expose
+  public String field12 = "column 12";
+  @Expose
+  public int field13 = 13;
+  @Expose
+  public long field14 = 14L;
+  @Expose
+  public double field15 = 15.5;
+  @Expose
+  public boolean field16 = true;
+  @Expose
+  public float field17 = 17.25f;
+  @Expose
+  public String field18 = "column 18";
+  @Expose
+  public int field19 = 19;
+  @Expose
+  public long field20 = 20L;
+  @Expose
+  public double field21 = 21.5;
+  @Expose
+  public boolean field22 = true;
+  @Expose
+  public float field23 = 23.25f;
+
+  WideModel(Context context) {
+    super(context);
+  }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.content;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JVM stand-in for Android's ContentValues
+ */
+public final class ContentValues {
+  private final HashMap<String, Object> mValues;
+
+  public ContentValues() {
+    mValues = new HashMap<String, Object>(8);
+  }
+
+  public ContentValues(int size) {
+    mValues = new HashMap<String, Object>(size, 1.0f);
+  }
+
+  public ContentValues(ContentValues from) {
+    mValues = new HashMap<String, Object>(from.mValues);
+  }
+
+  public void put(String key, String value) {
+    mValues.put(key, value);
+  }
+
+  public void put(String key, Byte value) {
+    mValues.put(key, value);
+  }
+
+  public void put(String key, Short value) {
+    mValues.put(key, value);
+  }
+
+  public void put(String key, Integer value) {
+    mValues.put(key, value);
+  }
+
+  public void put(String key, Long value) {
+    mValues.put(key, value);
+  }
+
+  public void put(String key, Float value) {
+    mValues.put(key, value);
+  }
+
+  public void put(String key, Double value) {
+    mValues.put(key, value);
+  }
+
+  public void put(String key, Boolean value) {
+    mValues.put(key, value);
+  }
+
+  public void put(String key, byte[] value) {
+    mValues.put(key, value);
+  }
+
+  public void putAll(ContentValues other) {
+    mValues.putAll(other.mValues);
+  }
+
+  public void putNull(String key) {
+    mValues.put(key, null);
+  }
+
+  public int size() {
+    return mValues.size();
+  }
+
+  public void remove(String key) {
+    mValues.remove(key);
+  }
+
+  public void clear() {
+    mValues.clear();
+  }
+
+  public boolean containsKey(String key) {
+    return mValues.containsKey(key);
+  }
+
+  public Object get(String key) {
+    return mValues.get(key);
+  }
+
+  public String getAsString(String key) {
+    final Object value = mValues.get(key);
+    return value != null ? value.toString() : null;
+  }
+
+  public Long getAsLong(String key) {
+    final Object value = mValues.get(key);
+    if (value instanceof Number) {
+      return ((Number) value).longValue();
+    }
+    try {
+      return value != null ? Long.valueOf(value.toString()) : null;
+    } catch (final NumberFormatException e) {
+      return null;
+    }
+  }
+
+  public Integer getAsInteger(String key) {
+    final Long value = getAsLong(key);
+    return value != null ? value.intValue() : null;
+  }
+
+  public Short getAsShort(String key) {
+    final Long value = getAsLong(key);
+    return value != null ? value.shortValue() : null;
+  }
+
+  public Byte getAsByte(String key) {
+    final Long value = getAsLong(key);
+    return value != null ? value.byteValue() : null;
+  }
+
+  public Double getAsDouble(String key) {
+    final Object value = mValues.get(key);
+    if (value instanceof Number) {
+      return ((Number) value).doubleValue();
+    }
+    try {
+      return value != null ? Double.valueOf(value.toString()) : null;
+    } catch (final NumberFormatException e) {
+      return null;
+    }
+  }
+
+  public Float getAsFloat(String key) {
+    final Double value = getAsDouble(key);
+    return value != null ? value.floatValue() : null;
+  }
+
+  public Boolean getAsBoolean(String key) {
+    final Object value = mValues.get(key);
+    if (value instanceof Boolean) {
+      return (Boolean) value;
+    } else if (value instanceof Number) {
+      return ((Number) value).intValue() != 0;
+    }
+    return value != null ? Boolean.valueOf(value.toString()) : null;
+  }
+
+  public byte[] getAsByteArray(String key) {
+    final Object value = mValues.get(key);
+    return value instanceof byte[] ? (byte[]) value : null;
+  }
+
+  public Set<Map.Entry<String, Object>> valueSet() {
+    return mValues.entrySet();
+  }
+
+  public Set<String> keySet() {
+    return mValues.keySet();
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    return object instanceof ContentValues && mValues.equals(((ContentValues) object).mValues);
+  }
+
+  @Override
+  public int hashCode() {
+    return mValues.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return mValues.toString();
+  }
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.content;
+
+import java.io.File;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * JVM stand-in for the part of Android's Context used by RoboModel
+ */
+public abstract class Context {
+  public static final int MODE_PRIVATE = 0;
+
+  public abstract String getPackageName();
+
+  /**
+   * There are no Android databases on the JVM: install a StorageProvider instead
+   */
+  public SQLiteDatabase openOrCreateDatabase(String name, int mode, SQLiteDatabase.CursorFactory factory) {
+    throw new UnsupportedOperationException("No Android databases on the JVM, see Storage.setProvider()");
+  }
+
+  public File getDatabasePath(String name) {
+    throw new UnsupportedOperationException("No Android databases on the JVM, see Storage.setProvider()");
+  }
+
+  public boolean deleteDatabase(String name) {
+    throw new UnsupportedOperationException("No Android databases on the JVM, see Storage.setProvider()");
+  }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.database.sqlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+/**
+ * JVM stand-in for the part of Android's SQLiteDatabase used by RoboModel's Android storage backend. It only lets the
+ * library compile: there are no Android databases on the JVM, whose storage backends are in
+ * com.nonninz.robomodel.storage.
+ */
+public abstract class SQLiteDatabase {
+  /**
+   * Unused on the JVM, kept for signature compatibility
+   */
+  public interface CursorFactory {
+  }
+
+  public abstract Cursor query(String table, String[] columns, String selection, String[] selectionArgs,
+      String groupBy, String having, String orderBy, String limit);
+
+  public abstract Cursor rawQuery(String sql, String[] selectionArgs);
+
+  public abstract long insertOrThrow(String table, String nullColumnHack, ContentValues values);
+
+  public abstract int update(String table, ContentValues values, String whereClause, String[] whereArgs);
+
+  public abstract int delete(String table, String whereClause, String[] whereArgs);
+
+  public abstract void execSQL(String sql);
+
+  public abstract SQLiteStatement compileStatement(String sql);
+
+  public abstract void beginTransaction();
+
+  public abstract void setTransactionSuccessful();
+
+  public abstract void endTransaction();
+
+  public abstract boolean isOpen();
+
+  public abstract void close();
+}
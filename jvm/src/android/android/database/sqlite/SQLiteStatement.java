@@ -0,0 +1,44 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.database.sqlite;
+
+/**
+ * JVM stand-in for the part of Android's SQLiteStatement used by RoboModel's Android storage backend. Like
+ * {@link SQLiteDatabase}, it only lets the library compile.
+ */
+public abstract class SQLiteStatement {
+  public abstract void bindNull(int index);
+
+  public abstract void bindLong(int index, long value);
+
+  public abstract void bindDouble(int index, double value);
+
+  public abstract void bindString(int index, String value);
+
+  public abstract void bindBlob(int index, byte[] value);
+
+  public abstract void clearBindings();
+
+  public abstract void execute();
+
+  public abstract long executeInsert();
+
+  public abstract long simpleQueryForLong();
+
+  public abstract String simpleQueryForString();
+
+  public abstract void close();
+}
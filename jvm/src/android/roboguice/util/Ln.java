@@ -0,0 +1,43 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package roboguice.util;
+
+/**
+ * JVM stand-in for RoboGuice's logger. Debug and warning messages are dropped, errors go to System.err.
+ */
+public final class Ln {
+  private Ln() {
+  }
+
+  public static int d(Object s1, Object... args) {
+    return 0;
+  }
+
+  public static int w(Object s1, Object... args) {
+    return 0;
+  }
+
+  public static int e(Throwable t, Object s1, Object... args) {
+    System.err.println(args.length > 0 ? String.format(String.valueOf(s1), args) : String.valueOf(s1));
+    t.printStackTrace();
+    return 0;
+  }
+
+  public static int e(Object s1, Object... args) {
+    System.err.println(args.length > 0 ? String.format(String.valueOf(s1), args) : String.valueOf(s1));
+    return 0;
+  }
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel.storage;
+
+import java.io.File;
+
+/**
+ * {@link StorageProvider} of SQLite database files in a directory, the desktop counterpart of the private databases
+ * of an Android app
+ */
+public class FileStorageProvider extends JdbcStorageProvider {
+  private final File mDirectory;
+
+  /**
+   * @param directory
+   *          where the database files are, created if needed
+   */
+  public FileStorageProvider(File directory) {
+    mDirectory = directory;
+  }
+
+  public File getDatabasePath(String name) {
+    return new File(mDirectory, name);
+  }
+
+  @Override
+  protected String getUrl(String name) {
+    mDirectory.mkdirs();
+    return "jdbc:sqlite:" + getDatabasePath(name).getPath();
+  }
+
+  @Override
+  protected boolean deleteData(String name) {
+    final File file = getDatabasePath(name);
+    new File(file.getPath() + "-journal").delete();
+    return file.delete();
+  }
+}
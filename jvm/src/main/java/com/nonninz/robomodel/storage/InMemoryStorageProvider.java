@@ -0,0 +1,35 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel.storage;
+
+/**
+ * {@link StorageProvider} of in-memory SQLite databases, e.g. for tests. A database lives as long as its connection:
+ * until it is deleted or the provider is closed.
+ */
+public class InMemoryStorageProvider extends JdbcStorageProvider {
+
+  @Override
+  protected String getUrl(String name) {
+    // Every connection to :memory: is a new database: the provider keeps one per name
+    return "jdbc:sqlite::memory:";
+  }
+
+  @Override
+  protected boolean deleteData(String name) {
+    // Gone with the connection
+    return false;
+  }
+}
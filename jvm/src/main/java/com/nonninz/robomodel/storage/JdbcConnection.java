@@ -0,0 +1,189 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import com.nonninz.robomodel.exceptions.StorageException;
+
+/**
+ * JdbcConnection:
+ * 1. A JDBC connection to SQLite shared by all the {@link JdbcDatabase} opened on the same database
+ * 2. Keeps an LRU cache of the prepared statements of its queries
+ * 3. Tracks nested transactions: a level that ends without being marked successful rolls back the outermost one
+ * 
+ * The JDBC calls of all its users are serialized on the connection. As on Android, a transaction belongs to the thread
+ * that began it: other threads wait for it to end before they run a statement or begin their own transaction, so they
+ * never see or join its uncommitted writes.
+ */
+final class JdbcConnection {
+  private static final int STATEMENT_CACHE_SIZE = 25;
+
+  final Connection connection;
+  private final PreparedStatement mLastInsertRowId;
+  private final LinkedHashMap<String, PreparedStatement> mStatements = new LinkedHashMap<String, PreparedStatement>(
+      STATEMENT_CACHE_SIZE, 0.75f, true);
+  private Thread mOwner;
+  private int mDepth;
+  // Bit n is set once level n of the transaction is marked successful
+  private final BitSet mSuccessfulLevels = new BitSet();
+  private boolean mFailed;
+
+  JdbcConnection(Connection connection) throws SQLException {
+    this.connection = connection;
+    mLastInsertRowId = connection.prepareStatement("SELECT last_insert_rowid()");
+  }
+
+  /**
+   * @return the cached statement of sql, with its parameters cleared
+   */
+  PreparedStatement prepare(String sql) throws SQLException {
+    PreparedStatement statement = mStatements.get(sql);
+    if (statement == null) {
+      statement = connection.prepareStatement(sql);
+      mStatements.put(sql, statement);
+      if (mStatements.size() > STATEMENT_CACHE_SIZE) {
+        final Iterator<PreparedStatement> eldest = mStatements.values().iterator();
+        eldest.next().close();
+        eldest.remove();
+      }
+    } else {
+      statement.clearParameters();
+    }
+    return statement;
+  }
+
+  long lastInsertRowId() throws SQLException {
+    final ResultSet resultSet = mLastInsertRowId.executeQuery();
+    try {
+      return resultSet.next() ? resultSet.getLong(1) : -1;
+    } finally {
+      resultSet.close();
+    }
+  }
+
+  synchronized void beginTransaction() {
+    awaitTransaction();
+    try {
+      if (mDepth == 0) {
+        connection.setAutoCommit(false);
+        mOwner = Thread.currentThread();
+        mFailed = false;
+      }
+    } catch (final SQLException e) {
+      throw translate(e, "BEGIN");
+    }
+    mDepth++;
+    mSuccessfulLevels.clear(mDepth);
+  }
+
+  synchronized void setTransactionSuccessful() {
+    checkOwner();
+    mSuccessfulLevels.set(mDepth);
+  }
+
+  synchronized void endTransaction() {
+    checkOwner();
+    mFailed |= !mSuccessfulLevels.get(mDepth);
+    mDepth--;
+    if (mDepth > 0) {
+      return;
+    }
+    mOwner = null;
+    notifyAll();
+    try {
+      if (mFailed) {
+        connection.rollback();
+      } else {
+        connection.commit();
+      }
+      connection.setAutoCommit(true);
+    } catch (final SQLException e) {
+      throw translate(e, mFailed ? "ROLLBACK" : "COMMIT");
+    }
+  }
+
+  /**
+   * Waits until no other thread is in a transaction. Must be called holding the lock of the connection, before
+   * running a statement.
+   */
+  void awaitTransaction() {
+    final Thread current = Thread.currentThread();
+    while (mOwner != null && mOwner != current) {
+      try {
+        wait();
+      } catch (final InterruptedException e) {
+        current.interrupt();
+        throw new StorageException("Interrupted while waiting for the transaction of another thread", e);
+      }
+    }
+  }
+
+  private void checkOwner() {
+    if (mDepth == 0 || mOwner != Thread.currentThread()) {
+      throw new IllegalStateException("no transaction pending");
+    }
+  }
+
+  synchronized void close() {
+    try {
+      for (final Statement statement : mStatements.values()) {
+        statement.close();
+      }
+      mStatements.clear();
+      mLastInsertRowId.close();
+      connection.close();
+    } catch (final SQLException e) {
+      throw translate(e, "close");
+    }
+  }
+
+  /**
+   * Binds args to the parameters of statement. Missing arguments are bound as NULL, as on Android.
+   */
+  static void bind(PreparedStatement statement, Object[] args) throws SQLException {
+    final int count = statement.getParameterMetaData().getParameterCount();
+    for (int i = 0; i < count; i++) {
+      final Object value = args != null && i < args.length ? args[i] : null;
+      if (value == null) {
+        statement.setNull(i + 1, java.sql.Types.NULL);
+      } else if (value instanceof String) {
+        statement.setString(i + 1, (String) value);
+      } else if (value instanceof Boolean) {
+        statement.setLong(i + 1, (Boolean) value ? 1 : 0);
+      } else if (value instanceof Float || value instanceof Double) {
+        statement.setDouble(i + 1, ((Number) value).doubleValue());
+      } else if (value instanceof Number) {
+        statement.setLong(i + 1, ((Number) value).longValue());
+      } else if (value instanceof byte[]) {
+        statement.setBytes(i + 1, (byte[]) value);
+      } else {
+        statement.setString(i + 1, value.toString());
+      }
+    }
+  }
+
+  static StorageException translate(SQLException e, String sql) {
+    return new StorageException(e.getMessage() + ", while compiling: " + sql, e);
+  }
+}
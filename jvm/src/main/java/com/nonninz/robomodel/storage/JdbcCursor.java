@@ -0,0 +1,206 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel.storage;
+
+import java.nio.charset.Charset;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link StorageCursor} on a JDBC result set. Like Android's cursor window, it copies the rows of the result set in
+ * memory when the query runs, and converts values between storage classes when they are read.
+ */
+class JdbcCursor implements StorageCursor {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final String[] mColumns;
+  private final List<Object[]> mRows;
+  private int mPosition = -1;
+
+  /**
+   * An empty cursor, for statements that return no rows
+   */
+  JdbcCursor() {
+    mColumns = new String[0];
+    mRows = new ArrayList<Object[]>(0);
+  }
+
+  JdbcCursor(ResultSet resultSet) throws SQLException {
+    final ResultSetMetaData metaData = resultSet.getMetaData();
+    mColumns = new String[metaData.getColumnCount()];
+    for (int i = 0; i < mColumns.length; i++) {
+      mColumns[i] = metaData.getColumnLabel(i + 1);
+    }
+    mRows = new ArrayList<Object[]>();
+    while (resultSet.next()) {
+      final Object[] row = new Object[mColumns.length];
+      for (int i = 0; i < row.length; i++) {
+        row[i] = resultSet.getObject(i + 1);
+      }
+      mRows.add(row);
+    }
+  }
+
+  @Override
+  public int getCount() {
+    return mRows.size();
+  }
+
+  @Override
+  public int getPosition() {
+    return mPosition;
+  }
+
+  @Override
+  public boolean moveToFirst() {
+    return moveToPosition(0);
+  }
+
+  @Override
+  public boolean moveToLast() {
+    return moveToPosition(mRows.size() - 1);
+  }
+
+  @Override
+  public boolean moveToNext() {
+    return moveToPosition(mPosition + 1);
+  }
+
+  private boolean moveToPosition(int position) {
+    if (position < 0) {
+      mPosition = -1;
+      return false;
+    } else if (position >= mRows.size()) {
+      mPosition = mRows.size();
+      return false;
+    }
+    mPosition = position;
+    return true;
+  }
+
+  @Override
+  public boolean isAfterLast() {
+    return mRows.isEmpty() || mPosition >= mRows.size();
+  }
+
+  @Override
+  public int getColumnCount() {
+    return mColumns.length;
+  }
+
+  @Override
+  public int getColumnIndex(String columnName) {
+    // Like Android, accept qualified names such as "table.column"
+    final int dot = columnName.lastIndexOf('.');
+    final String name = dot >= 0 ? columnName.substring(dot + 1) : columnName;
+    for (int i = 0; i < mColumns.length; i++) {
+      if (mColumns[i].equalsIgnoreCase(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public boolean isNull(int columnIndex) {
+    return value(columnIndex) == null;
+  }
+
+  @Override
+  public byte[] getBlob(int columnIndex) {
+    final Object value = value(columnIndex);
+    if (value == null || value instanceof byte[]) {
+      return (byte[]) value;
+    }
+    return value.toString().getBytes(UTF_8);
+  }
+
+  @Override
+  public String getString(int columnIndex) {
+    final Object value = value(columnIndex);
+    if (value == null || value instanceof String) {
+      return (String) value;
+    } else if (value instanceof byte[]) {
+      return new String((byte[]) value, UTF_8);
+    }
+    return value.toString();
+  }
+
+  @Override
+  public short getShort(int columnIndex) {
+    return (short) getLong(columnIndex);
+  }
+
+  @Override
+  public int getInt(int columnIndex) {
+    return (int) getLong(columnIndex);
+  }
+
+  @Override
+  public long getLong(int columnIndex) {
+    final Object value = value(columnIndex);
+    if (value instanceof Number) {
+      return ((Number) value).longValue();
+    }
+    // SQLite reads the leading number of a text, or 0
+    return (long) parseNumber(value);
+  }
+
+  @Override
+  public float getFloat(int columnIndex) {
+    return (float) getDouble(columnIndex);
+  }
+
+  @Override
+  public double getDouble(int columnIndex) {
+    final Object value = value(columnIndex);
+    if (value instanceof Number) {
+      return ((Number) value).doubleValue();
+    }
+    return parseNumber(value);
+  }
+
+  @Override
+  public void close() {
+    // The rows are in memory, there is nothing to release
+  }
+
+  private Object value(int columnIndex) {
+    if (mPosition < 0 || mPosition >= mRows.size()) {
+      throw new IllegalStateException("Cursor is not on a row: position " + mPosition + ", count " + mRows.size());
+    }
+    return mRows.get(mPosition)[columnIndex];
+  }
+
+  private static double parseNumber(Object value) {
+    if (value == null) {
+      return 0;
+    }
+    final String text = value instanceof byte[] ? new String((byte[]) value, UTF_8) : value.toString();
+    int end = 0;
+    while (end < text.length() && "+-.0123456789eE".indexOf(text.charAt(end)) >= 0) {
+      end++;
+    }
+    try {
+      return Double.parseDouble(text.substring(0, end));
+    } catch (final NumberFormatException e) {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel.storage;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * {@link StorageDatabase} on a {@link JdbcConnection}. Closing it leaves the connection open for the other users of
+ * the database.
+ */
+class JdbcDatabase implements StorageDatabase {
+  private final String mName;
+  private final JdbcConnection mConnection;
+  private boolean mOpen = true;
+
+  JdbcDatabase(String name, JdbcConnection connection) {
+    mName = name;
+    mConnection = connection;
+  }
+
+  @Override
+  public StorageCursor query(String table, String[] columns, String selection, String[] selectionArgs,
+      String groupBy, String having, String orderBy, String limit) {
+    final String sql = Storage.buildQueryString(false, table, columns, selection, groupBy, having, orderBy, limit);
+    return rawQuery(sql, selectionArgs);
+  }
+
+  @Override
+  public StorageCursor rawQuery(String sql, String[] selectionArgs) {
+    checkOpen();
+    synchronized (mConnection) {
+      mConnection.awaitTransaction();
+      try {
+        final PreparedStatement statement = mConnection.prepare(sql);
+        JdbcConnection.bind(statement, selectionArgs);
+        // Like Android, statements that return no rows (e.g. some PRAGMAs) give an empty cursor
+        if (!statement.execute()) {
+          return new JdbcCursor();
+        }
+        final ResultSet resultSet = statement.getResultSet();
+        try {
+          return new JdbcCursor(resultSet);
+        } finally {
+          resultSet.close();
+        }
+      } catch (final SQLException e) {
+        throw JdbcConnection.translate(e, sql);
+      }
+    }
+  }
+
+  @Override
+  public long insert(String table, String[] columns, Object[] values) {
+    final StringBuilder sql = new StringBuilder("INSERT INTO ").append(table);
+    if (columns.length == 0) {
+      sql.append(" DEFAULT VALUES");
+    } else {
+      final StringBuilder placeholders = new StringBuilder();
+      for (int i = 0; i < columns.length; i++) {
+        sql.append(i > 0 ? ", " : " (").append(columns[i]);
+        placeholders.append(i > 0 ? ", ?" : "?");
+      }
+      sql.append(") VALUES (").append(placeholders).append(')');
+    }
+
+    checkOpen();
+    synchronized (mConnection) {
+      mConnection.awaitTransaction();
+      try {
+        final PreparedStatement statement = mConnection.prepare(sql.toString());
+        JdbcConnection.bind(statement, values);
+        statement.executeUpdate();
+        return mConnection.lastInsertRowId();
+      } catch (final SQLException e) {
+        throw JdbcConnection.translate(e, sql.toString());
+      }
+    }
+  }
+
+  @Override
+  public int update(String table, String[] columns, Object[] values, String whereClause, String[] whereArgs) {
+    if (columns.length == 0) {
+      throw new IllegalArgumentException("Empty values");
+    }
+    final StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+    final int whereCount = whereArgs != null ? whereArgs.length : 0;
+    final Object[] args = new Object[columns.length + whereCount];
+    for (int i = 0; i < columns.length; i++) {
+      sql.append(i > 0 ? ", " : "").append(columns[i]).append(" = ?");
+      args[i] = values[i];
+    }
+    for (int i = 0; i < whereCount; i++) {
+      args[columns.length + i] = whereArgs[i];
+    }
+    if (whereClause != null && whereClause.length() > 0) {
+      sql.append(" WHERE ").append(whereClause);
+    }
+    return executeUpdate(sql.toString(), args);
+  }
+
+  @Override
+  public int delete(String table, String whereClause, String[] whereArgs) {
+    final StringBuilder sql = new StringBuilder("DELETE FROM ").append(table);
+    if (whereClause != null && whereClause.length() > 0) {
+      sql.append(" WHERE ").append(whereClause);
+    }
+    return executeUpdate(sql.toString(), whereArgs);
+  }
+
+  @Override
+  public void execSQL(String sql) {
+    executeUpdate(sql, null);
+  }
+
+  @Override
+  public StorageStatement compileStatement(String sql) {
+    checkOpen();
+    synchronized (mConnection) {
+      mConnection.awaitTransaction();
+      try {
+        return new JdbcStatement(mConnection, mConnection.connection.prepareStatement(sql), sql);
+      } catch (final SQLException e) {
+        throw JdbcConnection.translate(e, sql);
+      }
+    }
+  }
+
+  @Override
+  public void beginTransaction() {
+    checkOpen();
+    mConnection.beginTransaction();
+  }
+
+  @Override
+  public void setTransactionSuccessful() {
+    mConnection.setTransactionSuccessful();
+  }
+
+  @Override
+  public void endTransaction() {
+    mConnection.endTransaction();
+  }
+
+  @Override
+  public void close() {
+    mOpen = false;
+  }
+
+  private int executeUpdate(String sql, Object[] args) {
+    checkOpen();
+    synchronized (mConnection) {
+      mConnection.awaitTransaction();
+      try {
+        final PreparedStatement statement = mConnection.prepare(sql);
+        JdbcConnection.bind(statement, args);
+        return statement.executeUpdate();
+      } catch (final SQLException e) {
+        throw JdbcConnection.translate(e, sql);
+      }
+    }
+  }
+
+  private void checkOpen() {
+    if (!mOpen) {
+      throw new IllegalStateException("database " + mName + " already closed");
+    }
+  }
+}
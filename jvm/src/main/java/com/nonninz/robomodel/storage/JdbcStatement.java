@@ -0,0 +1,175 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel.storage;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.nonninz.robomodel.exceptions.NoResultException;
+
+/**
+ * {@link StorageStatement} on a JDBC prepared statement of a {@link JdbcConnection}
+ */
+class JdbcStatement implements StorageStatement {
+  private final JdbcConnection mConnection;
+  private final PreparedStatement mStatement;
+  private final String mSql;
+
+  JdbcStatement(JdbcConnection connection, PreparedStatement statement, String sql) {
+    mConnection = connection;
+    mStatement = statement;
+    mSql = sql;
+  }
+
+  @Override
+  public void bindNull(int index) {
+    try {
+      mStatement.setNull(index, java.sql.Types.NULL);
+    } catch (final SQLException e) {
+      throw JdbcConnection.translate(e, mSql);
+    }
+  }
+
+  @Override
+  public void bindLong(int index, long value) {
+    try {
+      mStatement.setLong(index, value);
+    } catch (final SQLException e) {
+      throw JdbcConnection.translate(e, mSql);
+    }
+  }
+
+  @Override
+  public void bindDouble(int index, double value) {
+    try {
+      mStatement.setDouble(index, value);
+    } catch (final SQLException e) {
+      throw JdbcConnection.translate(e, mSql);
+    }
+  }
+
+  @Override
+  public void bindString(int index, String value) {
+    if (value == null) {
+      throw new IllegalArgumentException("the bind value at index " + index + " is null");
+    }
+    try {
+      mStatement.setString(index, value);
+    } catch (final SQLException e) {
+      throw JdbcConnection.translate(e, mSql);
+    }
+  }
+
+  @Override
+  public void bindBlob(int index, byte[] value) {
+    if (value == null) {
+      throw new IllegalArgumentException("the bind value at index " + index + " is null");
+    }
+    try {
+      mStatement.setBytes(index, value);
+    } catch (final SQLException e) {
+      throw JdbcConnection.translate(e, mSql);
+    }
+  }
+
+  @Override
+  public void clearBindings() {
+    try {
+      mStatement.clearParameters();
+    } catch (final SQLException e) {
+      throw JdbcConnection.translate(e, mSql);
+    }
+  }
+
+  @Override
+  public void execute() {
+    synchronized (mConnection) {
+      mConnection.awaitTransaction();
+      try {
+        mStatement.execute();
+      } catch (final SQLException e) {
+        throw JdbcConnection.translate(e, mSql);
+      }
+    }
+  }
+
+  @Override
+  public long executeInsert() {
+    synchronized (mConnection) {
+      mConnection.awaitTransaction();
+      try {
+        return mStatement.executeUpdate() > 0 ? mConnection.lastInsertRowId() : -1;
+      } catch (final SQLException e) {
+        throw JdbcConnection.translate(e, mSql);
+      }
+    }
+  }
+
+  @Override
+  public long simpleQueryForLong() {
+    synchronized (mConnection) {
+      mConnection.awaitTransaction();
+      try {
+        final ResultSet resultSet = mStatement.executeQuery();
+        try {
+          if (!resultSet.next()) {
+            throw new NoResultException("expected 1 row from this query but query returned no data");
+          }
+          return resultSet.getLong(1);
+        } finally {
+          resultSet.close();
+        }
+      } catch (final SQLException e) {
+        throw JdbcConnection.translate(e, mSql);
+      }
+    }
+  }
+
+  @Override
+  public String simpleQueryForString() {
+    synchronized (mConnection) {
+      mConnection.awaitTransaction();
+      try {
+        final ResultSet resultSet = mStatement.executeQuery();
+        try {
+          if (!resultSet.next()) {
+            throw new NoResultException("expected 1 row from this query but query returned no data");
+          }
+          return resultSet.getString(1);
+        } finally {
+          resultSet.close();
+        }
+      } catch (final SQLException e) {
+        throw JdbcConnection.translate(e, mSql);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      mStatement.close();
+    } catch (final SQLException e) {
+      throw JdbcConnection.translate(e, mSql);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "JdbcStatement: " + mSql;
+  }
+}
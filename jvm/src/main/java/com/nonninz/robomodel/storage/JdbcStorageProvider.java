@@ -0,0 +1,98 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel.storage;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.nonninz.robomodel.exceptions.StorageException;
+
+/**
+ * JdbcStorageProvider:
+ * 1. Base of the {@link StorageProvider}s that run RoboModel on a desktop JVM, on SQLite through JDBC
+ * 2. Opens one connection per database and shares it among all the {@link StorageDatabase} opened on it, until the
+ * database is deleted or the provider closed. The PRAGMAs of the database are run once, on the new connection.
+ * 
+ * Install one with {@link Storage#setProvider(StorageProvider)}.
+ */
+public abstract class JdbcStorageProvider implements StorageProvider {
+  private final Map<String, JdbcConnection> mConnections = new HashMap<String, JdbcConnection>();
+
+  /**
+   * @return the JDBC URL of the database with the given name
+   */
+  protected abstract String getUrl(String name);
+
+  /**
+   * Deletes what is left of a database once its connection is closed
+   * 
+   * @return true if something was deleted
+   */
+  protected abstract boolean deleteData(String name);
+
+  @Override
+  public StorageDatabase openDatabase(String name) {
+    synchronized (mConnections) {
+      JdbcConnection connection = mConnections.get(name);
+      if (connection == null) {
+        final String url = getUrl(name);
+        try {
+          connection = new JdbcConnection(DriverManager.getConnection(url));
+        } catch (final SQLException e) {
+          throw new StorageException("Can not open database " + url, e);
+        }
+        try {
+          Storage.applyPragmas(new JdbcDatabase(name, connection), name);
+        } catch (final StorageException e) {
+          connection.close();
+          throw e;
+        }
+        mConnections.put(name, connection);
+      }
+      return new JdbcDatabase(name, connection);
+    }
+  }
+
+  @Override
+  public boolean deleteDatabase(String name) {
+    final JdbcConnection connection;
+    synchronized (mConnections) {
+      connection = mConnections.remove(name);
+    }
+    if (connection != null) {
+      connection.close();
+    }
+    return deleteData(name) || connection != null;
+  }
+
+  /**
+   * Closes the connections of all the databases. They are opened again if used.
+   */
+  public void close() {
+    final List<JdbcConnection> connections;
+    synchronized (mConnections) {
+      connections = new ArrayList<JdbcConnection>(mConnections.values());
+      mConnections.clear();
+    }
+    for (final JdbcConnection connection : connections) {
+      connection.close();
+    }
+  }
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel.storage;
+
+import android.content.Context;
+
+/**
+ * The Context to create RoboModels and RoboManagers with on a desktop JVM. It only has a package name, which names
+ * the default database: the databases themselves come from the installed {@link StorageProvider}.
+ */
+public class JvmContext extends Context {
+  private final String mPackageName;
+
+  public JvmContext(String packageName) {
+    mPackageName = packageName;
+  }
+
+  @Override
+  public String getPackageName() {
+    return mPackageName;
+  }
+}
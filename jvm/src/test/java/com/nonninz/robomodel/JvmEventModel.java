@@ -0,0 +1,18 @@
+package com.nonninz.robomodel;
+
+import android.content.Context;
+
+import com.nonninz.robomodel.annotations.Database;
+
+@Database("telemetry")
+public class JvmEventModel extends RoboModel {
+
+    public String name;
+
+    public long timestamp;
+
+    JvmEventModel(Context context) {
+        super(context);
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.nonninz.robomodel;
+
+import android.content.Context;
+
+import com.nonninz.robomodel.annotations.BelongsTo;
+import com.nonninz.robomodel.annotations.Stored;
+import com.nonninz.robomodel.annotations.Stored.Codec;
+
+public class JvmItemModel extends RoboModel {
+
+    public enum Size {
+        SMALL, LARGE
+    }
+
+    public String name;
+
+    @BelongsTo(JvmOwnerModel.class)
+    public JvmOwnerModel owner;
+
+    @Stored(codec = Codec.ORDINAL)
+    public Size size = Size.SMALL;
+
+    JvmItemModel(Context context) {
+        super(context);
+    }
+
+}
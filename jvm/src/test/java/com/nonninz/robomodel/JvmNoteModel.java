@@ -0,0 +1,21 @@
+package com.nonninz.robomodel;
+
+import android.content.Context;
+
+import com.nonninz.robomodel.annotations.FullText;
+
+public class JvmNoteModel extends RoboModel {
+
+    @FullText
+    public String title;
+
+    @FullText
+    public String body;
+
+    public int pages;
+
+    JvmNoteModel(Context context) {
+        super(context);
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.nonninz.robomodel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+
+import com.nonninz.robomodel.annotations.HasMany;
+
+public class JvmOwnerModel extends RoboModel {
+
+    public String name;
+
+    @HasMany(JvmItemModel.class)
+    public List<JvmItemModel> items = new ArrayList<JvmItemModel>();
+
+    JvmOwnerModel(Context context) {
+        super(context);
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.nonninz.robomodel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+
+import com.google.gson.annotations.Expose;
+import com.nonninz.robomodel.annotations.BelongsTo;
+import com.nonninz.robomodel.annotations.HasMany;
+
+public class JvmTestModel extends RoboModel {
+
+    @Expose
+    public String name = "model";
+
+    @Expose
+    public int count;
+
+    @Expose
+    public double price;
+
+    @BelongsTo(JvmTestModel.class)
+    public JvmTestModel parent;
+
+    @Expose
+    @HasMany(JvmTestModel.class)
+    public List<JvmTestModel> children = new ArrayList<JvmTestModel>();
+
+    JvmTestModel(Context context) {
+        super(context);
+    }
+
+}
@@ -0,0 +1,743 @@
+package com.nonninz.robomodel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+import com.nonninz.robomodel.exceptions.InstanceNotFoundException;
+import com.nonninz.robomodel.exceptions.NoResultException;
+import com.nonninz.robomodel.exceptions.StorageException;
+import com.nonninz.robomodel.storage.FileStorageProvider;
+import com.nonninz.robomodel.storage.InMemoryStorageProvider;
+import com.nonninz.robomodel.storage.JdbcStorageProvider;
+import com.nonninz.robomodel.storage.JvmContext;
+import com.nonninz.robomodel.storage.Storage;
+import com.nonninz.robomodel.storage.StorageCursor;
+import com.nonninz.robomodel.storage.StorageDatabase;
+import com.nonninz.robomodel.storage.StorageStatement;
+
+public class StorageTestCase extends TestCase {
+    private JvmContext mContext;
+    private JdbcStorageProvider mProvider;
+    private RoboManager<JvmTestModel> mManager;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mContext = new JvmContext("com.nonninz.robomodel.test");
+        mProvider = new InMemoryStorageProvider();
+        Storage.setProvider(mProvider);
+        mManager = RoboManager.get(mContext, JvmTestModel.class);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Storage.setProvider(null);
+        Storage.setPragmas("telemetry");
+        mProvider.close();
+
+        super.tearDown();
+    }
+
+    public void testSaveAndFind() throws InstanceNotFoundException {
+        JvmTestModel model = mManager.create();
+        model.name = "first";
+        model.count = 3;
+        model.price = 1.5;
+        model.save();
+        assertTrue(model.isSaved());
+
+        JvmTestModel found = mManager.find(model.getId());
+        assertEquals("first", found.name);
+        assertEquals(3, found.count);
+        assertEquals(1.5, found.price, 0);
+
+        model.count = 4;
+        model.save();
+        found.reload();
+        assertEquals(4, found.count);
+    }
+
+    public void testWhereLoadsRowsInOrder() {
+        // More models than are loaded by a single query
+        for (int i = 0; i < 501; i++) {
+            JvmTestModel model = mManager.create();
+            model.count = i;
+            model.save();
+        }
+
+        List<JvmTestModel> models = mManager.where(null, null, null, null, "count DESC");
+        assertEquals(501, models.size());
+        for (int i = 0; i < 501; i++) {
+            assertEquals(500 - i, models.get(i).count);
+            assertEquals("model", models.get(i).name);
+            assertTrue(models.get(i).children.isEmpty());
+        }
+    }
+
+    public void testParallelLoading() {
+        JvmTestModel parent = mManager.create();
+        for (int i = 0; i < 300; i++) {
+            JvmTestModel child = mManager.create();
+            child.count = i;
+            child.name = "child" + i;
+            parent.children.add(child);
+        }
+        parent.save();
+
+        final AtomicInteger executed = new AtomicInteger();
+        final ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            mManager.enableParallelLoading(100, new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    executed.incrementAndGet();
+                    pool.execute(command);
+                }
+            });
+            List<JvmTestModel> models = mManager.where("parent = ?", new String[] { String.valueOf(parent.getId()) },
+                    null, null, "count DESC");
+            assertEquals(300, models.size());
+            assertTrue(executed.get() > 0 || Runtime.getRuntime().availableProcessors() == 1);
+            for (int i = 0; i < 300; i++) {
+                assertEquals(299 - i, models.get(i).count);
+                assertEquals("child" + (299 - i), models.get(i).name);
+                assertTrue(models.get(i).isSaved());
+            }
+
+            // Below the threshold, and with children
+            List<JvmTestModel> parents = mManager.where("parent IS NULL");
+            assertEquals(1, parents.size());
+            assertEquals(300, parents.get(0).children.size());
+        } finally {
+            mManager.disableParallelLoading();
+            pool.shutdown();
+        }
+    }
+
+    public void testParallelLoadingOnItsOwnExecutor() throws Exception {
+        for (int i = 0; i < 300; i++) {
+            mManager.create().save();
+        }
+
+        // The query runs on the only thread of the executor, which can not run the other slices
+        final ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            mManager.enableParallelLoading(100, pool);
+            Future<Integer> size = pool.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return mManager.all().size();
+                }
+            });
+            assertEquals(300, size.get(10, TimeUnit.SECONDS).intValue());
+        } finally {
+            mManager.disableParallelLoading();
+            pool.shutdown();
+        }
+    }
+
+    public void testToString() {
+        JvmTestModel model = mManager.create();
+        model.count = 5;
+        String string = model.toString();
+        assertTrue(string, string.startsWith("JvmTestModel {id: -1, "));
+        assertTrue(string, string.contains("count: 5, "));
+        assertTrue(string, string.contains("children: (RoboModel Child), "));
+    }
+
+    public void testContentValues() {
+        JvmTestModel model = mManager.create();
+        model.count = 7;
+        model.price = 2.5;
+        model.name = null;
+        TypedContentValues values = model.getContentValues();
+
+        assertEquals(Long.valueOf(7), values.get("count"));
+        assertEquals(TypedContentValues.ElementType.REAL, values.getType("price"));
+        assertEquals(Integer.valueOf(2), values.getAsInteger("price"));
+        assertTrue(values.containsKey("name"));
+        assertNull(values.get("name"));
+        assertNull(values.getType("name"));
+        assertFalse(values.containsKey("children"));
+        assertEquals(4, values.size());
+        assertEquals(7L, values.toContentValues().get("count"));
+
+        TypedContentValues copy = values.copyTo(null);
+        assertEquals(values, copy);
+        assertEquals(values.hashCode(), copy.hashCode());
+        copy.put("count", 8);
+        assertFalse(values.equals(copy));
+        copy.remove("count");
+        assertEquals(3, copy.size());
+        try {
+            copy.put("missing", 1);
+            fail("Unknown column");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        ModelInfo info = ModelInfo.get(JvmTestModel.class);
+        assertSame(info.obtainValues(), info.obtainValues());
+        assertEquals(0, info.obtainValues().size());
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testContentValuesWithoutModel() {
+        TypedContentValues values = new TypedContentValues();
+        values.put("a", 1);
+        values.put("b", "text");
+        TypedContentValues other = new TypedContentValues(2);
+        other.put("b", "text");
+        other.put("a", 1L);
+        assertEquals(values, other);
+        assertEquals(values.hashCode(), other.hashCode());
+
+        TypedContentValues copy = new TypedContentValues(values);
+        copy.putNull("c");
+        assertEquals(3, copy.size());
+        assertEquals(2, values.size());
+        assertFalse(values.containsKey("c"));
+        assertEquals("text", copy.toContentValues().get("b"));
+    }
+
+    public void testQueries() {
+        for (int i = 0; i < 5; i++) {
+            JvmTestModel model = mManager.create();
+            model.name = "model" + i;
+            model.count = i;
+            model.save();
+        }
+
+        List<JvmTestModel> selected = mManager.where("count >= ?", new String[] { "3" });
+        assertEquals(2, selected.size());
+        assertEquals(5, mManager.count(null, null));
+        assertEquals(10, mManager.sum("count", null, null), 0);
+        assertEquals("model4", mManager.query().gt("count", 2).orderByDescending("count").list().get(0).name);
+    }
+
+    public void testSumLongIsExact() {
+        RoboManager<JvmEventModel> events = RoboManager.get(mContext, JvmEventModel.class);
+        assertEquals(0, events.sumLong("timestamp", null, null));
+        for (long timestamp : new long[] { (1L << 53) + 1, 1 }) {
+            JvmEventModel event = events.create();
+            event.timestamp = timestamp;
+            event.save();
+        }
+
+        assertEquals((1L << 53) + 2, events.sumLong("timestamp", null, null));
+        assertEquals(1, events.sumLong("timestamp", "timestamp < ?", new String[] { "2" }));
+        try {
+            events.sumLong("name", null, null);
+            fail("Text columns should be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    public void testSumLongOfStoredIntegers() {
+        RoboManager<JvmOwnerModel> owners = RoboManager.get(mContext, JvmOwnerModel.class);
+        RoboManager<JvmItemModel> items = RoboManager.get(mContext, JvmItemModel.class);
+        JvmOwnerModel owner = owners.create();
+        owner.save();
+        for (JvmItemModel.Size size : JvmItemModel.Size.values()) {
+            JvmItemModel item = items.create();
+            item.owner = owner;
+            item.size = size;
+            item.save();
+        }
+
+        // A foreign key and an ordinal enum are both INTEGER columns
+        assertEquals(2 * owner.getId(), items.sumLong("owner", null, null));
+        assertEquals(JvmItemModel.Size.LARGE.ordinal(), items.sumLong("size", null, null));
+    }
+
+    public void testSearch() {
+        // A row written before the full-text table existed
+        StorageDatabase db = mProvider.openDatabase(mManager.getDatabaseName());
+        db.execSQL("CREATE TABLE JvmNoteModel (title TEXT, body TEXT, pages INTEGER, "
+                + "_id integer primary key autoincrement)");
+        db.execSQL("INSERT INTO JvmNoteModel (title, body, pages) VALUES ('old', 'cherry', 1)");
+        db.close();
+
+        RoboManager<JvmNoteModel> notes = RoboManager.get(mContext, JvmNoteModel.class);
+        assertEquals(1, notes.search("cherry", 10).size());
+
+        JvmNoteModel pie = notes.create();
+        pie.title = "Apple pie";
+        pie.body = "Slice the apples, then bake the apple filling";
+        pie.save();
+        JvmNoteModel bread = notes.create();
+        bread.title = "Banana bread";
+        bread.body = "Mash the bananas";
+        bread.save();
+        JvmNoteModel juice = notes.create();
+        juice.title = "Juice";
+        juice.body = "One apple";
+        juice.save();
+
+        List<JvmNoteModel> found = notes.search("apple*", 10);
+        assertEquals(2, found.size());
+        assertEquals(pie.getId(), found.get(0).getId());
+        assertEquals(juice.getId(), found.get(1).getId());
+        assertEquals(1, notes.search("apple*", 1).size());
+        assertEquals(bread.getId(), notes.search("bread mash*", 10).get(0).getId());
+
+        // Updates and deletes are mirrored
+        juice.body = "Apple, apple, apple and apple";
+        juice.save();
+        assertEquals(juice.getId(), notes.search("apple", 10).get(0).getId());
+        pie.delete();
+        assertEquals(1, notes.search("apple", 10).size());
+        notes.deleteAll();
+        assertTrue(notes.search("banana", 10).isEmpty());
+
+        try {
+            mManager.search("model", 10);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // JvmTestModel has no @FullText field
+        }
+    }
+
+    public void testSearchIndexesFieldsAddedLater() {
+        // A full-text table made when only the title was indexed
+        JvmContext context = new JvmContext("com.nonninz.robomodel.fts");
+        StorageDatabase db = mProvider.openDatabase("com.nonninz.robomodel.fts");
+        db.execSQL("CREATE TABLE JvmNoteModel (title TEXT, body TEXT, pages INTEGER, "
+                + "_id integer primary key autoincrement)");
+        db.execSQL("CREATE VIRTUAL TABLE JvmNoteModel_fts USING fts3(title)");
+        db.close();
+
+        RoboManager<JvmNoteModel> notes = RoboManager.get(context, JvmNoteModel.class);
+        JvmNoteModel note = notes.create();
+        note.title = "Stripes";
+        note.body = "zebra";
+        note.save();
+        assertEquals(1, notes.search("zebra", 10).size());
+
+        RoboMetrics metrics = new RoboMetrics();
+        RoboManager.setMetricsListener(metrics);
+        try {
+            notes.search("\"unbalanced", 10);
+            fail();
+        } catch (StorageException e) {
+            // Malformed MATCH expression
+        } finally {
+            RoboManager.setMetricsListener(null);
+        }
+        assertEquals(0, metrics.getTimings(RoboMetricsListener.Operation.SCHEMA_FIXUP).getCount());
+    }
+
+    public void testDatabaseRouting() throws InstanceNotFoundException {
+        Storage.setPragmas("telemetry", "user_version = 7", "journal_mode = MEMORY");
+        RoboManager<JvmEventModel> events = RoboManager.get(mContext, JvmEventModel.class);
+        assertEquals("telemetry", events.getDatabaseName());
+        assertEquals("com.nonninz.robomodel.test", mManager.getDatabaseName());
+
+        JvmEventModel event = events.create();
+        event.name = "click";
+        event.save();
+        mManager.create().save();
+        assertEquals("click", events.find(event.getId()).name);
+        assertEquals(1, events.count(null, null));
+
+        StorageDatabase telemetry = mProvider.openDatabase("telemetry");
+        assertEquals(7, Storage.longForQuery(telemetry, "PRAGMA user_version", null));
+        assertEquals(1, Storage.longForQuery(telemetry, "SELECT COUNT(*) FROM JvmEventModel", null));
+        telemetry.close();
+
+        StorageDatabase main = mProvider.openDatabase(mManager.getDatabaseName());
+        assertEquals(0, Storage.longForQuery(main, "PRAGMA user_version", null));
+        try {
+            main.rawQuery("SELECT COUNT(*) FROM JvmEventModel", null);
+            fail();
+        } catch (StorageException e) {
+            // Only in the telemetry database
+        } finally {
+            main.close();
+        }
+    }
+
+    public void testSaveGraphSavesParentsFirst() {
+        // shared is first reached right below root, then below sibling, which is its last parent
+        JvmTestModel root = mManager.create();
+        JvmTestModel shared = mManager.create();
+        JvmTestModel sibling = mManager.create();
+        root.children.add(shared);
+        root.children.add(sibling);
+        sibling.children.add(shared);
+        shared.children.add(mManager.create());
+        root.save();
+
+        assertTrue(sibling.getId() > 0);
+        assertTrue(shared.getId() > sibling.getId());
+        assertEquals(1, mManager.count("parent = ?", new String[] { String.valueOf(sibling.getId()) }));
+        assertEquals(1, mManager.count("parent = ?", new String[] { String.valueOf(shared.getId()) }));
+        assertEquals(0, mManager.count("parent < 1", null));
+    }
+
+    public void testDeleteCascades() {
+        JvmTestModel parent = mManager.create();
+        JvmTestModel child = mManager.create();
+        child.parent = parent;
+        parent.children.add(child);
+        parent.save();
+        assertEquals(2, mManager.count(null, null));
+
+        parent.delete();
+        assertEquals(0, mManager.count(null, null));
+    }
+
+    public void testDeleteCascadesOnFreshDatabase() {
+        // Neither table exists yet: the children are selected with a subquery on the one of the parents
+        RoboManager<JvmOwnerModel> owners = RoboManager.get(mContext, JvmOwnerModel.class);
+        owners.deleteAll();
+        assertEquals(0, owners.count(null, null));
+
+        JvmOwnerModel owner = owners.create();
+        owner.items.add(RoboManager.get(mContext, JvmItemModel.class).create());
+        owner.save();
+        owners.deleteAll();
+        assertEquals(0, RoboManager.get(mContext, JvmItemModel.class).count(null, null));
+    }
+
+    public void testDeleteCascadesThroughDeepTrees() {
+        JvmTestModel root = mManager.create();
+        root.name = "root";
+        JvmTestModel node = root;
+        for (int i = 0; i < 100; i++) {
+            JvmTestModel child = mManager.create();
+            child.parent = node;
+            node.children.add(child);
+            node = child;
+        }
+        root.save();
+        mManager.create().save();
+        assertEquals(102, mManager.count(null, null));
+
+        assertEquals(1, mManager.delete("name = ?", new String[] { "root" }));
+        assertEquals(1, mManager.count(null, null));
+
+        // A row that is its own parent
+        JvmTestModel loop = mManager.create();
+        loop.name = "loop";
+        loop.save();
+        StorageDatabase db = mProvider.openDatabase(mManager.getDatabaseName());
+        db.execSQL("UPDATE JvmTestModel SET parent = _id WHERE name = 'loop'");
+        db.close();
+        assertEquals(1, mManager.delete("name = ?", new String[] { "loop" }));
+
+        mManager.deleteAll();
+        assertEquals(0, mManager.count(null, null));
+    }
+
+    public void testNestedTransactionRollsBack() {
+        mManager.create().save();
+        StorageDatabase db = mProvider.openDatabase(mManager.getDatabaseName());
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM JvmTestModel");
+            db.beginTransaction();
+            db.endTransaction();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        StorageCursor cursor = db.rawQuery("SELECT COUNT(*) FROM JvmTestModel", null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(1, cursor.getInt(0));
+        cursor.close();
+        db.close();
+    }
+
+    public void testOuterTransactionNotSuccessfulRollsBack() {
+        mManager.create().save();
+        StorageDatabase db = mProvider.openDatabase(mManager.getDatabaseName());
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM JvmTestModel");
+            db.beginTransaction();
+            db.setTransactionSuccessful();
+            db.endTransaction();
+        } finally {
+            db.endTransaction();
+        }
+
+        assertEquals(1, Storage.longForQuery(db, "SELECT COUNT(*) FROM JvmTestModel", null));
+        db.close();
+    }
+
+    public void testTransactionBelongsToItsThread() throws Exception {
+        mManager.create().save();
+        final StorageDatabase db = mProvider.openDatabase(mManager.getDatabaseName());
+        db.beginTransaction();
+        db.execSQL("DELETE FROM JvmTestModel");
+
+        final AtomicLong count = new AtomicLong(-1);
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                StorageDatabase other = mProvider.openDatabase(mManager.getDatabaseName());
+                count.set(Storage.longForQuery(other, "SELECT COUNT(*) FROM JvmTestModel", null));
+                other.close();
+            }
+        };
+        reader.start();
+        // The reader waits for the transaction to end instead of seeing its writes
+        reader.join(200);
+        assertTrue(reader.isAlive());
+        db.endTransaction();
+        reader.join();
+        assertEquals(1, count.get());
+        db.close();
+    }
+
+    public void testTableVersionsBumpedWhenBatchEnds() {
+        long version = TableVersions.get("versions", "Table");
+        ChangeNotifier.beginBatch();
+        try {
+            ChangeNotifier.tableChanged("versions", "Table", 1);
+            ChangeNotifier.tableChanged("versions", "Table", 2);
+            // Not before the transaction of the batch is over
+            assertEquals(version, TableVersions.get("versions", "Table"));
+        } finally {
+            ChangeNotifier.endBatch(true);
+        }
+        assertEquals(version + 1, TableVersions.get("versions", "Table"));
+
+        ChangeNotifier.tableChanged("versions", "Table", 3);
+        assertEquals(version + 2, TableVersions.get("versions", "Table"));
+    }
+
+    public void testRolledBackBatchIsDropped() throws InterruptedException {
+        final List<Set<Long>> delivered = new ArrayList<Set<Long>>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        ChangeNotifier.RowChangeListener listener = new ChangeNotifier.RowChangeListener() {
+            @Override
+            public void onTableChanged(String tableName) {
+                onRowsChanged(tableName, null);
+            }
+
+            @Override
+            public void onRowsChanged(String tableName, Set<Long> rowIds) {
+                delivered.add(rowIds);
+                latch.countDown();
+            }
+        };
+        ChangeNotifier.register("rollback", "Table", listener, null);
+        try {
+            long version = TableVersions.get("rollback", "Table");
+            ChangeNotifier.beginBatch();
+            try {
+                ChangeNotifier.beginBatch();
+                try {
+                    ChangeNotifier.tableChanged("rollback", "Table", 1);
+                } finally {
+                    // An inner level that fails rolls back the whole transaction
+                    ChangeNotifier.endBatch(false);
+                }
+                ChangeNotifier.tableChanged("rollback", "Table", 2);
+            } finally {
+                ChangeNotifier.endBatch(true);
+            }
+            assertEquals(version, TableVersions.get("rollback", "Table"));
+
+            // Rows 1 and 2 would come with it, or before it
+            ChangeNotifier.tableChanged("rollback", "Table", 3);
+            assertTrue(latch.await(2, TimeUnit.SECONDS));
+            assertEquals(Collections.singleton(3L), delivered.get(0));
+            assertEquals(version + 1, TableVersions.get("rollback", "Table"));
+        } finally {
+            ChangeNotifier.unregister(listener);
+        }
+    }
+
+    public void testImportCommitsEachChunk() throws IOException {
+        // The rows after the first chunk are longer than the buffer of the JSON reader
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 700; i++) {
+            json.append(i > 0 ? "," : "").append("{\"count\": ").append(i).append("}");
+        }
+        json.append("]");
+
+        final String database = mManager.getDatabaseName();
+        final String table = mManager.getTableName();
+        final long version = TableVersions.get(database, table);
+        final AtomicLong lastReadVersion = new AtomicLong();
+        Reader reader = new StringReader(json.toString()) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                lastReadVersion.set(TableVersions.get(database, table));
+                return super.read(buffer, offset, length);
+            }
+        };
+
+        assertEquals(700, mManager.importJson(reader));
+        // The first chunk was visible while the second one was read
+        assertTrue(lastReadVersion.get() > version);
+        assertEquals(700, mManager.count(null, null));
+    }
+
+    public void testImportRejectsMalformedJson() {
+        for (String json : new String[] { "[{count: 1}]", "[{\"name\": 'single'}]" }) {
+            try {
+                mManager.importJson(new StringReader(json));
+                fail(json);
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+        assertEquals(0, mManager.count(null, null));
+    }
+
+    public void testStatements() {
+        StorageDatabase db = mProvider.openDatabase("statements");
+        db.execSQL("CREATE TABLE Test (name TEXT, _id integer primary key autoincrement)");
+        assertEquals(1, db.insert("Test", new String[] { "name" }, new Object[] { "one" }));
+
+        StorageStatement statement = db.compileStatement("SELECT _id FROM Test WHERE name = ?");
+        statement.bindString(1, "one");
+        assertEquals(1, statement.simpleQueryForLong());
+        statement.bindString(1, "two");
+        try {
+            statement.simpleQueryForLong();
+            fail("No row, no result");
+        } catch (NoResultException e) {
+            // Expected
+        }
+        statement.close();
+
+        assertEquals(1, db.update("Test", new String[] { "name" }, new Object[] { "two" }, "_id = ?",
+                new String[] { "1" }));
+        assertEquals(1, Storage.longForQuery(db, "SELECT COUNT(*) FROM Test WHERE name = ?", new String[] { "two" }));
+        assertEquals(1, db.delete("Test", null, null));
+        try {
+            db.rawQuery("SELECT * FROM Missing", null);
+            fail("Missing table");
+        } catch (StorageException e) {
+            // Expected
+        }
+        db.close();
+    }
+
+    public void testMetrics() {
+        RoboMetrics metrics = new RoboMetrics();
+        RoboManager.setMetricsListener(metrics);
+        try {
+            mManager.enableQueryCache(10, 100);
+            mManager.create().save();
+            mManager.create().save();
+            assertEquals(2, mManager.all().size());
+            assertEquals(2, mManager.all().size());
+            mManager.deleteAll();
+
+            assertEquals(2, metrics.getTimings(RoboMetricsListener.Operation.SAVE).getCount());
+            assertEquals(1, metrics.getTimings(RoboMetricsListener.Operation.DELETE).getCount());
+            assertEquals(1, metrics.getTimings(RoboMetricsListener.Operation.HYDRATE).getCount());
+            assertTrue(metrics.getTimings(RoboMetricsListener.Operation.QUERY).getCount() >= 3);
+            assertTrue(metrics.getRowsRead() >= 4);
+            assertEquals(1, metrics.getCacheHits());
+            assertEquals(1, metrics.getCacheMisses());
+        } finally {
+            RoboManager.setMetricsListener(null);
+        }
+    }
+
+    public void testSlowQueryLog() {
+        SlowQueryLog log = new SlowQueryLog(0, 10);
+        mManager.create().save();
+        RoboManager.setSlowQueryLog(log);
+        try {
+            mManager.where("parent = ?", new String[] { "1" });
+            mManager.where("_id = ?", new String[] { "1" });
+        } finally {
+            RoboManager.setSlowQueryLog(null);
+        }
+
+        // The second query also loads the row of the model it finds, then its children by parent
+        List<SlowQuery> records = log.getRecords();
+        assertEquals(4, records.size());
+        assertTrue(records.get(0).isFullScan());
+        assertEquals(Arrays.asList("parent"), records.get(0).getScannedForeignKeys());
+        assertFalse(records.get(1).isFullScan());
+        assertTrue(records.get(1).getScannedForeignKeys().isEmpty());
+        assertTrue(records.get(1).getSql().contains("_id = ?"));
+    }
+
+    public void testLiveQueryLoadsRowsInOnePass() {
+        RoboManager<JvmEventModel> events = RoboManager.get(mContext, JvmEventModel.class);
+        for (int i = 0; i < 30; i++) {
+            JvmEventModel event = events.create();
+            event.timestamp = i;
+            event.save();
+        }
+
+        RoboMetrics metrics = new RoboMetrics();
+        LiveQuery<JvmEventModel> live = events.live(null, null, "timestamp DESC");
+        RoboManager.setMetricsListener(metrics);
+        try {
+            live.start(null, null);
+        } finally {
+            RoboManager.setMetricsListener(null);
+            live.stop();
+        }
+
+        // The ids, then the rows
+        assertEquals(2, metrics.getTimings(RoboMetricsListener.Operation.QUERY).getCount());
+        assertEquals(30, live.getResults().size());
+        assertEquals(29, live.getResults().get(0).timestamp);
+        assertEquals(0, live.getResults().get(29).timestamp);
+    }
+
+    public void testSlowQueryPlan() {
+        assertTrue(SlowQueryLog.isFullScan("SCAN JvmTestModel", "JvmTestModel"));
+        assertTrue(SlowQueryLog.isFullScan("SCAN TABLE JvmTestModel (~100000 rows)", "JvmTestModel"));
+        assertTrue(SlowQueryLog.isFullScan("TABLE JvmTestModel", "JvmTestModel"));
+        assertFalse(SlowQueryLog.isFullScan("TABLE JvmTestModel WITH INDEX parent", "JvmTestModel"));
+        assertFalse(SlowQueryLog.isFullScan("SEARCH JvmTestModel USING INTEGER PRIMARY KEY (rowid=?)",
+                "JvmTestModel"));
+        assertFalse(SlowQueryLog.isFullScan("SCAN Other", "JvmTestModel"));
+    }
+
+    public void testFileStorageProvider() throws IOException, InstanceNotFoundException {
+        File directory = Files.createTempDirectory("robomodel-test").toFile();
+        FileStorageProvider provider = new FileStorageProvider(directory);
+        Storage.setProvider(provider);
+        try {
+            JvmTestModel model = mManager.create();
+            model.name = "stored";
+            model.save();
+            provider.close();
+
+            assertTrue(provider.getDatabasePath(mManager.getDatabaseName()).exists());
+            assertEquals("stored", mManager.find(model.getId()).name);
+
+            assertTrue(provider.deleteDatabase(mManager.getDatabaseName()));
+            assertFalse(provider.getDatabasePath(mManager.getDatabaseName()).exists());
+        } finally {
+            provider.close();
+            directory.delete();
+        }
+    }
+}
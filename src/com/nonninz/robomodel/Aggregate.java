@@ -0,0 +1,45 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+/**
+ * The aggregate functions of {@link RoboManager#aggregate(Aggregate, String, String, String[])}
+ */
+public enum Aggregate {
+  /** The number of non-null values */
+  COUNT("COUNT"),
+  /**
+   * The sum of the values, 0 if there are none. It is exact up to 2^53: see
+   * {@link RoboManager#sumLong(String, String, String[])} for larger sums.
+   */
+  SUM("TOTAL"),
+  /** The average of the values, NaN if there are none */
+  AVG("AVG"),
+  /** The smallest value, NaN if there are none */
+  MIN("MIN"),
+  /** The largest value, NaN if there are none */
+  MAX("MAX");
+
+  private final String mFunction;
+
+  private Aggregate(String function) {
+    mFunction = function;
+  }
+
+  String toSql(String column) {
+    return mFunction + "(" + column + ")";
+  }
+}
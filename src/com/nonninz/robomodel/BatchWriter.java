@@ -0,0 +1,344 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import static android.provider.BaseColumns._ID;
+import static com.nonninz.robomodel.DatabaseManager.where;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.nonninz.robomodel.exceptions.NoResultException;
+import com.nonninz.robomodel.exceptions.StorageException;
+import com.nonninz.robomodel.storage.StorageDatabase;
+import com.nonninz.robomodel.storage.StorageStatement;
+
+/**
+ * BatchWriter:
+ * 1. Saves many models through one open database, usually inside a transaction
+ * 2. Compiles the INSERT and UPDATE statements of each table once and rebinds them for every row, from values
+ * that are reused for every row too
+ * 3. Saves whole model graphs, parents before children, each model once
+ * 4. Upserts models by a natural key, looking up their rows with a compiled query
+ *
+ * The caller owns the database and the transaction, and must {@link #close()} the writer when done.
+ */
+class BatchWriter {
+  private final DatabaseManager mDatabaseManager;
+  private final StorageDatabase mDatabase;
+  private final String mDatabaseName;
+  private final Map<String, TableStatements> mStatements = new HashMap<String, TableStatements>();
+  private final Map<RoboModel, Boolean> mVisited = new IdentityHashMap<RoboModel, Boolean>();
+  private final List<RoboModel> mSaved = new ArrayList<RoboModel>();
+  private final List<RoboModel> mInserted = new ArrayList<RoboModel>();
+  private final Map<String, StorageStatement> mLookups = new HashMap<String, StorageStatement>();
+
+  BatchWriter(DatabaseManager databaseManager, StorageDatabase database, String databaseName) {
+    mDatabaseManager = databaseManager;
+    mDatabase = database;
+    mDatabaseName = databaseName;
+  }
+
+  /**
+   * Saves root and every model reachable from it through @HasMany fields. The graph is collected first and written
+   * level by level, so parents get their ids before their children reference them, and the rows of a table are
+   * written one after the other. A model reached through several paths is on the level of the longest one, below all
+   * of its parents. Models reached more than once, from this root or from a root saved before by the
+   * same writer, are saved once. Children whose columns did not change since they were last saved are skipped.
+   * 
+   * @throws IllegalStateException
+   *           if a model is its own descendant
+   */
+  void saveGraph(RoboModel root) {
+    final List<Node> nodes = new ArrayList<Node>();
+    collect(root, 0, nodes, new IdentityHashMap<RoboModel, Node>(), new IdentityHashMap<RoboModel, Boolean>());
+    // Stable: within a level models keep the order in which they were reached
+    Collections.sort(nodes);
+
+    for (final Node node : nodes) {
+      final TypedContentValues values = ModelInfo.get(node.model.getClass()).obtainValues();
+      node.model.fillContentValues(values);
+      if (node.depth == 0 || !isUnchanged(node.model, values)) {
+        save(node.model, values);
+      }
+    }
+  }
+
+  /**
+   * Saves root over the row with the same values in keyColumns, if there is one, and inserts it otherwise. Its
+   * graph of children is then saved as by {@link #saveGraph(RoboModel)}. A model with a null key is always inserted.
+   */
+  void upsertGraph(RoboModel root, String[] keyColumns) {
+    final TypedContentValues values = ModelInfo.get(root.getClass()).obtainValues();
+    root.fillContentValues(values);
+    final StorageStatement lookup = getLookup(root.getTableName(), root.getSavedFields(), keyColumns);
+    boolean hasKey = true;
+    for (int i = 0; i < keyColumns.length && hasKey; i++) {
+      hasKey = values.get(keyColumns[i]) != null;
+    }
+
+    long id = RoboModel.UNSAVED_MODEL_ID;
+    if (hasKey) {
+      bind(lookup, keyColumns, values);
+      try {
+        id = lookup.simpleQueryForLong();
+      } catch (final NoResultException e) {
+        // No row with this key yet
+      }
+    }
+    root.mId = id;
+    saveGraph(root);
+  }
+
+  /**
+   * @param collected
+   *          the nodes of the models already collected from this root
+   */
+  private void collect(RoboModel model, int depth, List<Node> nodes, Map<RoboModel, Node> collected,
+      Map<RoboModel, Boolean> path) {
+    if (path.containsKey(model)) {
+      throw new IllegalStateException("Cycle in the @HasMany graph: " + model.getTableName() + " " + model.getId()
+          + " is its own descendant");
+    }
+    final Node node = collected.get(model);
+    if (node == null) {
+      if (mVisited.put(model, Boolean.TRUE) != null) {
+        // Saved from a root before
+        return;
+      }
+      final Node added = new Node(model, depth);
+      nodes.add(added);
+      collected.put(model, added);
+    } else if (node.depth >= depth) {
+      return;
+    } else {
+      // Reached again below another parent: it and its descendants move down, to be saved after that parent
+      node.depth = depth;
+    }
+
+    path.put(model, Boolean.TRUE);
+    for (final RoboModel child : model.getChildModels()) {
+      collect(child, depth + 1, nodes, collected, path);
+    }
+    path.remove(model);
+  }
+
+  /**
+   * @return true if model is saved and values are the ones it last wrote
+   */
+  private boolean isUnchanged(RoboModel model, TypedContentValues values) {
+    final TypedContentValues saved = model.mSavedValues;
+    return model.mId >= 1 && saved != null && values.equals(saved);
+  }
+
+  /**
+   * Inserts model if it has not been saved yet, updates it otherwise, with its values. Its children are not saved.
+   */
+  private void save(RoboModel model, TypedContentValues values) {
+    final String tableName = model.getTableName();
+    final TableStatements statements = getStatements(model, values.getLayout());
+
+    if (model.mId < 1) {
+      values.bind(statements.insert);
+      final long id = statements.insert.executeInsert();
+      if (id == -1) {
+        throw new StorageException("Error inserting a row in " + tableName);
+      }
+      model.mId = id;
+      mInserted.add(model);
+    } else if (statements.update == null) {
+      // No columns besides the id: nothing to update
+    } else if (values.size() == statements.columns.length) {
+      values.bind(statements.update);
+      statements.update.bindLong(statements.columns.length + 1, model.mId);
+      statements.update.execute();
+    } else {
+      // Some columns must be left untouched (e.g. lazy fields that were not loaded)
+      final String[] columns = values.keySet().toArray(new String[values.size()]);
+      final Object[] columnValues = new Object[columns.length];
+      for (int i = 0; i < columns.length; i++) {
+        columnValues[i] = values.get(columns[i]);
+      }
+      mDatabase.update(tableName, columns, columnValues, where(model.mId), null);
+    }
+
+    // Reuses the values the model kept from its last save, if any
+    model.mSavedValues = values.copyTo(model.mSavedValues);
+    mSaved.add(model);
+    mDatabaseManager.tableChanged(mDatabaseName, tableName, model.mId);
+  }
+
+  /**
+   * Must be called if the transaction the models were saved in is rolled back: what they last wrote is gone, and
+   * the models that were inserted are unsaved again.
+   */
+  void rolledBack() {
+    for (final RoboModel model : mSaved) {
+      model.mSavedValues = null;
+    }
+    for (final RoboModel model : mInserted) {
+      model.mId = RoboModel.UNSAVED_MODEL_ID;
+    }
+    mSaved.clear();
+    mInserted.clear();
+  }
+
+  void close() {
+    for (final TableStatements statements : mStatements.values()) {
+      statements.insert.close();
+      if (statements.update != null) {
+        statements.update.close();
+      }
+    }
+    mStatements.clear();
+    for (final StorageStatement lookup : mLookups.values()) {
+      lookup.close();
+    }
+    mLookups.clear();
+    mVisited.clear();
+    mSaved.clear();
+    mInserted.clear();
+  }
+
+  private TableStatements getStatements(RoboModel model, TypedContentValues.Layout layout) {
+    final String tableName = model.getTableName();
+    final List<Field> fields = model.getSavedFields();
+    TableStatements statements = mStatements.get(tableName);
+    if (statements == null) {
+      mDatabaseManager.checkFullText(mDatabaseName, model.getClass(), mDatabase);
+      // Compiling fails if the table or some columns are missing: fix the table and compile again
+      try {
+        statements = new TableStatements(tableName, layout.getColumns());
+      } catch (final StorageException e) {
+        mDatabaseManager.createOrPopulateTable(tableName, fields, mDatabase);
+        statements = new TableStatements(tableName, layout.getColumns());
+      }
+      mStatements.put(tableName, statements);
+    }
+    return statements;
+  }
+
+  /**
+   * Compiles the query of the id of the row with the given key, and indexes the key columns the first time
+   */
+  private StorageStatement getLookup(String tableName, List<Field> fields, String[] keyColumns) {
+    final StringBuilder key = new StringBuilder(tableName);
+    for (final String column : keyColumns) {
+      key.append('_').append(column);
+    }
+    StorageStatement lookup = mLookups.get(key.toString());
+    if (lookup != null) {
+      return lookup;
+    }
+
+    final StringBuilder index = new StringBuilder("CREATE INDEX IF NOT EXISTS ").append(key).append(" ON ")
+        .append(tableName).append(" (");
+    final StringBuilder query = new StringBuilder("SELECT ").append(_ID).append(" FROM ").append(tableName)
+        .append(" WHERE ");
+    for (int i = 0; i < keyColumns.length; i++) {
+      index.append(i > 0 ? ", " : "").append(keyColumns[i]);
+      query.append(i > 0 ? " AND " : "").append(keyColumns[i]).append(" = ?");
+    }
+    index.append(')');
+    query.append(" LIMIT 1");
+
+    // Fails if the table or some columns are missing: fix the table and try again
+    try {
+      mDatabase.execSQL(index.toString());
+    } catch (final StorageException e) {
+      mDatabaseManager.createOrPopulateTable(tableName, fields, mDatabase);
+      mDatabase.execSQL(index.toString());
+    }
+    lookup = mDatabase.compileStatement(query.toString());
+    mLookups.put(key.toString(), lookup);
+    return lookup;
+  }
+
+  /**
+   * Binds the values of the given columns to the first parameters of statement, in order. Missing values are bound as
+   * NULL.
+   */
+  static void bind(StorageStatement statement, String[] columns, TypedContentValues values) {
+    final TypedContentValues.Layout layout = values.getLayout();
+    for (int i = 0; i < columns.length; i++) {
+      final int slot = layout.getSlot(columns[i]);
+      if (slot >= 0) {
+        values.bind(statement, i + 1, slot);
+      } else {
+        statement.bindNull(i + 1);
+      }
+    }
+  }
+
+  private static class Node implements Comparable<Node> {
+    final RoboModel model;
+    int depth;
+
+    Node(RoboModel model, int depth) {
+      this.model = model;
+      this.depth = depth;
+    }
+
+    @Override
+    public int compareTo(Node other) {
+      return depth < other.depth ? -1 : (depth == other.depth ? 0 : 1);
+    }
+  }
+
+  private class TableStatements {
+    final String[] columns;
+    final StorageStatement insert;
+    final StorageStatement update;
+
+    /**
+     * @param columns
+     *          the columns of the table, in the order of the slots of its values
+     */
+    TableStatements(String tableName, String[] columns) {
+      this.columns = columns;
+      if (columns.length == 0) {
+        insert = mDatabase.compileStatement("INSERT INTO " + tableName + " (" + _ID + ") VALUES (NULL)");
+        update = null;
+        return;
+      }
+
+      final StringBuilder insertSql = new StringBuilder("INSERT INTO ").append(tableName).append(" (");
+      final StringBuilder valuesSql = new StringBuilder(") VALUES (");
+      final StringBuilder updateSql = new StringBuilder("UPDATE ").append(tableName).append(" SET ");
+      for (int i = 0; i < columns.length; i++) {
+        final String separator = i > 0 ? ", " : "";
+        insertSql.append(separator).append(columns[i]);
+        valuesSql.append(separator).append('?');
+        updateSql.append(separator).append(columns[i]).append(" = ?");
+      }
+      insertSql.append(valuesSql).append(')');
+      updateSql.append(" WHERE ").append(_ID).append(" = ?");
+
+      insert = mDatabase.compileStatement(insertSql.toString());
+      try {
+        update = mDatabase.compileStatement(updateSql.toString());
+      } catch (final StorageException e) {
+        insert.close();
+        throw e;
+      }
+    }
+  }
+}
@@ -0,0 +1,335 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import com.nonninz.robomodel.annotations.Stored;
+
+/**
+ * BinaryCodec:
+ * 1. Encodes the JSON tree of a field value into a compact binary form for BLOB columns
+ * 2. Decodes it back into the declared type of the field
+ *
+ * Every value starts with a one byte tag. Integral numbers are zigzag varints, floating point numbers use four
+ * bytes when that is lossless, and strings (object keys included) are written once and then referenced by index.
+ *
+ * @see Stored.Codec#BINARY
+ */
+final class BinaryCodec {
+  private static final int TAG_NULL = 0;
+  private static final int TAG_FALSE = 1;
+  private static final int TAG_TRUE = 2;
+  private static final int TAG_INTEGER = 3;
+  private static final int TAG_FLOAT = 4;
+  private static final int TAG_DOUBLE = 5;
+  private static final int TAG_STRING = 6;
+  private static final int TAG_STRING_REF = 7;
+  private static final int TAG_ARRAY = 8;
+  private static final int TAG_OBJECT = 9;
+
+  /** Integral doubles up to this magnitude are exactly representable as longs */
+  private static final double MAX_EXACT_INTEGER = 9007199254740992d;
+
+  private BinaryCodec() {
+  }
+
+  static boolean isBinary(Field field) {
+    final Stored stored = field.getAnnotation(Stored.class);
+    return stored != null && stored.codec() == Stored.Codec.BINARY;
+  }
+
+  /**
+   * @return the encoded value of field, or null if value is null
+   */
+  static byte[] write(Field field, Object value) {
+    if (value == null) {
+      return null;
+    }
+    return encode(JsonAdapters.gson().toJsonTree(value, field.getGenericType()));
+  }
+
+  /**
+   * @throws IllegalArgumentException
+   *           if bytes can not be decoded into the type of field
+   */
+  static Object read(Field field, byte[] bytes) {
+    if (bytes == null) {
+      return null;
+    }
+
+    try {
+      return JsonAdapters.gson().fromJson(decode(bytes), field.getGenericType());
+    } catch (final JsonParseException e) {
+      final String msg = String.format("Type %s is not supported for field %s", field.getType(), field.getName());
+      throw new IllegalArgumentException(msg, e);
+    }
+  }
+
+  static byte[] encode(JsonElement tree) {
+    return new Encoder().encode(tree);
+  }
+
+  /**
+   * @throws JsonParseException
+   *           if bytes are not a valid encoding
+   */
+  static JsonElement decode(byte[] bytes) {
+    final Decoder decoder = new Decoder(bytes);
+    final JsonElement tree = decoder.readElement();
+    if (decoder.mPosition != bytes.length) {
+      throw new JsonParseException("Trailing bytes after encoded value");
+    }
+    return tree;
+  }
+
+  private static class Encoder {
+    private final ByteArrayOutputStream mOut = new ByteArrayOutputStream();
+    private final Map<String, Integer> mStrings = new HashMap<String, Integer>();
+
+    byte[] encode(JsonElement tree) {
+      writeElement(tree);
+      return mOut.toByteArray();
+    }
+
+    private void writeElement(JsonElement element) {
+      if (element == null || element.isJsonNull()) {
+        mOut.write(TAG_NULL);
+      } else if (element.isJsonArray()) {
+        final JsonArray array = element.getAsJsonArray();
+        mOut.write(TAG_ARRAY);
+        writeVarint(array.size());
+        for (final JsonElement item : array) {
+          writeElement(item);
+        }
+      } else if (element.isJsonObject()) {
+        final JsonObject object = element.getAsJsonObject();
+        final Set<Map.Entry<String, JsonElement>> entries = object.entrySet();
+        mOut.write(TAG_OBJECT);
+        writeVarint(entries.size());
+        for (final Map.Entry<String, JsonElement> entry : entries) {
+          writeString(entry.getKey());
+          writeElement(entry.getValue());
+        }
+      } else {
+        writePrimitive(element.getAsJsonPrimitive());
+      }
+    }
+
+    private void writePrimitive(JsonPrimitive primitive) {
+      if (primitive.isBoolean()) {
+        mOut.write(primitive.getAsBoolean() ? TAG_TRUE : TAG_FALSE);
+      } else if (primitive.isString()) {
+        writeString(primitive.getAsString());
+      } else {
+        writeNumber(primitive.getAsNumber());
+      }
+    }
+
+    private void writeNumber(Number number) {
+      if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte) {
+        mOut.write(TAG_INTEGER);
+        writeVarint(zigzag(number.longValue()));
+        return;
+      }
+      if (number instanceof BigInteger || number instanceof BigDecimal) {
+        // Arbitrary precision is kept as its decimal representation
+        writeString(number.toString());
+        return;
+      }
+
+      final double value = number.doubleValue();
+      if (value == Math.rint(value) && Math.abs(value) <= MAX_EXACT_INTEGER
+          && !(value == 0 && 1 / value < 0)) {
+        mOut.write(TAG_INTEGER);
+        writeVarint(zigzag((long) value));
+      } else if ((float) value == value) {
+        mOut.write(TAG_FLOAT);
+        writeFixed(Float.floatToIntBits((float) value), 4);
+      } else {
+        mOut.write(TAG_DOUBLE);
+        writeFixed(Double.doubleToLongBits(value), 8);
+      }
+    }
+
+    private void writeString(String string) {
+      final Integer index = mStrings.get(string);
+      if (index != null) {
+        mOut.write(TAG_STRING_REF);
+        writeVarint(index);
+        return;
+      }
+
+      mStrings.put(string, mStrings.size());
+      final byte[] bytes = utf8(string);
+      mOut.write(TAG_STRING);
+      writeVarint(bytes.length);
+      mOut.write(bytes, 0, bytes.length);
+    }
+
+    private void writeVarint(long value) {
+      while ((value & ~0x7FL) != 0) {
+        mOut.write((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      mOut.write((int) value);
+    }
+
+    private void writeFixed(long bits, int length) {
+      for (int i = length - 1; i >= 0; i--) {
+        mOut.write((int) (bits >>> (8 * i)));
+      }
+    }
+
+    private static long zigzag(long value) {
+      return (value << 1) ^ (value >> 63);
+    }
+
+    private static byte[] utf8(String string) {
+      try {
+        return string.getBytes("UTF-8");
+      } catch (final UnsupportedEncodingException e) {
+        // UTF-8 is always supported
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  private static class Decoder {
+    private final byte[] mBytes;
+    private final List<String> mStrings = new ArrayList<String>();
+    private int mPosition;
+
+    Decoder(byte[] bytes) {
+      mBytes = bytes;
+    }
+
+    JsonElement readElement() {
+      final int tag = readByte();
+      switch (tag) {
+      case TAG_NULL:
+        return JsonNull.INSTANCE;
+      case TAG_FALSE:
+        return new JsonPrimitive(false);
+      case TAG_TRUE:
+        return new JsonPrimitive(true);
+      case TAG_INTEGER:
+        final long zigzag = readVarint();
+        return new JsonPrimitive((zigzag >>> 1) ^ -(zigzag & 1));
+      case TAG_FLOAT:
+        return new JsonPrimitive((double) Float.intBitsToFloat((int) readFixed(4)));
+      case TAG_DOUBLE:
+        return new JsonPrimitive(Double.longBitsToDouble(readFixed(8)));
+      case TAG_STRING:
+      case TAG_STRING_REF:
+        return new JsonPrimitive(readString(tag));
+      case TAG_ARRAY:
+        final int size = readLength();
+        final JsonArray array = new JsonArray();
+        for (int i = 0; i < size; i++) {
+          array.add(readElement());
+        }
+        return array;
+      case TAG_OBJECT:
+        final int entries = readLength();
+        final JsonObject object = new JsonObject();
+        for (int i = 0; i < entries; i++) {
+          final String key = readString(readByte());
+          object.add(key, readElement());
+        }
+        return object;
+      default:
+        throw new JsonParseException("Unknown tag " + tag + " at offset " + (mPosition - 1));
+      }
+    }
+
+    private String readString(int tag) {
+      if (tag == TAG_STRING_REF) {
+        final int index = readLength();
+        if (index >= mStrings.size()) {
+          throw new JsonParseException("Invalid string reference " + index);
+        }
+        return mStrings.get(index);
+      } else if (tag != TAG_STRING) {
+        throw new JsonParseException("Expected a string at offset " + (mPosition - 1));
+      }
+
+      final int length = readLength();
+      if (mPosition + length > mBytes.length) {
+        throw new JsonParseException("Truncated string");
+      }
+      try {
+        final String string = new String(mBytes, mPosition, length, "UTF-8");
+        mPosition += length;
+        mStrings.add(string);
+        return string;
+      } catch (final UnsupportedEncodingException e) {
+        // UTF-8 is always supported
+        throw new RuntimeException(e);
+      }
+    }
+
+    private int readByte() {
+      if (mPosition >= mBytes.length) {
+        throw new JsonParseException("Unexpected end of data");
+      }
+      return mBytes[mPosition++] & 0xFF;
+    }
+
+    private long readVarint() {
+      long result = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        final int b = readByte();
+        result |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return result;
+        }
+      }
+      throw new JsonParseException("Malformed varint");
+    }
+
+    private int readLength() {
+      final long length = readVarint();
+      if (length > Integer.MAX_VALUE) {
+        throw new JsonParseException("Length out of range: " + length);
+      }
+      return (int) length;
+    }
+
+    private long readFixed(int length) {
+      long bits = 0;
+      for (int i = 0; i < length; i++) {
+        bits = (bits << 8) | readByte();
+      }
+      return bits;
+    }
+  }
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import static android.provider.BaseColumns._ID;
+import static com.nonninz.robomodel.DatabaseManager.where;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.nonninz.robomodel.annotations.HasMany;
+import com.nonninz.robomodel.exceptions.StorageException;
+import com.nonninz.robomodel.storage.StorageCursor;
+import com.nonninz.robomodel.storage.StorageDatabase;
+
+/**
+ * CascadeDeleter:
+ * 1. Deletes the rows of a model table together with the rows of its @HasMany children, recursively
+ * 2. Selects the children with subqueries on the foreign keys, so every table takes one DELETE and no model is
+ * loaded
+ * 3. Walks the descendants of a class that has many of itself level by level, reading only their ids
+ *
+ * Children are deleted before their parents, while the subqueries can still find them. Relationships declared with
+ * cascade = false are not followed.
+ */
+class CascadeDeleter {
+  // Ids per statement when deleting descendants by id
+  private static final int ID_CHUNK_SIZE = 500;
+
+  private final DatabaseManager mDatabaseManager;
+  private final StorageDatabase mDatabase;
+  private final String mDatabaseName;
+  private final Set<Class<? extends RoboModel>> mPath = new HashSet<Class<? extends RoboModel>>();
+
+  CascadeDeleter(DatabaseManager databaseManager, StorageDatabase database, String databaseName) {
+    mDatabaseManager = databaseManager;
+    mDatabase = database;
+    mDatabaseName = databaseName;
+  }
+
+  /**
+   * @param selection
+   *          the rows of klass to delete, or null for all of them
+   * @return the number of rows of klass matching selection that were deleted, descendants excluded
+   */
+  int delete(Class<? extends RoboModel> klass, String selection, String[] selectionArgs) {
+    return delete(klass, selection, selectionArgs, ChangeNotifier.ALL_ROWS);
+  }
+
+  /**
+   * Deletes one model and its descendants
+   */
+  int delete(Class<? extends RoboModel> klass, long id) {
+    return delete(klass, where(id), null, id);
+  }
+
+  private int delete(Class<? extends RoboModel> klass, String selection, String[] selectionArgs, long rowId) {
+    // An indirect cycle of classes (A has many B has many A) is cut where it closes
+    if (!mPath.add(klass)) {
+      return 0;
+    }
+
+    final ModelInfo info = ModelInfo.get(klass);
+    final String tableName = klass.getSimpleName();
+    // A missing table has no rows for the subqueries of the children to find: create it, as a query would
+    if (!DatabaseManager.tableExists(tableName, mDatabase)) {
+      mDatabaseManager.createOrPopulateTable(tableName, info.getFields(), mDatabase);
+      mPath.remove(klass);
+      return 0;
+    }
+
+    final List<Class<? extends RoboModel>> children = new ArrayList<Class<? extends RoboModel>>();
+    final List<String> foreignKeys = new ArrayList<String>();
+    String selfForeignKey = null;
+    for (final Field field : info.getFields()) {
+      final HasMany hasMany = field.getAnnotation(HasMany.class);
+      final String foreignKey = hasMany != null ? ModelInfo.getForeignKey(hasMany.value(), klass) : null;
+      if (foreignKey == null || !hasMany.cascade()) {
+        continue;
+      }
+      if (hasMany.value() == klass) {
+        selfForeignKey = foreignKey;
+      } else {
+        children.add(hasMany.value());
+        foreignKeys.add(foreignKey);
+      }
+    }
+
+    // Descendants of the same class are collected level by level, each row once, so neither the depth of the tree
+    // nor a cycle in the data can make the statements grow. Deleting every row needs no walk.
+    final List<String> descendants = selfForeignKey != null && selection != null
+        ? collectDescendants(klass, selfForeignKey, selection, selectionArgs) : new ArrayList<String>();
+
+    for (int c = 0; c < children.size(); c++) {
+      final Class<? extends RoboModel> child = children.get(c);
+      final String foreignKey = foreignKeys.get(c);
+      delete(child, childSelection(foreignKey, tableName, selection), selectionArgs, ChangeNotifier.ALL_ROWS);
+      for (final String ids : descendants) {
+        delete(child, foreignKey + " IN (" + ids + ")", null, ChangeNotifier.ALL_ROWS);
+      }
+    }
+    for (final String ids : descendants) {
+      deleteRows(klass, _ID + " IN (" + ids + ")", null, ChangeNotifier.ALL_ROWS);
+    }
+    final int deleted = deleteRows(klass, selection, selectionArgs, rowId);
+
+    mPath.remove(klass);
+    return deleted;
+  }
+
+  private static String childSelection(String foreignKey, String parentTable, String parentSelection) {
+    final StringBuilder sql = new StringBuilder(foreignKey).append(" IN (SELECT ").append(_ID).append(" FROM ")
+        .append(parentTable);
+    if (parentSelection != null) {
+      sql.append(" WHERE ").append(parentSelection);
+    }
+    return sql.append(')').toString();
+  }
+
+  /**
+   * @return the ids of the rows of klass below the ones matching selection through foreignKey, at any depth, as
+   *         comma-separated lists of at most {@link #ID_CHUNK_SIZE} ids. The rows matching selection are left out.
+   */
+  private List<String> collectDescendants(Class<? extends RoboModel> klass, String foreignKey, String selection,
+      String[] selectionArgs) {
+    final String tableName = klass.getSimpleName();
+    final Set<Long> visited = new HashSet<Long>();
+    List<Long> level = queryIds(klass, "SELECT " + _ID + " FROM " + tableName + " WHERE " + selection,
+        selectionArgs);
+    visited.addAll(level);
+
+    final List<String> descendants = new ArrayList<String>();
+    while (!level.isEmpty()) {
+      final List<Long> next = new ArrayList<Long>();
+      for (final String ids : joinIds(level)) {
+        final String sql = "SELECT " + _ID + " FROM " + tableName + " WHERE " + foreignKey + " IN (" + ids + ")";
+        for (final Long id : queryIds(klass, sql, null)) {
+          if (visited.add(id)) {
+            next.add(id);
+          }
+        }
+      }
+      descendants.addAll(joinIds(next));
+      level = next;
+    }
+    return descendants;
+  }
+
+  private static List<String> joinIds(List<Long> ids) {
+    final List<String> chunks = new ArrayList<String>();
+    final StringBuilder chunk = new StringBuilder();
+    for (int i = 0; i < ids.size(); i++) {
+      if (i > 0 && i % ID_CHUNK_SIZE == 0) {
+        chunks.add(chunk.toString());
+        chunk.setLength(0);
+      }
+      chunk.append(chunk.length() > 0 ? ", " : "").append(ids.get(i));
+    }
+    if (chunk.length() > 0) {
+      chunks.add(chunk.toString());
+    }
+    return chunks;
+  }
+
+  private List<Long> queryIds(Class<? extends RoboModel> klass, String sql, String[] selectionArgs) {
+    // If the table or the foreign key are missing, fix the table and query again
+    StorageCursor query;
+    try {
+      query = mDatabase.rawQuery(sql, selectionArgs);
+    } catch (final StorageException e) {
+      mDatabaseManager.createOrPopulateTable(klass.getSimpleName(), ModelInfo.get(klass).getFields(), mDatabase);
+      query = mDatabase.rawQuery(sql, selectionArgs);
+    }
+    try {
+      final List<Long> ids = new ArrayList<Long>(query.getCount());
+      for (query.moveToFirst(); !query.isAfterLast(); query.moveToNext()) {
+        ids.add(query.getLong(0));
+      }
+      return ids;
+    } finally {
+      query.close();
+    }
+  }
+
+  private int deleteRows(Class<? extends RoboModel> klass, String selection, String[] selectionArgs, long rowId) {
+    final String tableName = klass.getSimpleName();
+    int deleted;
+    // If the table or the foreign key are missing, fix the table and delete again
+    // "1" makes SQLite count the rows when deleting all of them
+    final String whereClause = selection != null ? selection : "1";
+    try {
+      deleted = mDatabase.delete(tableName, whereClause, selectionArgs);
+    } catch (final StorageException e) {
+      mDatabaseManager.createOrPopulateTable(tableName, ModelInfo.get(klass).getFields(), mDatabase);
+      deleted = mDatabase.delete(tableName, whereClause, selectionArgs);
+    }
+    if (deleted > 0) {
+      mDatabaseManager.tableChanged(mDatabaseName, tableName, rowId);
+    }
+    return deleted;
+  }
+}
@@ -0,0 +1,285 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import roboguice.util.Ln;
+
+/**
+ * ChangeNotifier:
+ * 1. Collects the tables written by {@link DatabaseManager}, and bumps their {@link TableVersions}
+ * 2. Coalesces them into one notification per table per window, or per batch of writes
+ * 3. Delivers the notifications to the registered listeners on their executors
+ *
+ * Writes made in a batch bump the versions of their tables when the outermost batch ends. Batches end after their
+ * transaction, so a query that reads the new version also reads the committed rows.
+ *
+ * Along with the table, each notification carries the ids of the rows that were written, unless a bulk operation
+ * touched rows it did not identify. Only {@link RowChangeListener}s receive them.
+ */
+final class ChangeNotifier {
+  /** Id passed to {@link #tableChanged(String, String, long)} when the written rows are not known */
+  static final long ALL_ROWS = -1;
+
+  static final long DEFAULT_WINDOW_MS = 50;
+
+  private static final List<Registration> sRegistrations = new CopyOnWriteArrayList<Registration>();
+  private static final Map<String, Changes> sPending = new LinkedHashMap<String, Changes>();
+  private static final ThreadLocal<Batch> sBatch = new ThreadLocal<Batch>();
+  private static volatile long sWindowMs = DEFAULT_WINDOW_MS;
+  private static boolean sFlushScheduled;
+  private static ScheduledExecutorService sScheduler;
+
+  /** Runs listeners on the notifier thread itself */
+  private static final Executor DIRECT = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  /**
+   * Also receives the ids of the changed rows
+   */
+  interface RowChangeListener extends TableChangeListener {
+    /**
+     * @param rowIds
+     *          the ids of the rows that were inserted, updated or deleted, or null if any row may have changed
+     */
+    void onRowsChanged(String tableName, Set<Long> rowIds);
+  }
+
+  private ChangeNotifier() {
+  }
+
+  static void setWindow(long windowMs) {
+    if (windowMs < 0) {
+      throw new IllegalArgumentException("Notification window can not be negative");
+    }
+    sWindowMs = windowMs;
+  }
+
+  static void register(String databaseName, String tableName, TableChangeListener listener, Executor executor) {
+    sRegistrations.add(new Registration(databaseName, tableName, listener, executor != null ? executor : DIRECT));
+  }
+
+  static void unregister(TableChangeListener listener) {
+    for (final Registration registration : sRegistrations) {
+      if (registration.listener == listener) {
+        sRegistrations.remove(registration);
+      }
+    }
+  }
+
+  /**
+   * Starts a batch of writes on the calling thread: their notifications are held until the outermost batch ends.
+   * Every call must be matched by {@link #endBatch(boolean)}, in a finally block.
+   */
+  static void beginBatch() {
+    Batch batch = sBatch.get();
+    if (batch == null) {
+      batch = new Batch();
+      sBatch.set(batch);
+    }
+    batch.depth++;
+  }
+
+  /**
+   * @param committed
+   *          whether the writes of this level were committed. If any level was not, the whole transaction rolled back:
+   *          its changes are dropped when the outermost batch ends.
+   */
+  static void endBatch(boolean committed) {
+    final Batch batch = sBatch.get();
+    batch.rolledBack |= !committed;
+    if (--batch.depth == 0) {
+      sBatch.remove();
+      if (batch.rolledBack) {
+        return;
+      }
+      for (final String key : batch.tables) {
+        final int separator = key.indexOf('\n');
+        TableVersions.bump(key.substring(0, separator), key.substring(separator + 1));
+      }
+      if (!batch.changes.isEmpty()) {
+        post(batch.changes);
+      }
+    }
+  }
+
+  /**
+   * @param rowId
+   *          the id of the written row, or {@link #ALL_ROWS}
+   */
+  static void tableChanged(String databaseName, String tableName, long rowId) {
+    final Batch batch = sBatch.get();
+    if (batch != null) {
+      batch.tables.add(key(databaseName, tableName));
+    } else {
+      TableVersions.bump(databaseName, tableName);
+    }
+    if (sRegistrations.isEmpty()) {
+      return;
+    }
+
+    final Map<String, Changes> changes = Collections.singletonMap(key(databaseName, tableName), new Changes(rowId));
+    if (batch != null) {
+      merge(batch.changes, changes);
+    } else {
+      post(changes);
+    }
+  }
+
+  private static synchronized void post(Map<String, Changes> changes) {
+    merge(sPending, changes);
+    if (!sFlushScheduled) {
+      sFlushScheduled = true;
+      getScheduler().schedule(new Runnable() {
+        @Override
+        public void run() {
+          flush();
+        }
+      }, sWindowMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private static void merge(Map<String, Changes> into, Map<String, Changes> changes) {
+    for (final Map.Entry<String, Changes> entry : changes.entrySet()) {
+      final Changes existing = into.get(entry.getKey());
+      if (existing == null) {
+        into.put(entry.getKey(), new Changes(entry.getValue()));
+      } else {
+        existing.add(entry.getValue());
+      }
+    }
+  }
+
+  private static void flush() {
+    final Map<String, Changes> changes;
+    synchronized (ChangeNotifier.class) {
+      changes = new LinkedHashMap<String, Changes>(sPending);
+      sPending.clear();
+      sFlushScheduled = false;
+    }
+
+    for (final Map.Entry<String, Changes> entry : changes.entrySet()) {
+      final String key = entry.getKey();
+      for (final Registration registration : sRegistrations) {
+        if (registration.matches(key)) {
+          try {
+            registration.deliver(key.substring(key.indexOf('\n') + 1), entry.getValue().rowIds);
+          } catch (final RuntimeException e) {
+            Ln.e(e, "Error while delivering change of %s", key);
+          }
+        }
+      }
+    }
+  }
+
+  private static synchronized ScheduledExecutorService getScheduler() {
+    if (sScheduler == null) {
+      sScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          final Thread thread = new Thread(runnable, "RoboModel-changes");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return sScheduler;
+  }
+
+  private static String key(String databaseName, String tableName) {
+    return databaseName + '\n' + tableName;
+  }
+
+  /**
+   * The rows written to one table, or null ids once any row may have been written
+   */
+  private static class Changes {
+    Set<Long> rowIds;
+
+    Changes(long rowId) {
+      if (rowId != ALL_ROWS) {
+        rowIds = new LinkedHashSet<Long>();
+        rowIds.add(rowId);
+      }
+    }
+
+    Changes(Changes other) {
+      rowIds = other.rowIds != null ? new LinkedHashSet<Long>(other.rowIds) : null;
+    }
+
+    void add(Changes other) {
+      if (rowIds != null) {
+        if (other.rowIds != null) {
+          rowIds.addAll(other.rowIds);
+        } else {
+          rowIds = null;
+        }
+      }
+    }
+  }
+
+  private static class Batch {
+    int depth;
+    boolean rolledBack;
+    final Set<String> tables = new LinkedHashSet<String>();
+    final Map<String, Changes> changes = new LinkedHashMap<String, Changes>();
+  }
+
+  private static class Registration {
+    final String key;
+    final TableChangeListener listener;
+    final Executor executor;
+
+    Registration(String databaseName, String tableName, TableChangeListener listener, Executor executor) {
+      this.key = key(databaseName, tableName);
+      this.listener = listener;
+      this.executor = executor;
+    }
+
+    boolean matches(String changedKey) {
+      return key.equals(changedKey);
+    }
+
+    void deliver(final String tableName, final Set<Long> rowIds) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          if (listener instanceof RowChangeListener) {
+            ((RowChangeListener) listener).onRowsChanged(tableName, rowIds);
+          } else {
+            listener.onTableChanged(tableName);
+          }
+        }
+      });
+    }
+  }
+}
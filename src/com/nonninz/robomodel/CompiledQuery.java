@@ -0,0 +1,107 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+/**
+ * A query built by {@link Query}, with its SQL built once. Run it with new values for its conditions, given in the
+ * order in which the conditions were added. Instances are immutable and can be shared between threads.
+ *
+ * Only the SQL is kept here: a {@link com.nonninz.robomodel.storage.StorageStatement} returns no rows, so it can not
+ * run the query. Every run passes the same SQL string to the connection that the storage provider keeps open for the
+ * database, whose statement cache reuses the statement compiled by the previous run. Android's SQLiteDatabase caches
+ * as many statements as set by its setMaxSqlCacheSize(), the JDBC backend the 25 last used ones. A query that falls
+ * out of that cache, or runs on a connection opened again, is compiled again.
+ *
+ * @param <T>
+ *          the model class
+ */
+public class CompiledQuery<T extends RoboModel> {
+  private final RoboManager<T> mManager;
+  private final String mSql;
+  private final Field[] mArgumentFields;
+
+  CompiledQuery(RoboManager<T> manager, String sql, Field[] argumentFields) {
+    mManager = manager;
+    mSql = sql;
+    mArgumentFields = argumentFields;
+  }
+
+  /**
+   * @param values
+   *          one value for every condition that takes one
+   * @throws IllegalArgumentException
+   *           if the number of values is wrong, or a value is null
+   */
+  public List<T> list(Object... values) {
+    if (values.length != mArgumentFields.length) {
+      final String msg = String.format("Query takes %d values, %d given", mArgumentFields.length, values.length);
+      throw new IllegalArgumentException(msg);
+    }
+    final String[] arguments = new String[values.length];
+    for (int i = 0; i < values.length; i++) {
+      arguments[i] = toArgument(mArgumentFields[i], values[i]);
+    }
+    return mManager.select(mSql, arguments);
+  }
+
+  public int getArgumentCount() {
+    return mArgumentFields.length;
+  }
+
+  /**
+   * @return value as it is stored in the column of field
+   */
+  static String toArgument(Field field, Object value) {
+    if (value == null) {
+      throw new IllegalArgumentException("Query values can not be null");
+    } else if (field != null && !accepts(field, value)) {
+      final String msg = String.format("Value %s does not fit column %s", value, field.getName());
+      throw new IllegalArgumentException(msg);
+    } else if (value instanceof Boolean) {
+      return (Boolean) value ? "1" : "0";
+    } else if (value instanceof Enum) {
+      final Enum<?> constant = (Enum<?>) value;
+      return field != null && EnumTable.isOrdinal(field) ? String.valueOf(constant.ordinal()) : constant.name();
+    } else if (value instanceof RoboModel) {
+      return String.valueOf(((RoboModel) value).getId());
+    } else {
+      return value.toString();
+    }
+  }
+
+  private static boolean accepts(Field field, Object value) {
+    final Class<?> type = field.getType();
+    if (type == Boolean.TYPE) {
+      return value instanceof Boolean;
+    } else if (type.isPrimitive()) {
+      return value instanceof Number;
+    } else if (type.isEnum()) {
+      return type.isInstance(value);
+    } else if (RoboModel.class.isAssignableFrom(type)) {
+      return value instanceof RoboModel || value instanceof Number;
+    }
+    // Strings and JSON columns, compared as text
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return mSql;
+  }
+}
@@ -18,22 +18,27 @@ package com.nonninz.robomodel;
 import static android.provider.BaseColumns._ID;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import roboguice.util.Ln;
 import android.content.Context;
-import android.database.DatabaseUtils;
-import android.database.SQLException;
-import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteException;
 
+import com.nonninz.robomodel.RoboMetricsListener.Operation;
 import com.nonninz.robomodel.annotations.BelongsTo;
+import com.nonninz.robomodel.exceptions.StorageException;
+import com.nonninz.robomodel.storage.Storage;
+import com.nonninz.robomodel.storage.StorageDatabase;
 
 /**
  * 
  * DatabaseManager: 
  * 1. Ensures the correct schema for the Database 
- * 2. Holds the database specific configuration
+ * 2. Holds the database specific configuration and routes each model class to its database
+ * 3. Mirrors the @FullText columns of a table in an FTS3 table, kept in sync by triggers
  * 
  */
 class DatabaseManager {
@@ -41,6 +46,13 @@ class DatabaseManager {
     return _ID + " = " + id;
   }
 
+  /**
+   * @return the name of the FTS table that mirrors the @FullText columns of tableName
+   */
+  static String getFullTextTable(String tableName) {
+    return tableName + "_fts";
+  }
+
   public static String getTypeForField(Field field) {
     final Class<?> type = field.getType();
 
@@ -61,15 +73,19 @@ class DatabaseManager {
     } else if (type == Short.TYPE) {
       return "INTEGER";
     } else if (type.isEnum()) {
-      return "TEXT";
+      return EnumTable.isOrdinal(field) ? "INTEGER" : "TEXT";
     } else if (field.isAnnotationPresent(BelongsTo.class)) {
       return "INTEGER";
+    } else if (BinaryCodec.isBinary(field)) {
+      return "BLOB";
     } else {
       return "TEXT";
     }
   }
 
-  private static String sDatabaseName;
+  // Tables whose FTS table was checked against their @FullText fields
+  private static final Map<String, Boolean> sCheckedFullText = new ConcurrentHashMap<String, Boolean>();
+
   private final Context mContext;
 
   /**
@@ -79,11 +95,19 @@ class DatabaseManager {
     mContext = context;
   }
 
+  /**
+   * @return the name of the default database, the package name of the app
+   */
   public String getDatabaseName() {
-    if (sDatabaseName == null) {
-      sDatabaseName = mContext.getPackageName();
-    }
-    return sDatabaseName;
+    return mContext.getPackageName();
+  }
+
+  /**
+   * @return the name of the database of klass: the one of its @Database annotation, or the default one
+   */
+  String getDatabaseName(Class<? extends RoboModel> klass) {
+    final String name = ModelInfo.get(klass).getDatabaseName();
+    return name != null ? name : getDatabaseName();
   }
 
   /**
@@ -92,17 +116,66 @@ class DatabaseManager {
    * @param type
    * @param db
    */
-  private void addColumn(String tableName, String column, String type, SQLiteDatabase db) {
+  private void addColumn(String tableName, String column, String type, StorageDatabase db) {
     final String sql = String.format("ALTER TABLE %s ADD %s %s;", tableName, column, type);
     db.execSQL(sql);
   }
 
-  long insertOrUpdate(String tableName, TypedContentValues values, long id, SQLiteDatabase database) {
-    if (id < 1) {
-      return database.insertOrThrow(tableName, null, values.toContentValues());
-    } else {
-      database.update(tableName, values.toContentValues(), where(id), null);
-      return id;
+  /**
+   * Must be called after every write to a table, to invalidate what was read from it before. Inside a batch of
+   * {@link ChangeNotifier}, the table is only invalidated when the batch ends, after its transaction.
+   * 
+   * @param rowId
+   *          the id of the written row, or {@link ChangeNotifier#ALL_ROWS} if more rows may have been written
+   */
+  void tableChanged(String databaseName, String tableName, long rowId) {
+    ChangeNotifier.tableChanged(databaseName, tableName, rowId);
+  }
+
+  /**
+   * Saves models and the graphs of their @HasMany children in a single transaction, with compiled statements. Change
+   * notifications are sent once the transaction is over.
+   * 
+   * @param databaseName
+   * @param models
+   */
+  void saveTrees(String databaseName, Collection<? extends RoboModel> models) {
+    saveTrees(databaseName, models, null);
+  }
+
+  /**
+   * Same as {@link #saveTrees(String, Collection)}, but each model replaces the row with the same values in
+   * keyColumns, if there is one. Models with a null key are inserted.
+   * 
+   * @param keyColumns
+   *          the natural key of the models, or null to save them by id
+   */
+  void saveTrees(String databaseName, Collection<? extends RoboModel> models, String[] keyColumns) {
+    final long start = Metrics.start();
+    final StorageDatabase db = openOrCreateDatabase(databaseName);
+    final BatchWriter writer = new BatchWriter(this, db, databaseName);
+    boolean successful = false;
+    ChangeNotifier.beginBatch();
+    db.beginTransaction();
+    try {
+      for (final RoboModel model : models) {
+        if (keyColumns != null) {
+          writer.upsertGraph(model, keyColumns);
+        } else {
+          writer.saveGraph(model);
+        }
+      }
+      db.setTransactionSuccessful();
+      successful = true;
+    } finally {
+      db.endTransaction();
+      if (!successful) {
+        writer.rolledBack();
+      }
+      writer.close();
+      db.close();
+      ChangeNotifier.endBatch(successful);
+      Metrics.operation(Operation.SAVE, models.isEmpty() ? null : models.iterator().next().getTableName(), start);
     }
   }
 
@@ -115,19 +188,22 @@ class DatabaseManager {
    *          The columns of the table
    * @param db
    *          The database where the table is situated
-   * @throws SQLException
+   * @throws StorageException
    *           if it cannot create the table
    */
-  void createOrPopulateTable(String tableName, List<Field> fields, SQLiteDatabase db) {
+  void createOrPopulateTable(String tableName, List<Field> fields, StorageDatabase db) {
 
     Ln.d("Fixing table %s", tableName);
+    final long start = Metrics.start();
 
     // Check if table exists
     try {
-      DatabaseUtils.queryNumEntries(db, tableName);
-    } catch (final SQLiteException ex) {
+      db.rawQuery("SELECT COUNT(*) FROM " + tableName, null).close();
+    } catch (final StorageException ex) {
       // If it doesn't, create it and return
       createTable(tableName, fields, db);
+      createOrPopulateFullText(tableName, fields, db);
+      Metrics.operation(Operation.SCHEMA_FIXUP, tableName, start);
       return;
     }
 
@@ -135,12 +211,113 @@ class DatabaseManager {
     for (final Field field : fields) {
       try {
         String sql = String.format("select typeof (%s) from %s", field.getName(), tableName);
-        db.rawQuery(sql, null);
-      } catch (final SQLiteException e) {
+        db.rawQuery(sql, null).close();
+      } catch (final StorageException e) {
         Ln.d("Adding column %s %s", field.getName(), getTypeForField(field));
         addColumn(tableName, field.getName(), getTypeForField(field), db);
       }
     }
+    createOrPopulateFullText(tableName, fields, db);
+    Metrics.operation(Operation.SCHEMA_FIXUP, tableName, start);
+  }
+
+  /**
+   * Creates the FTS table of the @FullText fields of a table, if it has any, with the rows already in the table, and
+   * the triggers that keep it in sync on insert, update and delete. An FTS table missing some of the fields is
+   * rebuilt. FTS rows have the id of their model row as docid.
+   */
+  private void createOrPopulateFullText(String tableName, List<Field> fields, StorageDatabase db) {
+    final List<String> columns = new ArrayList<String>();
+    for (final Field field : fields) {
+      if (ModelInfo.isFullText(field)) {
+        columns.add(field.getName());
+      }
+    }
+    if (columns.isEmpty()) {
+      return;
+    }
+
+    final String ftsTable = getFullTextTable(tableName);
+    final String columnList = join(columns, "", ", ");
+    // CREATE VIRTUAL TABLE IF NOT EXISTS needs SQLite 3.7.11, look the table up instead
+    if (tableExists(ftsTable, db)) {
+      try {
+        db.rawQuery("SELECT " + columnList + " FROM " + ftsTable + " LIMIT 0", null).close();
+        return;
+      } catch (final StorageException e) {
+        Ln.d("Rebuilding full-text table %s", ftsTable);
+      }
+    }
+
+    db.beginTransaction();
+    try {
+      db.execSQL("DROP TRIGGER IF EXISTS " + ftsTable + "_insert");
+      db.execSQL("DROP TRIGGER IF EXISTS " + ftsTable + "_update");
+      db.execSQL("DROP TRIGGER IF EXISTS " + ftsTable + "_delete");
+      db.execSQL("DROP TABLE IF EXISTS " + ftsTable);
+      db.execSQL("CREATE VIRTUAL TABLE " + ftsTable + " USING fts3(" + columnList + ")");
+      db.execSQL("INSERT INTO " + ftsTable + " (docid, " + columnList + ") SELECT " + _ID + ", " + columnList
+          + " FROM " + tableName);
+
+      final StringBuilder updates = new StringBuilder();
+      for (final String column : columns) {
+        updates.append(updates.length() > 0 ? ", " : "").append(column).append(" = new.").append(column);
+      }
+      db.execSQL("CREATE TRIGGER " + ftsTable + "_insert AFTER INSERT ON " + tableName + " BEGIN INSERT INTO "
+          + ftsTable + " (docid, " + columnList + ") VALUES (new." + _ID + ", " + join(columns, "new.", ", ")
+          + "); END");
+      db.execSQL("CREATE TRIGGER " + ftsTable + "_update AFTER UPDATE OF " + columnList + " ON " + tableName
+          + " BEGIN UPDATE " + ftsTable + " SET " + updates + " WHERE docid = old." + _ID + "; END");
+      db.execSQL("CREATE TRIGGER " + ftsTable + "_delete AFTER DELETE ON " + tableName + " BEGIN DELETE FROM "
+          + ftsTable + " WHERE docid = old." + _ID + "; END");
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+  }
+
+  /**
+   * Makes sure, once per table and process, that the FTS table of klass indexes all its @FullText fields. Schema
+   * fixups only run when a statement fails, and an FTS table missing a column makes none fail: it just leaves the
+   * column out of the index.
+   */
+  void checkFullText(String databaseName, Class<? extends RoboModel> klass, StorageDatabase db) {
+    if (!isFullTextChecked(databaseName, klass)) {
+      createOrPopulateTable(klass.getSimpleName(), ModelInfo.get(klass).getFields(), db);
+      sCheckedFullText.put(databaseName + '.' + klass.getSimpleName(), Boolean.TRUE);
+    }
+  }
+
+  /**
+   * Same as {@link #checkFullText(String, Class, StorageDatabase)}, opening the database only if needed
+   */
+  void checkFullText(String databaseName, Class<? extends RoboModel> klass) {
+    if (!isFullTextChecked(databaseName, klass)) {
+      final StorageDatabase db = openOrCreateDatabase(databaseName);
+      try {
+        checkFullText(databaseName, klass, db);
+      } finally {
+        db.close();
+      }
+    }
+  }
+
+  private static boolean isFullTextChecked(String databaseName, Class<? extends RoboModel> klass) {
+    return ModelInfo.get(klass).getFullTextColumns().length == 0
+        || sCheckedFullText.containsKey(databaseName + '.' + klass.getSimpleName());
+  }
+
+  static boolean tableExists(String tableName, StorageDatabase db) {
+    return Storage.longForQuery(db, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = ?",
+        new String[] { tableName }) > 0;
+  }
+
+  private static String join(List<String> columns, String prefix, String separator) {
+    final StringBuilder result = new StringBuilder();
+    for (final String column : columns) {
+      result.append(result.length() > 0 ? separator : "").append(prefix).append(column);
+    }
+    return result.toString();
   }
 
   /**
@@ -149,7 +326,7 @@ class DatabaseManager {
    * @param db
    * @return
    */
-  private void createTable(String tableName, List<Field> fields, SQLiteDatabase db) {
+  private void createTable(String tableName, List<Field> fields, StorageDatabase db) {
     final StringBuilder sql = new StringBuilder("CREATE TABLE ").append(tableName).append(" (");
 
     for (final Field field : fields) {
@@ -161,23 +338,55 @@ class DatabaseManager {
   }
 
   /**
-   * @param databaseName
-   * @param tableName
+   * Deletes the rows of klass matching selection and, in the same transaction, the @HasMany children that reference
+   * them, recursively. Change notifications are sent once the transaction is over.
+   * 
+   * @param selection
+   *          the rows to delete, or null for all of them
+   * @return the number of rows of klass deleted
    */
-  public void deleteAllRecords(String databaseName, String tableName) {
-    final SQLiteDatabase db = openOrCreateDatabase(databaseName);
-    db.delete(tableName, null, null);
-    db.close();
+  int deleteCascade(String databaseName, Class<? extends RoboModel> klass, String selection, String[] selectionArgs) {
+    final long start = Metrics.start();
+    final StorageDatabase db = openOrCreateDatabase(databaseName);
+    boolean successful = false;
+    ChangeNotifier.beginBatch();
+    db.beginTransaction();
+    try {
+      final int deleted = new CascadeDeleter(this, db, databaseName).delete(klass, selection, selectionArgs);
+      db.setTransactionSuccessful();
+      successful = true;
+      return deleted;
+    } finally {
+      db.endTransaction();
+      db.close();
+      ChangeNotifier.endBatch(successful);
+      Metrics.operation(Operation.DELETE, klass.getSimpleName(), start);
+    }
   }
 
-  void deleteRecord(String databaseName, String tableName, long id) {
-    final SQLiteDatabase db = openOrCreateDatabase(databaseName);
-    db.delete(tableName, where(id), null);
-    db.close();
+  /**
+   * Deletes the row of a model and, in the same transaction, its @HasMany children, recursively
+   */
+  void deleteCascade(String databaseName, Class<? extends RoboModel> klass, long id) {
+    final long start = Metrics.start();
+    final StorageDatabase db = openOrCreateDatabase(databaseName);
+    boolean successful = false;
+    ChangeNotifier.beginBatch();
+    db.beginTransaction();
+    try {
+      new CascadeDeleter(this, db, databaseName).delete(klass, id);
+      db.setTransactionSuccessful();
+      successful = true;
+    } finally {
+      db.endTransaction();
+      db.close();
+      ChangeNotifier.endBatch(successful);
+      Metrics.operation(Operation.DELETE, klass.getSimpleName(), start);
+    }
   }
 
-  SQLiteDatabase openOrCreateDatabase(String databaseName) {
-    return mContext.openOrCreateDatabase(databaseName, Context.MODE_PRIVATE, null);
+  StorageDatabase openOrCreateDatabase(String databaseName) {
+    return Storage.getProvider(mContext).openDatabase(databaseName);
   }
 
 }
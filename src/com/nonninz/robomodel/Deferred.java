@@ -0,0 +1,179 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Holds the value of a JSON-serialized field and decodes it only when it is first read.
+ *
+ * Declare the field as {@code Deferred<List<Point>>} instead of {@code List<Point>}: loading the model keeps the raw
+ * JSON of the column, {@link #get()} decodes it on first access, and saving a model whose field was never read writes
+ * the raw JSON back without encoding it again. Fields stored with
+ * {@link com.nonninz.robomodel.annotations.Stored.Codec#BINARY} are decoded eagerly.
+ *
+ * @param <T>
+ *          the type of the value
+ */
+public final class Deferred<T> {
+  private TypeAdapter<T> mAdapter;
+  private String mJson;
+  private T mValue;
+  private boolean mDecoded;
+
+  /**
+   * Creates a holder with a null value
+   */
+  public Deferred() {
+    mDecoded = true;
+  }
+
+  /**
+   * Creates a holder with the given value
+   */
+  public Deferred(T value) {
+    mValue = value;
+    mDecoded = true;
+  }
+
+  private Deferred(String json, TypeAdapter<T> adapter) {
+    mJson = json;
+    mAdapter = adapter;
+  }
+
+  /**
+   * @return the value, decoding it from the stored JSON on the first call
+   * @throws IllegalArgumentException
+   *           if the stored JSON can not be decoded
+   */
+  public T get() {
+    if (!mDecoded) {
+      try {
+        final JsonReader reader = new JsonReader(new StringReader(mJson));
+        reader.setLenient(true);
+        mValue = mAdapter.read(reader);
+        Metrics.jsonDecoded(mJson.length());
+      } catch (final IOException e) {
+        throw new IllegalArgumentException("Can not decode deferred value", e);
+      } catch (final JsonParseException e) {
+        throw new IllegalArgumentException("Can not decode deferred value", e);
+      } catch (final IllegalStateException e) {
+        throw new IllegalArgumentException("Can not decode deferred value", e);
+      }
+      mDecoded = true;
+      mJson = null;
+    }
+    return mValue;
+  }
+
+  public void set(T value) {
+    mValue = value;
+    mDecoded = true;
+    mJson = null;
+  }
+
+  /**
+   * @return true if the value has been decoded or assigned
+   */
+  public boolean isDecoded() {
+    return mDecoded;
+  }
+
+  /**
+   * @return the JSON read from the database if the value has not been decoded, null otherwise
+   */
+  String getRawJson() {
+    return mDecoded ? null : mJson;
+  }
+
+  @Override
+  public String toString() {
+    return mDecoded ? String.valueOf(mValue) : mJson;
+  }
+
+  /**
+   * Serializes a Deferred as its value, decoding it if needed, and deserializes it eagerly. Only reading from a
+   * column defers decoding.
+   */
+  static class AdapterFactory implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public <A> TypeAdapter<A> create(Gson gson, TypeToken<A> typeToken) {
+      if (typeToken.getRawType() != Deferred.class) {
+        return null;
+      }
+      final TypeAdapter<?> valueAdapter = gson.getAdapter(TypeToken.get(getValueType(typeToken.getType())));
+      return (TypeAdapter<A>) new DeferredAdapter(valueAdapter);
+    }
+
+    private static Type getValueType(Type deferredType) {
+      if (deferredType instanceof ParameterizedType) {
+        return ((ParameterizedType) deferredType).getActualTypeArguments()[0];
+      }
+      return Object.class;
+    }
+  }
+
+  static class DeferredAdapter<T> extends TypeAdapter<Deferred<T>> {
+    private final TypeAdapter<T> mValueAdapter;
+
+    DeferredAdapter(TypeAdapter<T> valueAdapter) {
+      mValueAdapter = valueAdapter;
+    }
+
+    /**
+     * Wraps the raw JSON of a column, to be decoded with the value adapter on first access.
+     */
+    Deferred<T> defer(String json) {
+      if (json == null) {
+        return null;
+      }
+      return new Deferred<T>(json, mValueAdapter);
+    }
+
+    @Override
+    public void write(JsonWriter out, Deferred<T> deferred) throws IOException {
+      final T value = deferred != null ? deferred.get() : null;
+      if (value == null) {
+        out.nullValue();
+      } else {
+        mValueAdapter.write(out, value);
+      }
+    }
+
+    @Override
+    public Deferred<T> read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      return new Deferred<T>(mValueAdapter.read(in));
+    }
+  }
+}
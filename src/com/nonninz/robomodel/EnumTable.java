@@ -0,0 +1,85 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.nonninz.robomodel.annotations.Stored;
+
+/**
+ * EnumTable:
+ * 1. Maps the names and ordinals of an enum type to its constants without reflection
+ * 2. Is built once per enum type and shared
+ */
+final class EnumTable {
+  private static final Map<Class<?>, EnumTable> sCache = new ConcurrentHashMap<Class<?>, EnumTable>();
+
+  private final Class<?> mType;
+  private final Enum<?>[] mConstants;
+  private final Map<String, Enum<?>> mByName;
+
+  static EnumTable get(Class<?> enumType) {
+    EnumTable table = sCache.get(enumType);
+    if (table == null) {
+      table = new EnumTable(enumType);
+      sCache.put(enumType, table);
+    }
+    return table;
+  }
+
+  /**
+   * @return true if the enum field is stored as its ordinal in an INTEGER column
+   */
+  static boolean isOrdinal(Field field) {
+    final Stored stored = field.getAnnotation(Stored.class);
+    return stored != null && stored.codec() == Stored.Codec.ORDINAL;
+  }
+
+  private EnumTable(Class<?> enumType) {
+    mType = enumType;
+    mConstants = (Enum<?>[]) enumType.getEnumConstants();
+    mByName = new HashMap<String, Enum<?>>(mConstants.length * 2);
+    for (final Enum<?> constant : mConstants) {
+      mByName.put(constant.name(), constant);
+    }
+  }
+
+  /**
+   * @throws IllegalArgumentException
+   *           if the enum has no constant with the given name
+   */
+  Enum<?> forName(String name) {
+    final Enum<?> constant = mByName.get(name);
+    if (constant == null) {
+      throw new IllegalArgumentException("No enum constant " + mType.getName() + "." + name);
+    }
+    return constant;
+  }
+
+  /**
+   * @throws IllegalArgumentException
+   *           if the enum has no constant with the given ordinal
+   */
+  Enum<?> forOrdinal(int ordinal) {
+    if (ordinal < 0 || ordinal >= mConstants.length) {
+      throw new IllegalArgumentException("No enum constant " + mType.getName() + " with ordinal " + ordinal);
+    }
+    return mConstants[ordinal];
+  }
+}
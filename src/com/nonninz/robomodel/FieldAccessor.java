@@ -0,0 +1,233 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.lang.reflect.Field;
+
+import com.nonninz.robomodel.annotations.BelongsTo;
+import com.nonninz.robomodel.annotations.HasMany;
+
+/**
+ * FieldAccessor:
+ * 1. Reads and writes one field of a model class. The field is made accessible once, when the metadata of the class
+ * is built, instead of around every access.
+ * 2. Knows how the field is stored, so that saving and loading switch on its {@link Kind} instead of looking at its
+ * type and annotations every time
+ */
+final class FieldAccessor {
+  enum Kind {
+    STRING, BOOLEAN, BYTE, DOUBLE, FLOAT, INTEGER, LONG, SHORT, ORDINAL_ENUM, NAMED_ENUM, CHILDREN, PARENT, BINARY,
+    DEFERRED, JSON
+  }
+
+  private final Field mField;
+  private final String mName;
+  private final Kind mKind;
+
+  FieldAccessor(Field field) {
+    field.setAccessible(true);
+    mField = field;
+    mName = field.getName();
+    mKind = getKind(field);
+  }
+
+  private static Kind getKind(Field field) {
+    final Class<?> type = field.getType();
+    if (type == String.class) {
+      return Kind.STRING;
+    } else if (type == Boolean.TYPE) {
+      return Kind.BOOLEAN;
+    } else if (type == Byte.TYPE) {
+      return Kind.BYTE;
+    } else if (type == Double.TYPE) {
+      return Kind.DOUBLE;
+    } else if (type == Float.TYPE) {
+      return Kind.FLOAT;
+    } else if (type == Integer.TYPE) {
+      return Kind.INTEGER;
+    } else if (type == Long.TYPE) {
+      return Kind.LONG;
+    } else if (type == Short.TYPE) {
+      return Kind.SHORT;
+    } else if (type.isEnum()) {
+      return EnumTable.isOrdinal(field) ? Kind.ORDINAL_ENUM : Kind.NAMED_ENUM;
+    } else if (field.isAnnotationPresent(HasMany.class)) {
+      return Kind.CHILDREN;
+    } else if (field.isAnnotationPresent(BelongsTo.class)) {
+      return Kind.PARENT;
+    } else if (BinaryCodec.isBinary(field)) {
+      return Kind.BINARY;
+    } else if (type == Deferred.class) {
+      return Kind.DEFERRED;
+    } else {
+      return Kind.JSON;
+    }
+  }
+
+  Field getField() {
+    return mField;
+  }
+
+  /**
+   * @return the name of the field, which is also the name of its column
+   */
+  String getName() {
+    return mName;
+  }
+
+  Kind getKind() {
+    return mKind;
+  }
+
+  /**
+   * @return true if the field is stored in a column of the table of the model, i.e. it is not @HasMany
+   */
+  boolean hasColumn() {
+    return mKind != Kind.CHILDREN;
+  }
+
+  private IllegalArgumentException notAccessible(IllegalAccessException e) {
+    return new IllegalArgumentException(String.format("Field %s is not accessible", mName), e);
+  }
+
+  Object get(RoboModel model) {
+    try {
+      return mField.get(model);
+    } catch (final IllegalAccessException e) {
+      throw notAccessible(e);
+    }
+  }
+
+  boolean getBoolean(RoboModel model) {
+    try {
+      return mField.getBoolean(model);
+    } catch (final IllegalAccessException e) {
+      throw notAccessible(e);
+    }
+  }
+
+  byte getByte(RoboModel model) {
+    try {
+      return mField.getByte(model);
+    } catch (final IllegalAccessException e) {
+      throw notAccessible(e);
+    }
+  }
+
+  double getDouble(RoboModel model) {
+    try {
+      return mField.getDouble(model);
+    } catch (final IllegalAccessException e) {
+      throw notAccessible(e);
+    }
+  }
+
+  float getFloat(RoboModel model) {
+    try {
+      return mField.getFloat(model);
+    } catch (final IllegalAccessException e) {
+      throw notAccessible(e);
+    }
+  }
+
+  int getInt(RoboModel model) {
+    try {
+      return mField.getInt(model);
+    } catch (final IllegalAccessException e) {
+      throw notAccessible(e);
+    }
+  }
+
+  long getLong(RoboModel model) {
+    try {
+      return mField.getLong(model);
+    } catch (final IllegalAccessException e) {
+      throw notAccessible(e);
+    }
+  }
+
+  short getShort(RoboModel model) {
+    try {
+      return mField.getShort(model);
+    } catch (final IllegalAccessException e) {
+      throw notAccessible(e);
+    }
+  }
+
+  void set(RoboModel model, Object value) {
+    try {
+      mField.set(model, value);
+    } catch (final IllegalAccessException e) {
+      throw notAccessible(e);
+    }
+  }
+
+  void setBoolean(RoboModel model, boolean value) {
+    try {
+      mField.setBoolean(model, value);
+    } catch (final IllegalAccessException e) {
+      throw notAccessible(e);
+    }
+  }
+
+  void setByte(RoboModel model, byte value) {
+    try {
+      mField.setByte(model, value);
+    } catch (final IllegalAccessException e) {
+      throw notAccessible(e);
+    }
+  }
+
+  void setDouble(RoboModel model, double value) {
+    try {
+      mField.setDouble(model, value);
+    } catch (final IllegalAccessException e) {
+      throw notAccessible(e);
+    }
+  }
+
+  void setFloat(RoboModel model, float value) {
+    try {
+      mField.setFloat(model, value);
+    } catch (final IllegalAccessException e) {
+      throw notAccessible(e);
+    }
+  }
+
+  void setInt(RoboModel model, int value) {
+    try {
+      mField.setInt(model, value);
+    } catch (final IllegalAccessException e) {
+      throw notAccessible(e);
+    }
+  }
+
+  void setLong(RoboModel model, long value) {
+    try {
+      mField.setLong(model, value);
+    } catch (final IllegalAccessException e) {
+      throw notAccessible(e);
+    }
+  }
+
+  void setShort(RoboModel model, short value) {
+    try {
+      mField.setShort(model, value);
+    } catch (final IllegalAccessException e) {
+      throw notAccessible(e);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * JsonAdapters:
+ * 1. Holds the single Gson instance shared by every model and manager
+ * 2. Caches the resolved {@link TypeAdapter} of each JSON-serialized field
+ *
+ * Building a Gson instance and resolving adapters are both expensive, so they are done once per
+ * process and once per field respectively.
+ */
+final class JsonAdapters {
+  private static final Gson sGson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation()
+      .registerTypeAdapterFactory(new Deferred.AdapterFactory()).create();
+  private static final Map<Field, TypeAdapter<Object>> sFieldAdapters = new ConcurrentHashMap<Field, TypeAdapter<Object>>();
+
+  private JsonAdapters() {
+  }
+
+  /**
+   * @return the shared Gson instance, configured to serialize only fields annotated with @Expose
+   */
+  static Gson gson() {
+    return sGson;
+  }
+
+  /**
+   * @return the adapter for the declared (generic) type of field, resolved on first use
+   */
+  @SuppressWarnings("unchecked")
+  static TypeAdapter<Object> forField(Field field) {
+    TypeAdapter<Object> adapter = sFieldAdapters.get(field);
+    if (adapter == null) {
+      adapter = (TypeAdapter<Object>) sGson.getAdapter(TypeToken.get(field.getGenericType()));
+      sFieldAdapters.put(field, adapter);
+    }
+    return adapter;
+  }
+
+  /**
+   * Decodes the JSON stored for field, streaming directly from the column string.
+   *
+   * @throws IllegalArgumentException
+   *           if json can not be decoded into the type of field
+   */
+  static Object read(Field field, String json) {
+    if (json == null) {
+      return null;
+    }
+
+    try {
+      final JsonReader reader = new JsonReader(new StringReader(json));
+      reader.setLenient(true);
+      return forField(field).read(reader);
+    } catch (final IOException e) {
+      throw unsupported(field, e);
+    } catch (final JsonParseException e) {
+      throw unsupported(field, e);
+    } catch (final IllegalStateException e) {
+      throw unsupported(field, e);
+    }
+  }
+
+  /**
+   * Wraps the JSON stored for a field of type {@link Deferred} without decoding it.
+   */
+  @SuppressWarnings("unchecked")
+  static Deferred<?> readDeferred(Field field, String json) {
+    final TypeAdapter<?> adapter = forField(field);
+    return ((Deferred.DeferredAdapter<Object>) adapter).defer(json);
+  }
+
+  /**
+   * Encodes a {@link Deferred} field, reusing the JSON it was loaded with if its value was never decoded.
+   */
+  static String writeDeferred(Field field, Deferred<?> deferred) {
+    final String json = deferred != null ? deferred.getRawJson() : null;
+    return json != null ? json : write(field, deferred);
+  }
+
+  /**
+   * Encodes value as JSON using the cached adapter of field.
+   */
+  static String write(Field field, Object value) {
+    if (value == null) {
+      return "null";
+    }
+
+    try {
+      final StringWriter out = new StringWriter();
+      final JsonWriter writer = new JsonWriter(out);
+      writer.setLenient(true);
+      forField(field).write(writer, value);
+      writer.close();
+      return out.toString();
+    } catch (final IOException e) {
+      // StringWriter does not throw
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static IllegalArgumentException unsupported(Field field, Exception cause) {
+    final String msg = String.format("Type %s is not supported for field %s", field.getType(), field.getName());
+    return new IllegalArgumentException(msg, cause);
+  }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import static android.provider.BaseColumns._ID;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonWriter;
+import com.nonninz.robomodel.annotations.BelongsTo;
+import com.nonninz.robomodel.annotations.HasMany;
+import com.nonninz.robomodel.exceptions.StorageException;
+import com.nonninz.robomodel.storage.StorageCursor;
+import com.nonninz.robomodel.storage.StorageDatabase;
+
+/**
+ * JsonExporter:
+ * 1. Writes the rows of a model table as the JSON array that {@link RoboModel#toJson()} would give for each model
+ * 2. Reads the columns straight from the cursor, without creating model instances
+ *
+ * JSON columns are copied as they are stored, @HasMany children are written as nested arrays and @BelongsTo
+ * references are left out, as Gson would do with the models.
+ */
+class JsonExporter {
+  private final DatabaseManager mDatabaseManager;
+  private final StorageDatabase mDatabase;
+  private final JsonWriter mWriter;
+  private final JsonParser mParser = new JsonParser();
+
+  JsonExporter(DatabaseManager databaseManager, StorageDatabase database, JsonWriter writer) {
+    mDatabaseManager = databaseManager;
+    mDatabase = database;
+    mWriter = writer;
+  }
+
+  /**
+   * @return the number of rows written, children excluded
+   */
+  int exportArray(Class<? extends RoboModel> klass, String selection, String[] selectionArgs) throws IOException {
+    final ModelInfo info = ModelInfo.get(klass);
+    final String tableName = klass.getSimpleName();
+
+    final List<Field> fields = info.getExposedFields();
+    final List<String> columns = new ArrayList<String>();
+    for (final Field field : fields) {
+      if (!field.isAnnotationPresent(HasMany.class) && !field.isAnnotationPresent(BelongsTo.class)) {
+        columns.add(field.getName());
+      }
+    }
+    columns.add(_ID);
+    final String[] projection = columns.toArray(new String[columns.size()]);
+
+    // Try to query the table. If the Table doesn't exist, fix the DB and re-run the query.
+    StorageCursor query;
+    try {
+      query = mDatabase.query(tableName, projection, selection, selectionArgs, null, null, null, null);
+    } catch (final StorageException e) {
+      mDatabaseManager.createOrPopulateTable(tableName, info.getFields(), mDatabase);
+      query = mDatabase.query(tableName, projection, selection, selectionArgs, null, null, null, null);
+    }
+
+    int count = 0;
+    try {
+      // Resolve the column of each field once, children and parents have none
+      final int[] indexes = new int[fields.size()];
+      for (int i = 0; i < indexes.length; i++) {
+        final Field field = fields.get(i);
+        final boolean isColumn = !field.isAnnotationPresent(HasMany.class)
+            && !field.isAnnotationPresent(BelongsTo.class);
+        indexes[i] = isColumn ? query.getColumnIndex(field.getName()) : -1;
+      }
+      final int idIndex = query.getColumnIndex(_ID);
+
+      mWriter.beginArray();
+      for (query.moveToFirst(); !query.isAfterLast(); query.moveToNext()) {
+        mWriter.beginObject();
+        for (int i = 0; i < indexes.length; i++) {
+          final Field field = fields.get(i);
+          if (indexes[i] >= 0) {
+            writeColumn(field, query, indexes[i]);
+          } else if (field.isAnnotationPresent(HasMany.class)) {
+            writeChildren(klass, field, query.getLong(idIndex));
+          }
+        }
+        mWriter.endObject();
+        count++;
+      }
+      mWriter.endArray();
+    } finally {
+      query.close();
+    }
+    Metrics.rowsRead(tableName, count);
+    return count;
+  }
+
+  private void writeChildren(Class<? extends RoboModel> klass, Field field, long id) throws IOException {
+    final Class<? extends RoboModel> childClass = field.getAnnotation(HasMany.class).value();
+    final String foreignKey = ModelInfo.getForeignKey(childClass, klass);
+    mWriter.name(getJsonName(field));
+    if (foreignKey == null) {
+      mWriter.beginArray().endArray();
+    } else {
+      exportArray(childClass, foreignKey + " = ?", new String[] { String.valueOf(id) });
+    }
+  }
+
+  private void writeColumn(Field field, StorageCursor query, int columnIndex) throws IOException {
+    // Gson leaves out null fields
+    if (query.isNull(columnIndex)) {
+      return;
+    }
+
+    final Class<?> type = field.getType();
+    if (type == String.class) {
+      mWriter.name(getJsonName(field)).value(query.getString(columnIndex));
+    } else if (type == Boolean.TYPE) {
+      mWriter.name(getJsonName(field)).value(query.getInt(columnIndex) == 1);
+    } else if (type == Byte.TYPE || type == Short.TYPE || type == Integer.TYPE || type == Long.TYPE) {
+      mWriter.name(getJsonName(field)).value(query.getLong(columnIndex));
+    } else if (type == Float.TYPE) {
+      mWriter.name(getJsonName(field)).value(Float.valueOf(query.getFloat(columnIndex)));
+    } else if (type == Double.TYPE) {
+      mWriter.name(getJsonName(field)).value(query.getDouble(columnIndex));
+    } else if (type.isEnum()) {
+      final Enum<?> value;
+      if (EnumTable.isOrdinal(field)) {
+        value = EnumTable.get(type).forOrdinal(query.getInt(columnIndex));
+      } else {
+        final String name = query.getString(columnIndex);
+        value = name.length() > 0 ? EnumTable.get(type).forName(name) : null;
+      }
+      if (value != null) {
+        mWriter.name(getJsonName(field)).value(value.name());
+      }
+    } else if (BinaryCodec.isBinary(field)) {
+      writeElement(field, BinaryCodec.decode(query.getBlob(columnIndex)));
+    } else {
+      // JSON column: copy it without binding it to the field type
+      final String json = query.getString(columnIndex);
+      try {
+        writeElement(field, mParser.parse(json));
+      } catch (final JsonParseException e) {
+        throw new IllegalArgumentException("Column " + field.getName() + " does not hold valid JSON", e);
+      }
+    }
+  }
+
+  private void writeElement(Field field, JsonElement element) throws IOException {
+    if (element != null && !element.isJsonNull()) {
+      mWriter.name(getJsonName(field));
+      JsonAdapters.gson().toJson(element, mWriter);
+    }
+  }
+
+  private static String getJsonName(Field field) {
+    final SerializedName serializedName = field.getAnnotation(SerializedName.class);
+    return serializedName != null ? serializedName.value() : field.getName();
+  }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * The results of a query, kept up to date as models of its table are saved and deleted.
+ *
+ * On every change to the table only the ids of the query are selected again. Models whose rows were not written are
+ * reused as they are, and only the rows that were written, or that entered the results, are loaded from the database,
+ * a few hundreds per query. A change that does not identify its rows loads all the results again.
+ * Changes to the tables of @HasMany children do not refresh the results.
+ *
+ * @param <T>
+ *          the model class
+ * @see RoboManager#live(String, String[], String)
+ */
+public class LiveQuery<T extends RoboModel> {
+  /**
+   * Receives the results of a live query each time they change
+   */
+  public interface Listener<T> {
+    /**
+     * @param results
+     *          an unmodifiable snapshot of the results
+     */
+    void onResultsChanged(List<T> results);
+  }
+
+  private final RoboManager<T> mManager;
+  private final String mSelection;
+  private final String[] mSelectionArgs;
+  private final String mOrderBy;
+  private final ChangeNotifier.RowChangeListener mChangeListener = new ChangeNotifier.RowChangeListener() {
+
+    @Override
+    public void onTableChanged(String tableName) {
+      refresh(null);
+    }
+
+    @Override
+    public void onRowsChanged(String tableName, Set<Long> rowIds) {
+      refresh(rowIds);
+    }
+  };
+
+  private volatile List<T> mResults = Collections.emptyList();
+  private Listener<T> mListener;
+  private Executor mExecutor;
+  private boolean mStarted;
+
+  LiveQuery(RoboManager<T> manager, String selection, String[] selectionArgs, String orderBy) {
+    mManager = manager;
+    mSelection = selection;
+    mSelectionArgs = selectionArgs;
+    mOrderBy = orderBy;
+  }
+
+  /**
+   * Runs the query on the calling thread and starts following the changes to its table.
+   *
+   * @param listener
+   *          notified with the new results after each change
+   * @param executor
+   *          runs the listener, e.g. to deliver on the UI thread. If null, the listener runs on the notification thread.
+   */
+  public synchronized void start(Listener<T> listener, Executor executor) {
+    if (mStarted) {
+      throw new IllegalStateException("LiveQuery already started");
+    }
+    mListener = listener;
+    mExecutor = executor;
+    mStarted = true;
+    ChangeNotifier.register(mManager.getDatabaseName(), mManager.getTableName(), mChangeListener, null);
+    refresh(null);
+  }
+
+  public synchronized void stop() {
+    ChangeNotifier.unregister(mChangeListener);
+    mStarted = false;
+    mListener = null;
+    mExecutor = null;
+  }
+
+  /**
+   * @return an unmodifiable snapshot of the current results
+   */
+  public List<T> getResults() {
+    return mResults;
+  }
+
+  /**
+   * @param changedIds
+   *          the rows to load again even if they are already in the results, or null to load all of them
+   */
+  private synchronized void refresh(Set<Long> changedIds) {
+    if (!mStarted) {
+      return;
+    }
+
+    final Map<Long, T> current = new HashMap<Long, T>(mResults.size() * 2);
+    if (changedIds != null) {
+      for (final T model : mResults) {
+        current.put(model.getId(), model);
+      }
+    }
+
+    final long[] ids = mManager.getSelectedModelIds(mSelection, mSelectionArgs, null, null, mOrderBy);
+    final long[] stale = new long[ids.length];
+    int staleCount = 0;
+    for (final long id : ids) {
+      if (!current.containsKey(id) || changedIds.contains(id)) {
+        current.remove(id);
+        stale[staleCount++] = id;
+      }
+    }
+    // All the rows to load in one pass, a few hundreds per query
+    final long[] load = new long[staleCount];
+    System.arraycopy(stale, 0, load, 0, staleCount);
+    current.putAll(mManager.getRecordsById(load));
+
+    final List<T> results = new ArrayList<T>(ids.length);
+    for (final long id : ids) {
+      final T model = current.get(id);
+      // Null if deleted after the ids were selected: the next notification will catch up
+      if (model != null) {
+        results.add(model);
+      }
+    }
+
+    mResults = Collections.unmodifiableList(results);
+    deliver(mResults);
+  }
+
+  private void deliver(final List<T> results) {
+    final Listener<T> listener = mListener;
+    if (listener == null) {
+      return;
+    }
+    final Runnable delivery = new Runnable() {
+      @Override
+      public void run() {
+        listener.onResultsChanged(results);
+      }
+    };
+    if (mExecutor != null) {
+      mExecutor.execute(delivery);
+    } else {
+      delivery.run();
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import com.nonninz.robomodel.RoboMetricsListener.Operation;
+import com.nonninz.robomodel.storage.StorageDatabase;
+
+/**
+ * Metrics:
+ * 1. Holds the installed {@link RoboMetricsListener}
+ * 2. Forwards the measures of the library to it, at the cost of a volatile read when there is none
+ * 3. Holds the installed {@link SlowQueryLog} and hands it the queries over its threshold
+ */
+final class Metrics {
+  private static volatile RoboMetricsListener sListener;
+  private static volatile SlowQueryLog sSlowQueryLog;
+
+  private Metrics() {
+  }
+
+  static void setListener(RoboMetricsListener listener) {
+    sListener = listener;
+  }
+
+  static void setSlowQueryLog(SlowQueryLog log) {
+    sSlowQueryLog = log;
+  }
+
+  /**
+   * @return the start time of an operation to pass to {@link #operation(Operation, String, long)}, or 0 if there is
+   *         no listener nor slow query log to report it to
+   */
+  static long start() {
+    return sListener != null || sSlowQueryLog != null ? System.nanoTime() : 0;
+  }
+
+  static void operation(Operation operation, String tableName, long start) {
+    final RoboMetricsListener listener = sListener;
+    if (listener != null && start != 0) {
+      listener.onOperation(operation, tableName, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Reports a query of the table of klass, and records it in the slow query log if it took too long. db must still be
+   * open.
+   */
+  static void query(StorageDatabase db, Class<? extends RoboModel> klass, String sql, String[] selectionArgs,
+      long start) {
+    if (start == 0) {
+      return;
+    }
+    final long duration = System.nanoTime() - start;
+    final RoboMetricsListener listener = sListener;
+    if (listener != null) {
+      listener.onOperation(Operation.QUERY, klass.getSimpleName(), duration);
+    }
+    final SlowQueryLog log = sSlowQueryLog;
+    if (log != null && duration >= log.getThresholdNanos()) {
+      log.record(db, klass, sql, selectionArgs, duration);
+    }
+  }
+
+  static void rowsRead(String tableName, int rows) {
+    final RoboMetricsListener listener = sListener;
+    if (listener != null) {
+      listener.onRowsRead(tableName, rows);
+    }
+  }
+
+  static void jsonDecoded(int length) {
+    final RoboMetricsListener listener = sListener;
+    if (listener != null) {
+      listener.onJsonDecoded(length);
+    }
+  }
+
+  static void cacheHit(String tableName) {
+    final RoboMetricsListener listener = sListener;
+    if (listener != null) {
+      listener.onCacheHit(tableName);
+    }
+  }
+
+  static void cacheMiss(String tableName) {
+    final RoboMetricsListener listener = sListener;
+    if (listener != null) {
+      listener.onCacheMiss(tableName);
+    }
+  }
+}
@@ -0,0 +1,286 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import static android.provider.BaseColumns._ID;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.annotations.Expose;
+import com.nonninz.robomodel.annotations.BelongsTo;
+import com.nonninz.robomodel.annotations.Database;
+import com.nonninz.robomodel.annotations.FullText;
+import com.nonninz.robomodel.annotations.HasMany;
+import com.nonninz.robomodel.annotations.Lazy;
+
+/**
+ * ModelInfo:
+ * 1. Holds the reflective metadata of a RoboModel class, computed once per class
+ * 2. Knows which columns are loaded eagerly and which are left to {@link RoboModel#loadLazy()}
+ * 3. Opens an accessor for each field, shared by all the models of the class
+ * 4. Gives each column a slot in the {@link TypedContentValues} of the model, and keeps one of them per thread to
+ * save with
+ * 5. Lists the columns indexed for full-text search
+ * 6. Knows the database the models are stored in
+ */
+final class ModelInfo {
+  private static final Map<Class<?>, ModelInfo> sCache = new ConcurrentHashMap<Class<?>, ModelInfo>();
+
+  private final List<Field> mFields;
+  private final List<Field> mLazyFields;
+  private final Map<Field, FieldAccessor> mAccessors;
+  private final List<FieldAccessor> mFieldAccessors;
+  private final List<FieldAccessor> mEagerAccessors;
+  private final List<FieldAccessor> mColumnAccessors;
+  private final String[] mEagerColumns;
+  private final String[] mFullTextColumns;
+  private final String mDatabaseName;
+  private final List<Class<? extends RoboModel>> mChildClasses;
+  private final List<Field> mExposedFields;
+  private final TypedContentValues.Layout mLayout;
+  private final ThreadLocal<TypedContentValues> mValues = new ThreadLocal<TypedContentValues>() {
+    @Override
+    protected TypedContentValues initialValue() {
+      return new TypedContentValues(mLayout);
+    }
+  };
+
+  static ModelInfo get(Class<? extends RoboModel> klass) {
+    ModelInfo info = sCache.get(klass);
+    if (info == null) {
+      info = new ModelInfo(klass);
+      sCache.put(klass, info);
+    }
+    return info;
+  }
+
+  private ModelInfo(Class<? extends RoboModel> klass) {
+    final List<Field> fields = new ArrayList<Field>();
+    final List<Field> lazyFields = new ArrayList<Field>();
+    final Map<Field, FieldAccessor> accessors = new HashMap<Field, FieldAccessor>();
+    final List<FieldAccessor> fieldAccessors = new ArrayList<FieldAccessor>();
+    final List<FieldAccessor> eagerAccessors = new ArrayList<FieldAccessor>();
+    final List<FieldAccessor> columnAccessors = new ArrayList<FieldAccessor>();
+    final List<String> eagerColumns = new ArrayList<String>();
+    final List<Class<? extends RoboModel>> childClasses = new ArrayList<Class<? extends RoboModel>>();
+    final List<Field> exposedFields = new ArrayList<Field>();
+    final List<String> columns = new ArrayList<String>();
+    final List<String> fullTextColumns = new ArrayList<String>();
+
+    for (final Field field : klass.getDeclaredFields()) {
+      final FieldAccessor accessor = new FieldAccessor(field);
+      fields.add(field);
+      accessors.put(field, accessor);
+      fieldAccessors.add(accessor);
+      if (accessor.hasColumn()) {
+        columnAccessors.add(accessor);
+        columns.add(field.getName());
+      }
+      if (isFullText(field)) {
+        fullTextColumns.add(field.getName());
+      }
+      if (isLazy(field)) {
+        lazyFields.add(field);
+      } else if (field.isAnnotationPresent(HasMany.class)) {
+        eagerAccessors.add(accessor);
+        childClasses.add(field.getAnnotation(HasMany.class).value());
+        checkSameDatabase(klass, field.getAnnotation(HasMany.class).value());
+      } else {
+        eagerAccessors.add(accessor);
+        eagerColumns.add(field.getName());
+      }
+
+      // Same rules as the Gson instance of JsonAdapters
+      final Expose expose = field.getAnnotation(Expose.class);
+      final int modifiers = field.getModifiers();
+      if (expose != null && expose.serialize() && !Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+        exposedFields.add(field);
+      }
+    }
+    eagerColumns.add(_ID);
+
+    mFields = Collections.unmodifiableList(fields);
+    mLazyFields = Collections.unmodifiableList(lazyFields);
+    mAccessors = accessors;
+    mFieldAccessors = Collections.unmodifiableList(fieldAccessors);
+    mEagerAccessors = Collections.unmodifiableList(eagerAccessors);
+    mColumnAccessors = Collections.unmodifiableList(columnAccessors);
+    mEagerColumns = eagerColumns.toArray(new String[eagerColumns.size()]);
+    mFullTextColumns = fullTextColumns.toArray(new String[fullTextColumns.size()]);
+    mDatabaseName = getDatabaseName(klass);
+    mChildClasses = Collections.unmodifiableList(childClasses);
+    mExposedFields = Collections.unmodifiableList(exposedFields);
+    mLayout = new TypedContentValues.Layout(columns.toArray(new String[columns.size()]));
+  }
+
+  static boolean isLazy(Field field) {
+    return field.isAnnotationPresent(Lazy.class) && !field.getType().isPrimitive()
+        && !field.isAnnotationPresent(HasMany.class) && !field.isAnnotationPresent(BelongsTo.class);
+  }
+
+  /**
+   * @return the database named by the @Database annotation of klass, or null for the default one
+   */
+  private static String getDatabaseName(Class<?> klass) {
+    final Database database = klass.getAnnotation(Database.class);
+    return database != null ? database.value() : null;
+  }
+
+  /**
+   * Graphs are saved and deleted in a single transaction, so children must be in the database of their parent
+   */
+  private static void checkSameDatabase(Class<?> klass, Class<?> childClass) {
+    final String database = getDatabaseName(klass);
+    final String childDatabase = getDatabaseName(childClass);
+    if (database == null ? childDatabase != null : !database.equals(childDatabase)) {
+      throw new IllegalArgumentException("@HasMany children of " + klass.getSimpleName() + " must be in its database: "
+          + childClass.getSimpleName() + " is in " + (childDatabase != null ? childDatabase : "the default one"));
+    }
+  }
+
+  static boolean isFullText(Field field) {
+    return field.isAnnotationPresent(FullText.class) && field.getType() == String.class;
+  }
+
+  /**
+   * @return all the fields saved by the model, in declaration order
+   */
+  List<Field> getFields() {
+    return mFields;
+  }
+
+  List<Field> getLazyFields() {
+    return mLazyFields;
+  }
+
+  /**
+   * @return the accessor of a field of the model
+   */
+  FieldAccessor getAccessor(Field field) {
+    return mAccessors.get(field);
+  }
+
+  /**
+   * @return the accessors of all the fields, in declaration order
+   */
+  List<FieldAccessor> getAccessors() {
+    return mFieldAccessors;
+  }
+
+  /**
+   * @return the accessors of the fields loaded with the model, @HasMany included, in declaration order
+   */
+  List<FieldAccessor> getEagerAccessors() {
+    return mEagerAccessors;
+  }
+
+  /**
+   * @return the accessors of the fields stored in a column, @HasMany excluded, in the order of their slots
+   */
+  List<FieldAccessor> getColumnAccessors() {
+    return mColumnAccessors;
+  }
+
+  /**
+   * @return the projection used to load a model, without the lazy columns. Must not be modified.
+   */
+  String[] getEagerColumns() {
+    return mEagerColumns;
+  }
+
+  /**
+   * @return the columns indexed for full-text search, in declaration order. Must not be modified.
+   */
+  String[] getFullTextColumns() {
+    return mFullTextColumns;
+  }
+
+  /**
+   * @return the name given by the @Database annotation of the class, or null if the models are in the default database
+   */
+  String getDatabaseName() {
+    return mDatabaseName;
+  }
+
+  TypedContentValues.Layout getLayout() {
+    return mLayout;
+  }
+
+  /**
+   * @return the values of this thread to save a model with, cleared. They are valid until the next call on the same
+   *         thread, and must be copied to be kept.
+   */
+  TypedContentValues obtainValues() {
+    final TypedContentValues values = mValues.get();
+    values.clear();
+    return values;
+  }
+
+  /**
+   * @return the model classes referenced by @HasMany fields
+   */
+  List<Class<? extends RoboModel>> getChildClasses() {
+    return mChildClasses;
+  }
+
+  /**
+   * @return the fields serialized by {@link RoboModel#toJson()}
+   */
+  List<Field> getExposedFields() {
+    return mExposedFields;
+  }
+
+  /**
+   * @return the name of the @BelongsTo field of childClass that references parentClass, or null if there is none
+   */
+  static String getForeignKey(Class<? extends RoboModel> childClass, Class<?> parentClass) {
+    for (final Field childField : childClass.getDeclaredFields()) {
+      final BelongsTo belongsTo = childField.getAnnotation(BelongsTo.class);
+      if (belongsTo != null && belongsTo.value() == parentClass) {
+        return childField.getName();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the field stored in the column with the given name, or null if there is none
+   */
+  Field getColumnField(String name) {
+    for (final Field field : mFields) {
+      if (field.getName().equals(name) && !field.isAnnotationPresent(HasMany.class)) {
+        return field;
+      }
+    }
+    return null;
+  }
+
+  Field getLazyField(String name) {
+    for (final Field field : mLazyFields) {
+      if (field.getName().equals(name)) {
+        return field;
+      }
+    }
+    return null;
+  }
+}
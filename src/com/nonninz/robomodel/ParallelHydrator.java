@@ -0,0 +1,152 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * ParallelHydrator:
+ * 1. Creates the models of rows copied by a {@link RowReader}, and decodes their columns, on several threads
+ * 2. Keeps the models in the order of the rows
+ * 
+ * The calling thread hydrates a slice of the rows too, then runs itself the slices the executor has not started, and
+ * waits for the others. It never waits for a slice that is only queued, so calling it from a thread of the executor
+ * can not deadlock. Children are not loaded: that takes the database, and is left to the calling thread.
+ */
+final class ParallelHydrator {
+  // Fewer rows per thread are not worth the hand-off
+  private static final int MIN_SLICE_ROWS = 64;
+  private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+  private static ExecutorService sDefaultExecutor;
+
+  private final int mMinRows;
+  private final Executor mExecutor;
+
+  /**
+   * @param executor
+   *          runs the slices of rows, or null for a shared pool with a thread per core
+   */
+  ParallelHydrator(int minRows, Executor executor) {
+    mMinRows = minRows;
+    mExecutor = executor != null ? executor : getDefaultExecutor();
+  }
+
+  private static synchronized ExecutorService getDefaultExecutor() {
+    if (sDefaultExecutor == null) {
+      sDefaultExecutor = Executors.newFixedThreadPool(PARALLELISM, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          final Thread thread = new Thread(runnable, "RoboModel-hydrate");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return sDefaultExecutor;
+  }
+
+  /**
+   * @return true if loading this many rows is worth spreading over several threads
+   */
+  boolean accepts(int rows) {
+    return rows >= mMinRows;
+  }
+
+  /**
+   * @return the models of rows, in the same order, without their children
+   */
+  <T extends RoboModel> List<T> hydrate(RoboManager<T> manager, RowReader reader, List<Object[]> rows) {
+    final int size = rows.size();
+    final RoboModel[] models = new RoboModel[size];
+    final int slices = Math.max(1, Math.min(PARALLELISM, size / MIN_SLICE_ROWS));
+
+    final List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>(slices - 1);
+    for (int i = 1; i < slices; i++) {
+      final Slice<T> slice = new Slice<T>(manager, reader, rows, models, size * i / slices, size * (i + 1) / slices);
+      final FutureTask<Void> task = new FutureTask<Void>(slice, null);
+      tasks.add(task);
+      try {
+        mExecutor.execute(task);
+      } catch (final RejectedExecutionException e) {
+        // Run below by the calling thread
+      }
+    }
+    new Slice<T>(manager, reader, rows, models, 0, size / slices).run();
+
+    for (final FutureTask<Void> task : tasks) {
+      // Does nothing if the executor already started the slice
+      task.run();
+      try {
+        task.get();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while loading models", e);
+      } catch (final ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new IllegalStateException(cause);
+      }
+    }
+
+    final List<T> result = new ArrayList<T>(size);
+    for (final RoboModel model : models) {
+      @SuppressWarnings("unchecked")
+      final T cast = (T) model;
+      result.add(cast);
+    }
+    return result;
+  }
+
+  private static class Slice<T extends RoboModel> implements Runnable {
+    private final RoboManager<T> mManager;
+    private final RowReader mReader;
+    private final List<Object[]> mRows;
+    private final RoboModel[] mModels;
+    private final int mFrom;
+    private final int mTo;
+
+    Slice(RoboManager<T> manager, RowReader reader, List<Object[]> rows, RoboModel[] models, int from, int to) {
+      mManager = manager;
+      mReader = reader;
+      mRows = rows;
+      mModels = models;
+      mFrom = from;
+      mTo = to;
+    }
+
+    @Override
+    public void run() {
+      for (int i = mFrom; i < mTo; i++) {
+        final T model = mManager.create();
+        model.applyRow(mReader, mRows.get(i));
+        mModels[i] = model;
+      }
+    }
+  }
+}
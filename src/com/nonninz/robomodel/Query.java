@@ -0,0 +1,168 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import static android.provider.BaseColumns._ID;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a query on the columns of a model, checking the column names against its fields:
+ * 
+ * <pre>
+ * manager.query().eq(&quot;status&quot;, Status.OPEN).gt(&quot;updatedAt&quot;, since).orderByDescending(&quot;updatedAt&quot;).limit(20).list();
+ * </pre>
+ * 
+ * Conditions are joined with AND. {@link #compile()} turns the query into a {@link CompiledQuery}, whose SQL is built
+ * once and which can be run again with other values.
+ * 
+ * @param <T>
+ *          the model class
+ * @see RoboManager#query()
+ */
+public class Query<T extends RoboModel> {
+  private final RoboManager<T> mManager;
+  private final ModelInfo mInfo;
+  private final StringBuilder mSelection = new StringBuilder();
+  private final StringBuilder mOrderBy = new StringBuilder();
+  private final List<Field> mArgumentFields = new ArrayList<Field>();
+  private final List<Object> mArguments = new ArrayList<Object>();
+  private String mLimit;
+
+  Query(RoboManager<T> manager, Class<T> klass) {
+    mManager = manager;
+    mInfo = ModelInfo.get(klass);
+  }
+
+  public Query<T> eq(String column, Object value) {
+    return condition(column, " = ?", value);
+  }
+
+  public Query<T> notEq(String column, Object value) {
+    return condition(column, " <> ?", value);
+  }
+
+  public Query<T> gt(String column, Object value) {
+    return condition(column, " > ?", value);
+  }
+
+  public Query<T> ge(String column, Object value) {
+    return condition(column, " >= ?", value);
+  }
+
+  public Query<T> lt(String column, Object value) {
+    return condition(column, " < ?", value);
+  }
+
+  public Query<T> le(String column, Object value) {
+    return condition(column, " <= ?", value);
+  }
+
+  /**
+   * @param pattern
+   *          a SQL LIKE pattern, e.g. "%fish%"
+   */
+  public Query<T> like(String column, String pattern) {
+    return condition(column, " LIKE ?", pattern);
+  }
+
+  public Query<T> isNull(String column) {
+    return condition(column, " IS NULL");
+  }
+
+  public Query<T> isNotNull(String column) {
+    return condition(column, " IS NOT NULL");
+  }
+
+  public Query<T> orderBy(String column) {
+    return order(column, " ASC");
+  }
+
+  public Query<T> orderByDescending(String column) {
+    return order(column, " DESC");
+  }
+
+  public Query<T> limit(int limit) {
+    if (limit < 0) {
+      throw new IllegalArgumentException("Limit can not be negative");
+    }
+    mLimit = String.valueOf(limit);
+    return this;
+  }
+
+  /**
+   * @return the query, ready to be run many times with different values
+   */
+  public CompiledQuery<T> compile() {
+    final String selection = mSelection.length() > 0 ? mSelection.toString() : null;
+    final String orderBy = mOrderBy.length() > 0 ? mOrderBy.toString() : null;
+    final String sql = mManager.buildIdQuery(selection, null, null, orderBy, mLimit);
+    return new CompiledQuery<T>(mManager, sql, mArgumentFields.toArray(new Field[mArgumentFields.size()]));
+  }
+
+  /**
+   * Runs the query with the values given to the builder
+   */
+  public List<T> list() {
+    return compile().list(mArguments.toArray());
+  }
+
+  private Query<T> condition(String column, String operator) {
+    checkColumn(column);
+    if (mSelection.length() > 0) {
+      mSelection.append(" AND ");
+    }
+    mSelection.append(column).append(operator);
+    return this;
+  }
+
+  private Query<T> condition(String column, String operator, Object value) {
+    if (value == null) {
+      throw new IllegalArgumentException("Null value for column " + column + ", use isNull()/isNotNull()");
+    }
+    final Field field = checkColumn(column);
+    // Fail while building rather than when running
+    CompiledQuery.toArgument(field, value);
+    mArgumentFields.add(field);
+    mArguments.add(value);
+    return condition(column, operator);
+  }
+
+  private Query<T> order(String column, String direction) {
+    checkColumn(column);
+    if (mOrderBy.length() > 0) {
+      mOrderBy.append(", ");
+    }
+    mOrderBy.append(column).append(direction);
+    return this;
+  }
+
+  /**
+   * @return the field stored in column, or null for the id column
+   */
+  private Field checkColumn(String column) {
+    if (_ID.equals(column)) {
+      return null;
+    }
+    final Field field = mInfo.getColumnField(column);
+    if (field == null) {
+      throw new IllegalArgumentException("No column " + column + " in " + mManager.getTableName());
+    }
+    return field;
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * QueryCache:
+ * 1. Keeps the results of RoboManager queries, least recently used first out
+ * 2. Tags every result with the version of the tables it was read from, and drops it once they change
+ *
+ * The budget is expressed both in cached queries and in cached rows, whichever is hit first.
+ */
+final class QueryCache<T> {
+  private final int mMaxEntries;
+  private final int mMaxRows;
+  private final LinkedHashMap<Key, Entry<T>> mEntries = new LinkedHashMap<Key, Entry<T>>(16, 0.75f, true);
+  private int mRows;
+
+  QueryCache(int maxEntries, int maxRows) {
+    if (maxEntries < 1 || maxRows < 1) {
+      throw new IllegalArgumentException("Query cache budget must be positive");
+    }
+    mMaxEntries = maxEntries;
+    mMaxRows = maxRows;
+  }
+
+  /**
+   * @return a copy of the cached result, or null if there is none for the given version
+   */
+  synchronized List<T> get(Key key, long version) {
+    final Entry<T> entry = mEntries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.version != version) {
+      remove(key);
+      return null;
+    }
+    return new ArrayList<T>(entry.models);
+  }
+
+  synchronized void put(Key key, long version, List<T> models) {
+    if (models.size() > mMaxRows) {
+      return;
+    }
+    remove(key);
+    mEntries.put(key, new Entry<T>(version, new ArrayList<T>(models)));
+    mRows += models.size();
+
+    // Evict the least recently used results until we are within budget
+    final Iterator<Entry<T>> iterator = mEntries.values().iterator();
+    while ((mEntries.size() > mMaxEntries || mRows > mMaxRows) && iterator.hasNext()) {
+      mRows -= iterator.next().models.size();
+      iterator.remove();
+    }
+  }
+
+  synchronized void clear() {
+    mEntries.clear();
+    mRows = 0;
+  }
+
+  private void remove(Key key) {
+    final Entry<T> removed = mEntries.remove(key);
+    if (removed != null) {
+      mRows -= removed.models.size();
+    }
+  }
+
+  private static class Entry<T> {
+    final long version;
+    final List<T> models;
+
+    Entry(long version, List<T> models) {
+      this.version = version;
+      this.models = models;
+    }
+  }
+
+  /**
+   * Identifies a query by its SQL and its arguments
+   */
+  static final class Key {
+    private final String mSql;
+    private final String[] mSelectionArgs;
+
+    Key(String sql, String[] selectionArgs) {
+      mSql = sql;
+      mSelectionArgs = selectionArgs != null ? selectionArgs.clone() : null;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      if (!(object instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) object;
+      return mSql.equals(other.mSql) && Arrays.equals(mSelectionArgs, other.mSelectionArgs);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * mSql.hashCode() + Arrays.hashCode(mSelectionArgs);
+    }
+  }
+}
@@ -15,22 +15,39 @@
  */
 package com.nonninz.robomodel;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 import android.content.Context;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteException;
 import android.provider.BaseColumns;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.InstanceCreator;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.nonninz.robomodel.RoboMetricsListener.Operation;
 import com.nonninz.robomodel.exceptions.InstanceNotFoundException;
+import com.nonninz.robomodel.exceptions.StorageException;
+import com.nonninz.robomodel.storage.Storage;
+import com.nonninz.robomodel.storage.StorageCursor;
+import com.nonninz.robomodel.storage.StorageDatabase;
 
 /**
  * @author Francesco Donadon <francesco.donadon@gmail.com>
@@ -41,16 +58,26 @@ import com.nonninz.robomodel.exceptions.InstanceNotFoundException;
  *  - first() - TODO
  *  - last()
  *  - find(id)
+ *  - query()
  *  - deleteAll()
  *  
  */
 public class RoboManager<T extends RoboModel> {
   private static final String CREATE_ERROR = "Error while creating a model instance.";
+  private static final int IMPORT_CHUNK_SIZE = 500;
+  // Ids per query when loading models by id, below the parameter limit of SQLite
+  private static final int LOAD_CHUNK_SIZE = 500;
+  private static final String[] ID_COLUMNS = new String[] { BaseColumns._ID };
+  private static final Map<String, String> sParentQueries = new ConcurrentHashMap<String, String>();
 
   private final DatabaseManager mDatabaseManager;
   private final Context mContext;
   private final Class<T> mKlass;
   private final RoboModel mSampleModel;
+  private Gson mGson;
+  private QueryCache<T> mQueryCache;
+  private String[] mCachedTables;
+  private ParallelHydrator mHydrator;
 
   /**
    * @param context2
@@ -68,8 +95,106 @@ public class RoboManager<T extends RoboModel> {
   }
 
   public List<T> all() {
-    final long[] ids = getSelectedModelIds(null, null, null, null, null);
-    return getRecords(ids);
+    return where(null, null, null, null, null);
+  }
+
+  /**
+   * Caches the results of all() and where(...) until a model of this class, or of a class it has many of, is saved
+   * or deleted. Cached results share their model instances: changes made to them without saving are visible to
+   * later queries.
+   * 
+   * @param maxQueries
+   *          how many distinct queries to keep
+   * @param maxRows
+   *          how many models to keep across all the cached queries
+   */
+  public void enableQueryCache(int maxQueries, int maxRows) {
+    mQueryCache = new QueryCache<T>(maxQueries, maxRows);
+  }
+
+  public void disableQueryCache() {
+    mQueryCache = null;
+  }
+
+  /**
+   * Loads the results of all() and where(...) with at least minRows models on several threads. The rows are read from
+   * the database on the calling thread; then the models are created and their columns decoded in parallel, and their
+   * children loaded on the calling thread. Results keep their order. This pays off for large results of models with
+   * costly columns, e.g. several JSON fields.
+   * 
+   * @param executor
+   *          runs the hydration, or null to use a shared pool with a thread per core. It may be busy or be the one
+   *          the query runs on: the calling thread hydrates the slices that the executor has not started.
+   */
+  public void enableParallelLoading(int minRows, Executor executor) {
+    mHydrator = new ParallelHydrator(minRows, executor);
+  }
+
+  public void disableParallelLoading() {
+    mHydrator = null;
+  }
+
+  /**
+   * Notifies listener on the notification thread after models of this class are saved or deleted.
+   * 
+   * @see #observe(TableChangeListener, Executor)
+   */
+  public void observe(TableChangeListener listener) {
+    observe(listener, null);
+  }
+
+  /**
+   * Notifies listener after models of this class are saved or deleted. Writes that happen within the notification
+   * window of each other, or within the same bulk operation, produce a single notification.
+   * 
+   * @param executor
+   *          runs the listener, e.g. to deliver on the UI thread. If null, the listener runs on the notification thread.
+   */
+  public void observe(TableChangeListener listener, Executor executor) {
+    ChangeNotifier.register(getDatabaseName(), getTableName(), listener, executor);
+  }
+
+  /**
+   * Stops notifying listener of changes to any table.
+   */
+  public void unobserve(TableChangeListener listener) {
+    ChangeNotifier.unregister(listener);
+  }
+
+  /**
+   * Creates a query whose results are kept up to date as models of this class are saved and deleted. Call
+   * {@link LiveQuery#start(LiveQuery.Listener, Executor)} to run it.
+   */
+  public LiveQuery<T> live(String selection, String[] selectionArgs, String orderBy) {
+    return new LiveQuery<T>(this, selection, selectionArgs, orderBy);
+  }
+
+  /**
+   * Sets for how long writes are collected before observers are notified. Defaults to 50 milliseconds.
+   */
+  public static void setChangeNotificationWindow(long windowMs) {
+    ChangeNotifier.setWindow(windowMs);
+  }
+
+  /**
+   * Reports the timings of queries, saves, deletes and schema fixes, and counters of rows read, JSON decoded and
+   * query cache use, of all the managers and models, to listener.
+   * 
+   * @param listener
+   *          e.g. a {@link RoboMetrics}, or null to stop measuring
+   */
+  public static void setMetricsListener(RoboMetricsListener listener) {
+    Metrics.setListener(listener);
+  }
+
+  /**
+   * Records the queries of all the managers that run over the threshold of log, with their query plan.
+   * 
+   * @param log
+   *          the log to record to, or null to stop recording
+   */
+  public static void setSlowQueryLog(SlowQueryLog log) {
+    Metrics.setSlowQueryLog(log);
   }
 
   public T last() throws InstanceNotFoundException {
@@ -79,21 +204,120 @@ public class RoboManager<T extends RoboModel> {
     return record;
   }
 
+  /**
+   * Deletes all the models, with their @HasMany children
+   */
   public void deleteAll() {
-    /*
-     * In case of invalid DB structure we try to fix it and re-run the delete
-     */
+    delete(null, null);
+  }
+
+  /**
+   * Deletes the models matching selection and, in the same transaction, their @HasMany children. Children are
+   * selected in SQL through their foreign keys, with one statement per table, without loading any model.
+   * 
+   * @return the number of models deleted, children excluded
+   */
+  public int delete(String selection, String[] selectionArgs) {
+    return mDatabaseManager.deleteCascade(getDatabaseName(), mKlass, selection, selectionArgs);
+  }
+
+  public T create(String json) {
+    return getGson().fromJson(json, mKlass);
+  }
+
+  /**
+   * @return the Gson instance used to build models of this manager from JSON, created once per manager
+   */
+  private Gson getGson() {
+    if (mGson == null) {
+      mGson = new GsonBuilder().registerTypeAdapter(mKlass, new RoboInstanceCreator())
+          .registerTypeAdapterFactory(new Deferred.AdapterFactory()).create();
+    }
+    return mGson;
+  }
+
+  /**
+   * Saves the models of a JSON array, with their @HasMany children, reading it as a stream. Models are written in
+   * transactions of {@value #IMPORT_CHUNK_SIZE}, so memory use does not depend on the size of the input. Observers are
+   * notified of each chunk once it is committed. If the input is malformed, the chunks before the error stay imported.
+   * 
+   * @param json
+   *          a reader of a JSON array of models
+   * @return the number of models imported, children excluded
+   * @throws IOException
+   *           if json can not be read, or is not valid JSON (e.g. names or strings not in double quotes)
+   */
+  public int importJson(Reader json) throws IOException {
+    final TypeAdapter<T> adapter = getGson().getAdapter(mKlass);
+    // Strict: input that is not valid JSON fails instead of being saved as Gson guesses it
+    final JsonReader reader = new JsonReader(json);
+    final List<T> chunk = new ArrayList<T>(IMPORT_CHUNK_SIZE);
+    int count = 0;
+
+    // Each chunk is a batch of its own: its readers and listeners catch up as soon as it is committed
+    reader.beginArray();
+    while (reader.hasNext()) {
+      chunk.add(adapter.read(reader));
+      if (chunk.size() == IMPORT_CHUNK_SIZE) {
+        mDatabaseManager.saveTrees(getDatabaseName(), chunk);
+        count += chunk.size();
+        chunk.clear();
+      }
+    }
+    reader.endArray();
+
+    if (!chunk.isEmpty()) {
+      mDatabaseManager.saveTrees(getDatabaseName(), chunk);
+      count += chunk.size();
+    }
+    return count;
+  }
+
+  /**
+   * Writes the models selected by the given clause as a JSON array, the same that calling {@link RoboModel#toJson()}
+   * on each of them would give. Rows are read from a cursor and written as they come, without creating the models.
+   * The writer is flushed but not closed.
+   * 
+   * @param out
+   *          where the JSON array is written
+   * @return the number of models exported, children excluded
+   * @throws IOException
+   *           if out can not be written
+   */
+  public int exportJson(Writer out, String selection, String[] selectionArgs) throws IOException {
+    final StorageDatabase db = mDatabaseManager.openOrCreateDatabase(getDatabaseName());
+    final JsonWriter writer = new JsonWriter(out);
+    writer.setLenient(true);
     try {
-      mDatabaseManager.deleteAllRecords(getDatabaseName(), getTableName());
-    } catch (final SQLiteException e) {
-      prepareTable(mDatabaseManager.openOrCreateDatabase(getDatabaseName()));
-      mDatabaseManager.deleteAllRecords(getDatabaseName(), getTableName());
+      final int count = new JsonExporter(mDatabaseManager, db, writer).exportArray(mKlass, selection, selectionArgs);
+      writer.flush();
+      return count;
+    } finally {
+      db.close();
     }
   }
 
-  public T create(String json) {
-    Gson gson = new GsonBuilder().registerTypeAdapter(mKlass, new RoboInstanceCreator()).setPrettyPrinting().create();
-    return gson.fromJson(json, mKlass);
+  /**
+   * Saves the models, with their @HasMany children, matching them to the stored ones by a natural key instead of by
+   * id: a model replaces the row with the same values in conflictColumns, and is inserted if there is none. Their
+   * ids are set accordingly. All the models are saved in a single transaction, and an index on the key columns is
+   * created the first time.
+   * 
+   * @param conflictColumns
+   *          the fields that identify a model, e.g. the id of a record on a server
+   * @throws IllegalArgumentException
+   *           if no column is given, or a column is not a field stored by the model
+   */
+  public void upsertAll(Collection<T> models, String... conflictColumns) {
+    if (conflictColumns.length == 0) {
+      throw new IllegalArgumentException("At least one conflict column is needed");
+    }
+    for (final String column : conflictColumns) {
+      if (ModelInfo.get(mKlass).getColumnField(column) == null) {
+        throw new IllegalArgumentException("No column " + column + " in " + getTableName());
+      }
+    }
+    mDatabaseManager.saveTrees(getDatabaseName(), models, conflictColumns.clone());
   }
 
   private class RoboInstanceCreator implements InstanceCreator<T> {
@@ -130,25 +354,29 @@ public class RoboManager<T extends RoboModel> {
   }
 
   public String getDatabaseName() {
-    return mDatabaseManager.getDatabaseName();
+    return mDatabaseManager.getDatabaseName(mKlass);
   }
 
   private long getLastId() throws InstanceNotFoundException {
-    final SQLiteDatabase db = mDatabaseManager.openOrCreateDatabase(getDatabaseName());
+    final long start = Metrics.start();
+    final StorageDatabase db = mDatabaseManager.openOrCreateDatabase(getDatabaseName());
 
     final String columns[] = new String[] { BaseColumns._ID };
-    Cursor query;
+    StorageCursor query;
     /*
      * Try the query. If the Table doesn't exist, fix the DB and re-run the query. 
      */
     try {
-      query = db.query(getTableName(), columns, null, null, null, null, null);
-    } catch (final SQLiteException e) {
+      query = db.query(getTableName(), columns, null, null, null, null, null, null);
+    } catch (final StorageException e) {
       prepareTable(db);
-      query = db.query(getTableName(), columns, null, null, null, null, null);
+      query = db.query(getTableName(), columns, null, null, null, null, null, null);
     }
 
-    if (query.moveToLast()) {
+    final boolean found = query.moveToLast();
+    Metrics.operation(Operation.QUERY, getTableName(), start);
+    Metrics.rowsRead(getTableName(), query.getCount());
+    if (found) {
       final int columnIndex = query.getColumnIndex(BaseColumns._ID);
       return query.getLong(columnIndex);
     } else {
@@ -156,20 +384,35 @@ public class RoboManager<T extends RoboModel> {
     }
   }
 
-  private long[] getSelectedModelIds(String selection, String[] selectionArgs, String groupBy, String having, String orderBy) {
-    final SQLiteDatabase db = mDatabaseManager.openOrCreateDatabase(getDatabaseName());
+  long[] getSelectedModelIds(String selection, String[] selectionArgs, String groupBy, String having, String orderBy) {
+    return getSelectedModelIds(buildIdQuery(selection, groupBy, having, orderBy, null), selectionArgs);
+  }
 
-    final String columns[] = new String[] { BaseColumns._ID };
-    Cursor query;
+  /**
+   * @return the SQL selecting the ids of the models matching the given clauses
+   */
+  String buildIdQuery(String selection, String groupBy, String having, String orderBy, String limit) {
+    return Storage.buildQueryString(false, getTableName(), ID_COLUMNS, selection, groupBy, having, orderBy,
+        limit);
+  }
 
-    /*
-     * Try the query. If the Table doesn't exist, fix the DB and re-run the query. 
-     */
+  long[] getSelectedModelIds(String sql, String[] selectionArgs) {
+    return getSelectedModelIds(sql, selectionArgs, true);
+  }
+
+  /**
+   * @param fixTable
+   *          whether a failing query fixes the table and runs again, or just throws
+   */
+  private long[] getSelectedModelIds(String sql, String[] selectionArgs, boolean fixTable) {
+    final long start = Metrics.start();
+    final StorageDatabase db = mDatabaseManager.openOrCreateDatabase(getDatabaseName());
+    final StorageCursor query;
     try {
-      query = db.query(getTableName(), columns, selection, selectionArgs, groupBy, having, orderBy);
-    } catch (final SQLiteException e) {
-      prepareTable(db);
-      query = db.query(getTableName(), columns, selection, selectionArgs, groupBy, having, orderBy);
+      query = fixTable ? rawQuery(db, sql, selectionArgs) : db.rawQuery(sql, selectionArgs);
+    } catch (final StorageException e) {
+      db.close();
+      throw e;
     }
 
     final int columnIndex = query.getColumnIndex(BaseColumns._ID);
@@ -177,17 +420,21 @@ public class RoboManager<T extends RoboModel> {
     for (query.moveToFirst(); !query.isAfterLast(); query.moveToNext()) {
       result[query.getPosition()] = query.getLong(columnIndex);
     }
+    query.close();
+    Metrics.query(db, mKlass, sql, selectionArgs, start);
+    db.close();
 
+    Metrics.rowsRead(getTableName(), result.length);
     return result;
   }
 
-  private void prepareTable(final SQLiteDatabase db) {
+  private void prepareTable(final StorageDatabase db) {
     T model = create();
 
     mDatabaseManager.createOrPopulateTable(getTableName(), model.getSavedFields(), db);
   }
 
-  private String getTableName() {
+  String getTableName() {
     return mSampleModel.getTableName();
   }
 
@@ -200,21 +447,368 @@ public class RoboManager<T extends RoboModel> {
   }
 
   public List<T> where(String selection, String[] selectionArgs, String groupBy, String having, String orderBy) {
-    final long[] ids = getSelectedModelIds(selection, selectionArgs, groupBy, having, orderBy);
-    return getRecords(ids);
+    return select(buildIdQuery(selection, groupBy, having, orderBy, null), selectionArgs);
   }
 
+  /**
+   * Searches the @FullText fields of the models, best matches first. A model ranks higher the more times the terms of
+   * query appear in its fields.
+   * 
+   * @param query
+   *          an FTS3 MATCH expression, e.g. "apple pie" for models with both words or "app*" for a prefix
+   * @param limit
+   *          the maximum number of models returned
+   * @throws IllegalArgumentException
+   *           if the model has no @FullText field
+   * @throws StorageException
+   *           if query is not a valid MATCH expression
+   */
+  public List<T> search(String query, int limit) {
+    if (ModelInfo.get(mKlass).getFullTextColumns().length == 0) {
+      throw new IllegalArgumentException("No @FullText field in " + getTableName());
+    }
+    if (limit < 0) {
+      throw new IllegalArgumentException("Limit can not be negative");
+    }
+
+    // offsets() gives 4 numbers per match, separated by spaces: the more spaces, the more matches
+    final String ftsTable = DatabaseManager.getFullTextTable(getTableName());
+    final String sql = "SELECT docid AS " + BaseColumns._ID + " FROM (SELECT docid, offsets(" + ftsTable
+        + ") AS hits FROM " + ftsTable + " WHERE " + ftsTable + " MATCH ?)"
+        + " ORDER BY length(hits) - length(replace(hits, ' ', '')) DESC, docid LIMIT " + limit;
+
+    mDatabaseManager.checkFullText(getDatabaseName(), mKlass);
+    // Malformed MATCH expressions, e.g. typed by the user, fail the query and must not trigger a schema fixup. Only a
+    // missing FTS table, if the database was deleted since it was checked, does.
+    try {
+      return select(sql, new String[] { query }, false);
+    } catch (final StorageException e) {
+      if (!fixFullTextTable()) {
+        throw e;
+      }
+      return select(sql, new String[] { query }, false);
+    }
+  }
+
+  /**
+   * @return true if the FTS table was missing and has been created
+   */
+  private boolean fixFullTextTable() {
+    final StorageDatabase db = mDatabaseManager.openOrCreateDatabase(getDatabaseName());
+    try {
+      if (DatabaseManager.tableExists(DatabaseManager.getFullTextTable(getTableName()), db)) {
+        return false;
+      }
+      prepareTable(db);
+      return true;
+    } finally {
+      db.close();
+    }
+  }
+
+
+  /**
+   * @return the number of models matching selection, without loading them
+   */
+  public long count(String selection, String[] selectionArgs) {
+    return (long) aggregate(Aggregate.COUNT, BaseColumns._ID, selection, selectionArgs);
+  }
+
+  /**
+   * @return the sum as a double, exact up to 2^53. Use {@link #sumLong(String, String, String[])} for larger sums of
+   *         integer columns.
+   */
+  public double sum(String column, String selection, String[] selectionArgs) {
+    return aggregate(Aggregate.SUM, column, selection, selectionArgs);
+  }
+
+  /**
+   * Sums an integer column exactly, in SQL, without loading the models. A sum that overflows a long makes the query
+   * fail instead of wrapping around.
+   * 
+   * @return the sum, 0 if no row matches
+   * @throws IllegalArgumentException
+   *           if the column is not stored as an integer, like integer fields, foreign keys and ordinal enums
+   */
+  public long sumLong(String column, String selection, String[] selectionArgs) {
+    checkIntegerColumn(column);
+    final String[] columns = new String[] { "SUM(" + column + ")" };
+    final String sql = Storage.buildQueryString(false, getTableName(), columns, selection, null, null,
+        null, null);
+    final long start = Metrics.start();
+    final StorageDatabase db = mDatabaseManager.openOrCreateDatabase(getDatabaseName());
+    final StorageCursor query = rawQuery(db, sql, selectionArgs);
+    try {
+      // SUM of no rows is NULL
+      return query.moveToFirst() && !query.isNull(0) ? query.getLong(0) : 0;
+    } finally {
+      query.close();
+      Metrics.query(db, mKlass, sql, selectionArgs, start);
+      db.close();
+      Metrics.rowsRead(getTableName(), 1);
+    }
+  }
+
+  public double avg(String column, String selection, String[] selectionArgs) {
+    return aggregate(Aggregate.AVG, column, selection, selectionArgs);
+  }
+
+  public double min(String column, String selection, String[] selectionArgs) {
+    return aggregate(Aggregate.MIN, column, selection, selectionArgs);
+  }
+
+  public double max(String column, String selection, String[] selectionArgs) {
+    return aggregate(Aggregate.MAX, column, selection, selectionArgs);
+  }
+
+  /**
+   * Computes an aggregate of a column in SQL, without loading the models.
+   * 
+   * @param selection
+   *          the rows to aggregate, or null for all of them
+   * @return the aggregate, NaN if it is undefined (e.g. the average of no rows)
+   * @throws IllegalArgumentException
+   *           if column is not stored by the model
+   */
+  public double aggregate(Aggregate aggregate, String column, String selection, String[] selectionArgs) {
+    final String[] columns = new String[] { aggregate.toSql(checkColumn(column)) };
+    final String sql = Storage.buildQueryString(false, getTableName(), columns, selection, null, null,
+        null, null);
+    final long start = Metrics.start();
+    final StorageDatabase db = mDatabaseManager.openOrCreateDatabase(getDatabaseName());
+    final StorageCursor query = rawQuery(db, sql, selectionArgs);
+    try {
+      return query.moveToFirst() && !query.isNull(0) ? query.getDouble(0) : Double.NaN;
+    } finally {
+      query.close();
+      Metrics.query(db, mKlass, sql, selectionArgs, start);
+      db.close();
+      Metrics.rowsRead(getTableName(), 1);
+    }
+  }
+
+  /**
+   * Computes an aggregate of a column for every value of groupColumn, in SQL, without loading the models.
+   * 
+   * @return the aggregate of each group, keyed by the value of groupColumn as text and in its order. Groups whose
+   *         aggregate is undefined map to NaN. Like {@link #sum(String, String, String[])}, sums are exact up to 2^53.
+   * @throws IllegalArgumentException
+   *           if column or groupColumn are not stored by the model
+   */
+  public Map<String, Double> aggregateBy(Aggregate aggregate, String column, String groupColumn, String selection,
+      String[] selectionArgs) {
+    final String[] columns = new String[] { checkColumn(groupColumn), aggregate.toSql(checkColumn(column)) };
+    final String sql = Storage.buildQueryString(false, getTableName(), columns, selection, groupColumn,
+        null, groupColumn, null);
+    final long start = Metrics.start();
+    final StorageDatabase db = mDatabaseManager.openOrCreateDatabase(getDatabaseName());
+    final StorageCursor query = rawQuery(db, sql, selectionArgs);
+    try {
+      final Map<String, Double> result = new LinkedHashMap<String, Double>(query.getCount() * 2);
+      for (query.moveToFirst(); !query.isAfterLast(); query.moveToNext()) {
+        result.put(query.getString(0), query.isNull(1) ? Double.NaN : query.getDouble(1));
+      }
+      Metrics.rowsRead(getTableName(), result.size());
+      return result;
+    } finally {
+      query.close();
+      Metrics.query(db, mKlass, sql, selectionArgs, start);
+      db.close();
+    }
+  }
+
+  private String checkColumn(String column) {
+    if (!BaseColumns._ID.equals(column) && ModelInfo.get(mKlass).getColumnField(column) == null) {
+      throw new IllegalArgumentException("No column " + column + " in " + getTableName());
+    }
+    return column;
+  }
+
+  private void checkIntegerColumn(String column) {
+    if (BaseColumns._ID.equals(column)) {
+      return;
+    }
+    // The type of the column, not of the field: foreign keys and ordinal enums are stored as integers too
+    final Field field = ModelInfo.get(mKlass).getColumnField(checkColumn(column));
+    if (!"INTEGER".equals(DatabaseManager.getTypeForField(field))) {
+      throw new IllegalArgumentException("Column " + column + " of " + getTableName() + " is not an integer");
+    }
+  }
+
+  private StorageCursor rawQuery(StorageDatabase db, String sql, String[] selectionArgs) {
+    /*
+     * Try the query. If the Table doesn't exist, fix the DB and re-run the query. 
+     */
+    try {
+      return db.rawQuery(sql, selectionArgs);
+    } catch (final StorageException e) {
+      prepareTable(db);
+      return db.rawQuery(sql, selectionArgs);
+    }
+  }
+
+  /**
+   * Starts building a query on the columns of this model
+   */
+  public Query<T> query() {
+    return new Query<T>(this, mKlass);
+  }
+
+  /**
+   * @param sql
+   *          a query selecting the ids of the models
+   * @return the models, from the query cache if it is enabled
+   */
+  List<T> select(String sql, String[] selectionArgs) {
+    return select(sql, selectionArgs, true);
+  }
+
+  private List<T> select(String sql, String[] selectionArgs, boolean fixTable) {
+    final QueryCache<T> cache = mQueryCache;
+    if (cache == null) {
+      return getRecords(getSelectedModelIds(sql, selectionArgs, fixTable));
+    }
+
+    // Read the version first: a write racing with the query makes the entry stale, never wrongly fresh
+    final QueryCache.Key key = new QueryCache.Key(sql, selectionArgs);
+    final long version = getCachedTablesVersion();
+    List<T> result = cache.get(key, version);
+    if (result == null) {
+      Metrics.cacheMiss(getTableName());
+      result = getRecords(getSelectedModelIds(sql, selectionArgs, fixTable));
+      cache.put(key, version, result);
+    } else {
+      Metrics.cacheHit(getTableName());
+    }
+    return result;
+  }
+
+  /**
+   * @return the sum of the versions of this model's table and of the tables of its children. Versions only grow, so
+   *         the sum changes whenever any of them does.
+   */
+  private long getCachedTablesVersion() {
+    if (mCachedTables == null) {
+      final Set<Class<? extends RoboModel>> classes = new LinkedHashSet<Class<? extends RoboModel>>();
+      collectModelClasses(mKlass, classes);
+      final String[] tables = new String[classes.size()];
+      int i = 0;
+      for (final Class<? extends RoboModel> klass : classes) {
+        tables[i++] = klass.getSimpleName();
+      }
+      mCachedTables = tables;
+    }
+
+    long version = 0;
+    for (final String table : mCachedTables) {
+      version += TableVersions.get(getDatabaseName(), table);
+    }
+    return version;
+  }
+
+  private static void collectModelClasses(Class<? extends RoboModel> klass, Set<Class<? extends RoboModel>> classes) {
+    if (classes.add(klass)) {
+      for (final Class<? extends RoboModel> child : ModelInfo.get(klass).getChildClasses()) {
+        collectModelClasses(child, classes);
+      }
+    }
+  }
+
+  /**
+   * Loads the models with the given ids, a few hundreds per query, through one {@link RowReader} per query. With
+   * parallel loading, the rows of all the queries are copied first, then hydrated by the {@link ParallelHydrator}.
+   * 
+   * @return the models, in the order of ids
+   */
   private List<T> getRecords(long[] ids) {
+    if (ids.length == 0) {
+      return new ArrayList<T>(0);
+    }
+
+    final Map<Long, T> models = getRecordsById(ids);
+    final List<T> result = new ArrayList<T>(ids.length);
     try {
-      final List<T> result = new ArrayList<T>(ids.length);
       for (final long id : ids) {
-        result.add(find(id));
+        // A repeated id gets its own instance
+        final T model = models.remove(id);
+        result.add(model != null ? model : find(id));
       }
-      return result;
     } catch (final InstanceNotFoundException e) {
       // Should never happen
       throw new RuntimeException(e);
     }
+    return result;
+  }
+
+  /**
+   * Loads the models with the given ids as {@link #getRecords(long[])} does.
+   * 
+   * @return the models by id, without the ids whose row does not exist
+   */
+  Map<Long, T> getRecordsById(long[] ids) {
+    if (ids.length == 0) {
+      return new HashMap<Long, T>(0);
+    }
+
+    final ModelInfo info = ModelInfo.get(mKlass);
+    final Map<Long, T> models = new HashMap<Long, T>(ids.length * 2);
+    // Rows copied to be hydrated in parallel, if it is enabled and worth it
+    final ParallelHydrator hydrator = mHydrator;
+    final List<Object[]> rows = hydrator != null && hydrator.accepts(ids.length) ? new ArrayList<Object[]>(ids.length)
+        : null;
+    RowReader reader = null;
+    final StorageDatabase db = mDatabaseManager.openOrCreateDatabase(getDatabaseName());
+    try {
+      for (int from = 0; from < ids.length; from += LOAD_CHUNK_SIZE) {
+        final int to = Math.min(ids.length, from + LOAD_CHUNK_SIZE);
+        final StringBuilder selection = new StringBuilder(BaseColumns._ID).append(" IN (");
+        for (int i = from; i < to; i++) {
+          selection.append(i > from ? "," : "").append(ids[i]);
+        }
+        selection.append(')');
+        final String sql = Storage.buildQueryString(false, getTableName(), info.getEagerColumns(),
+            selection.toString(), null, null, null, null);
+
+        long start = Metrics.start();
+        final StorageCursor query = rawQuery(db, sql, null);
+        try {
+          final int count = query.getCount();
+          Metrics.query(db, mKlass, sql, null, start);
+          Metrics.rowsRead(getTableName(), count);
+
+          // All the chunks have the same columns: a single reader can decode the copied rows
+          reader = new RowReader(query, info.getEagerAccessors());
+          if (rows != null) {
+            for (query.moveToFirst(); !query.isAfterLast(); query.moveToNext()) {
+              rows.add(reader.copyRow());
+            }
+            continue;
+          }
+
+          start = Metrics.start();
+          for (query.moveToFirst(); !query.isAfterLast(); query.moveToNext()) {
+            final T model = create();
+            model.readRow(reader);
+            models.put(model.getId(), model);
+          }
+          Metrics.operation(Operation.HYDRATE, getTableName(), start);
+        } finally {
+          query.close();
+        }
+      }
+
+      if (rows != null && reader != null) {
+        final long start = Metrics.start();
+        for (final T model : hydrator.hydrate(this, reader, rows)) {
+          reader.loadChildren(model);
+          models.put(model.getId(), model);
+        }
+        Metrics.operation(Operation.HYDRATE, getTableName(), start);
+      }
+    } finally {
+      db.close();
+    }
+    return models;
   }
 
   /**
@@ -224,7 +818,14 @@ public class RoboManager<T extends RoboModel> {
    *          - parent models mId
    */
   List<T> findAllByParent(String name, long id) {
-    return where(String.format("%s = ?", name), new String[] { String.valueOf(id) });
+    // Managers are created for every load of a parent: keep the SQL across them
+    final String key = getTableName() + '.' + name;
+    String sql = sParentQueries.get(key);
+    if (sql == null) {
+      sql = buildIdQuery(name + " = ?", null, null, null, null);
+      sParentQueries.put(key, sql);
+    }
+    return select(sql, new String[] { String.valueOf(id) });
   }
 
 }
@@ -0,0 +1,203 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * RoboMetrics:
+ * 1. The default {@link RoboMetricsListener}: keeps a histogram of the durations of each operation, and counters of
+ * rows read, JSON decoded and query cache hits and misses
+ * 2. Records with atomic increments only, so the threads doing database work never wait on each other or on readers
+ * 
+ * Read it at any time, e.g. from a debug screen: values read while operations are recorded may be a few operations
+ * apart from each other. Tables are not told apart, implement a listener for that.
+ */
+public class RoboMetrics implements RoboMetricsListener {
+  private final Histogram[] mTimings;
+  private final AtomicLong mRowsRead = new AtomicLong();
+  private final AtomicLong mJsonDecoded = new AtomicLong();
+  private final AtomicLong mCacheHits = new AtomicLong();
+  private final AtomicLong mCacheMisses = new AtomicLong();
+
+  public RoboMetrics() {
+    mTimings = new Histogram[Operation.values().length];
+    for (int i = 0; i < mTimings.length; i++) {
+      mTimings[i] = new Histogram();
+    }
+  }
+
+  @Override
+  public void onOperation(Operation operation, String tableName, long durationNanos) {
+    mTimings[operation.ordinal()].record(durationNanos);
+  }
+
+  @Override
+  public void onRowsRead(String tableName, int rows) {
+    mRowsRead.addAndGet(rows);
+  }
+
+  @Override
+  public void onJsonDecoded(int length) {
+    mJsonDecoded.addAndGet(length);
+  }
+
+  @Override
+  public void onCacheHit(String tableName) {
+    mCacheHits.incrementAndGet();
+  }
+
+  @Override
+  public void onCacheMiss(String tableName) {
+    mCacheMisses.incrementAndGet();
+  }
+
+  public Histogram getTimings(Operation operation) {
+    return mTimings[operation.ordinal()];
+  }
+
+  public long getRowsRead() {
+    return mRowsRead.get();
+  }
+
+  /**
+   * @return the characters, or bytes for binary columns, of JSON decoded into fields
+   */
+  public long getJsonDecoded() {
+    return mJsonDecoded.get();
+  }
+
+  public long getCacheHits() {
+    return mCacheHits.get();
+  }
+
+  public long getCacheMisses() {
+    return mCacheMisses.get();
+  }
+
+  public void reset() {
+    for (final Histogram histogram : mTimings) {
+      histogram.reset();
+    }
+    mRowsRead.set(0);
+    mJsonDecoded.set(0);
+    mCacheHits.set(0);
+    mCacheMisses.set(0);
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder();
+    for (final Operation operation : Operation.values()) {
+      builder.append(operation).append(": ").append(getTimings(operation)).append('\n');
+    }
+    builder.append("rows read: ").append(getRowsRead()).append(", JSON decoded: ").append(getJsonDecoded())
+        .append(", cache hits: ").append(getCacheHits()).append(", cache misses: ").append(getCacheMisses());
+    return builder.toString();
+  }
+
+  /**
+   * Durations bucketed by powers of two: percentiles are exact within a factor of two, which is enough to tell
+   * where time goes, and recording is one atomic increment per counter.
+   */
+  public static final class Histogram {
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mTotalNanos = new AtomicLong();
+    private final AtomicLong mMaxNanos = new AtomicLong();
+
+    void record(long nanos) {
+      final long value = Math.max(nanos, 0);
+      // Bucket i holds the values with i significant bits: [2^(i-1), 2^i - 1]
+      mBuckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+      mCount.incrementAndGet();
+      mTotalNanos.addAndGet(value);
+      long max = mMaxNanos.get();
+      while (value > max && !mMaxNanos.compareAndSet(max, value)) {
+        max = mMaxNanos.get();
+      }
+    }
+
+    void reset() {
+      for (int i = 0; i < BUCKETS; i++) {
+        mBuckets.set(i, 0);
+      }
+      mCount.set(0);
+      mTotalNanos.set(0);
+      mMaxNanos.set(0);
+    }
+
+    public long getCount() {
+      return mCount.get();
+    }
+
+    public long getTotalNanos() {
+      return mTotalNanos.get();
+    }
+
+    public long getMaxNanos() {
+      return mMaxNanos.get();
+    }
+
+    public long getMeanNanos() {
+      final long count = getCount();
+      return count > 0 ? getTotalNanos() / count : 0;
+    }
+
+    /**
+     * @param fraction
+     *          e.g. 0.5 for the median, 0.99 for the 99th percentile
+     * @return the upper bound of the bucket of the percentile, never more than the maximum, or 0 if nothing was
+     *         recorded
+     */
+    public long getPercentileNanos(double fraction) {
+      if (fraction < 0 || fraction > 1) {
+        throw new IllegalArgumentException("Percentile fraction must be between 0 and 1: " + fraction);
+      }
+      final long[] buckets = new long[BUCKETS];
+      long total = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        buckets[i] = mBuckets.get(i);
+        total += buckets[i];
+      }
+      if (total == 0) {
+        return 0;
+      }
+
+      final long rank = Math.max(1, (long) Math.ceil(fraction * total));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += buckets[i];
+        if (seen >= rank) {
+          final long upperBound = i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+          return Math.min(upperBound, getMaxNanos());
+        }
+      }
+      return getMaxNanos();
+    }
+
+    @Override
+    public String toString() {
+      return String.format("count %d, mean %d us, p50 %d us, p99 %d us, max %d us", getCount(),
+          TimeUnit.NANOSECONDS.toMicros(getMeanNanos()), TimeUnit.NANOSECONDS.toMicros(getPercentileNanos(0.5)),
+          TimeUnit.NANOSECONDS.toMicros(getPercentileNanos(0.99)), TimeUnit.NANOSECONDS.toMicros(getMaxNanos()));
+    }
+  }
+}
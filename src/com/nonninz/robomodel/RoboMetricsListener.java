@@ -0,0 +1,61 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+/**
+ * Receives the timings and counters of the database work done by RoboModel, see
+ * {@link RoboManager#setMetricsListener(RoboMetricsListener)} and {@link RoboMetrics}.
+ * 
+ * Methods are called on the thread that did the work, right after it, so they must be quick and thread safe.
+ */
+public interface RoboMetricsListener {
+  enum Operation {
+    /** Running a query and reading its rows */
+    QUERY,
+    /** Setting the fields of a model from a row */
+    HYDRATE,
+    /** Saving models with their children, in one transaction */
+    SAVE,
+    /** Deleting rows with their children, in one transaction */
+    DELETE,
+    /** Creating a missing table or adding its missing columns */
+    SCHEMA_FIXUP
+  }
+
+  /**
+   * @param tableName
+   *          the table the operation was on. A save of models of different classes reports the first one.
+   */
+  void onOperation(Operation operation, String tableName, long durationNanos);
+
+  void onRowsRead(String tableName, int rows);
+
+  /**
+   * @param length
+   *          the length of the JSON decoded into a field: characters of text columns, bytes of binary ones
+   */
+  void onJsonDecoded(int length);
+
+  /**
+   * Called when a query of a manager with the query cache enabled is answered from the cache
+   */
+  void onCacheHit(String tableName);
+
+  /**
+   * Called when a query of a manager with the query cache enabled has to run
+   */
+  void onCacheMiss(String tableName);
+}
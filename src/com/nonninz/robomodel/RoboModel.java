@@ -15,26 +15,22 @@
  */
 package com.nonninz.robomodel;
 
-import static android.provider.BaseColumns._ID;
 import static com.nonninz.robomodel.DatabaseManager.where;
 
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import android.content.Context;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteException;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonSyntaxException;
+import com.nonninz.robomodel.RoboMetricsListener.Operation;
 import com.nonninz.robomodel.annotations.BelongsTo;
 import com.nonninz.robomodel.annotations.HasMany;
 import com.nonninz.robomodel.exceptions.InstanceNotFoundException;
+import com.nonninz.robomodel.exceptions.StorageException;
+import com.nonninz.robomodel.storage.StorageCursor;
+import com.nonninz.robomodel.storage.StorageDatabase;
 
 /**
  * RoboModel: 
@@ -42,6 +38,7 @@ import com.nonninz.robomodel.exceptions.InstanceNotFoundException;
  * - save() 
  * - delete() 
  * - reload()
+ * - loadLazy()
  * 
  */
 public abstract class RoboModel {
@@ -54,7 +51,10 @@ public abstract class RoboModel {
   private Context mContext;
   private Class<? extends RoboModel> mClass;
   private DatabaseManager mDatabaseManager;
-  private final Gson mGson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+  private List<Field> mUnloadedLazyFields;
+
+  // The columns last written by this model, see BatchWriter
+  transient TypedContentValues mSavedValues;
 
   public RoboModel(Context context) {
     ensureDependencies(context);
@@ -67,22 +67,27 @@ public abstract class RoboModel {
       mDatabaseManager = new DatabaseManager(context);
     if (mClass == null)
       mClass = this.getClass();
+    if (mUnloadedLazyFields == null)
+      mUnloadedLazyFields = new ArrayList<Field>();
   }
 
   protected Context getContext() {
     return mContext;
   }
 
+  /**
+   * Deletes this model and, unless their @HasMany field says otherwise, its children and their descendants
+   */
   public void delete() {
     if (!isSaved()) {
       throw new IllegalStateException("No record in database to delete");
     }
 
-    mDatabaseManager.deleteRecord(getDatabaseName(), getTableName(), mId);
+    mDatabaseManager.deleteCascade(getDatabaseName(), mClass, mId);
   }
 
   public String getDatabaseName() {
-    return mDatabaseManager.getDatabaseName();
+    return mDatabaseManager.getDatabaseName(mClass);
   }
 
   String getTableName() {
@@ -96,16 +101,8 @@ public abstract class RoboModel {
     return mId;
   }
 
-  List<Field> getSavedFields() { //TODO: cache results
-    final List<Field> savedFields = new ArrayList<Field>();
-
-    final Field[] declaredFields = getClass().getDeclaredFields();
-
-    for (final Field field : declaredFields) {
-      savedFields.add(field);
-    }
-
-    return savedFields;
+  List<Field> getSavedFields() {
+    return ModelInfo.get(getClass()).getFields();
   }
 
   public boolean isSaved() {
@@ -121,92 +118,50 @@ public abstract class RoboModel {
     reload();
   }
 
-  private void loadField(Field field, Cursor query) {
-    final Class<?> type = field.getType();
-    final boolean wasAccessible = field.isAccessible();
-    final int columnIndex = query.getColumnIndex(field.getName());
-    field.setAccessible(true);
+  /**
+   * Sets the @HasMany field to the children of this model, read from the database
+   */
+  void loadChildren(FieldAccessor accessor) {
+    final HasMany hasMany = accessor.getField().getAnnotation(HasMany.class);
 
-    /*
-     * TODO: There is the potential of a problem here:
-     * What happens if the developer changes the type of a field between releases?
-     * 
-     * If he saves first, then the column type will be changed (In the future).
-     * If he loads first, we don't know if an Exception will be thrown if the
-     * types are incompatible, because it's undocumented in the Cursor documentation.
-     */
+    // Get the Foreign Key name from child model's parent field declaration
+    // TODO Set the back reference to parent
+    final String foreignKeyName = ModelInfo.getForeignKey(hasMany.value(), mClass);
 
-    try {
-      if (type == String.class) {
-        field.set(this, query.getString(columnIndex));
-      } else if (type == Boolean.TYPE) {
-        final boolean value = query.getInt(columnIndex) == 1 ? true : false;
-        field.setBoolean(this, value);
-      } else if (type == Byte.TYPE) {
-        field.setByte(this, (byte) query.getShort(columnIndex));
-      } else if (type == Double.TYPE) {
-        field.setDouble(this, query.getDouble(columnIndex));
-      } else if (type == Float.TYPE) {
-        field.setFloat(this, query.getFloat(columnIndex));
-      } else if (type == Integer.TYPE) {
-        field.setInt(this, query.getInt(columnIndex));
-      } else if (type == Long.TYPE) {
-        field.setLong(this, query.getLong(columnIndex));
-      } else if (type == Short.TYPE) {
-        field.setShort(this, query.getShort(columnIndex));
-      } else if (type.isEnum()) {
-        final String string = query.getString(columnIndex);
-        if (string != null && string.length() > 0) {
-          final Object[] constants = type.getEnumConstants();
-          final Method method = type.getMethod("valueOf", Class.class, String.class);
-          final Object value = method.invoke(constants[0], type, string);
-          field.set(this, value);
-        }
-      } else if (field.isAnnotationPresent(HasMany.class)) {
-        // TODO: load children
-        HasMany hasMany = field.getAnnotation(HasMany.class);
-
-        String foreignKeyName = null;
-        Field[] childFields = hasMany.value().getDeclaredFields();
-        for (Field childField : childFields) {
-          if (childField.isAnnotationPresent(BelongsTo.class)) {
-            if (childField.getAnnotation(BelongsTo.class).value() == mClass) {
-              // Get the Foreign Key name from child model's parent field declaration
-              foreignKeyName = childField.getName();
-              // TODO Set the back reference to parent
-              // childField.set(mClass, this);
-            }
-          }
-        }
+    if (foreignKeyName != null) {
+      RoboManager<?> childManager = RoboManager.get(mContext, hasMany.value());
+      List<?> children = childManager.findAllByParent(foreignKeyName, getId());
+      accessor.set(this, children);
+    }
+  }
 
-        if (foreignKeyName != null) {
-          RoboManager<?> childManager = RoboManager.get(mContext, hasMany.value());
-          List<?> children = childManager.findAllByParent(foreignKeyName, getId());
-          field.set(this, children);
-        }
-      } else if (field.isAnnotationPresent(BelongsTo.class)) {
-        // TODO: load parent????????
-      } else {
-        // Try to de-json it (db column must be of type text)
-        try {
-          final Object value = mGson.fromJson(query.getString(columnIndex), field.getType());
-          field.set(this, value);
-        } catch (final JsonSyntaxException e) {
-          final String msg = String.format("Type %s is not supported for field %s", type, field.getName());
-          throw new IllegalArgumentException(msg);
-        }
-      }
-    } catch (final IllegalAccessException e) {
-      final String msg = String.format("Field %s is not accessible", type, field.getName());
-      throw new IllegalArgumentException(msg);
-    } catch (final NoSuchMethodException e) {
-      // Should not happen
-      throw new RuntimeException(e);
-    } catch (final InvocationTargetException e) {
-      // Should not happen
-      throw new RuntimeException(e);
-    } finally {
-      field.setAccessible(wasAccessible);
+  /**
+   * Sets the id and the eager fields of this model from the current row of reader, which must be bound to the
+   * eager columns. Lazy fields are cleared: they stay null until loadLazy().
+   */
+  void readRow(RowReader reader) {
+    mId = reader.getId();
+    clearLazyFields();
+    reader.read(this);
+  }
+
+  /**
+   * Sets the id and the eager fields of this model, @HasMany excluded, from a row copied by reader. Lazy fields are
+   * cleared. Can run on any thread.
+   */
+  void applyRow(RowReader reader, Object[] row) {
+    mId = RowReader.getId(row);
+    clearLazyFields();
+    reader.apply(this, row);
+  }
+
+  private void clearLazyFields() {
+    // Lazy columns are not part of the query: they stay null until loadLazy()
+    mUnloadedLazyFields.clear();
+    final ModelInfo info = ModelInfo.get(mClass);
+    for (final Field field : info.getLazyFields()) {
+      info.getAccessor(field).set(this, null);
+      mUnloadedLazyFields.add(field);
     }
   }
 
@@ -216,23 +171,30 @@ public abstract class RoboModel {
     }
 
     // Retrieve current entry in the database
-    final SQLiteDatabase db = mDatabaseManager.openOrCreateDatabase(getDatabaseName());
-    Cursor query;
+    long start = Metrics.start();
+    final StorageDatabase db = mDatabaseManager.openOrCreateDatabase(getDatabaseName());
+    StorageCursor query;
 
     /*
      * Try to query the table. If the Table doesn't exist, fix the DB and re-run the query. 
      */
+    final String[] columns = ModelInfo.get(getClass()).getEagerColumns();
     try {
-      query = db.query(getTableName(), null, where(mId), null, null, null, null);
-    } catch (final SQLiteException e) {
+      query = db.query(getTableName(), columns, where(mId), null, null, null, null, null);
+    } catch (final StorageException e) {
       mDatabaseManager.createOrPopulateTable(mTableName, getSavedFields(), db);
-      query = db.query(getTableName(), null, where(mId), null, null, null, null);
+      query = db.query(getTableName(), columns, where(mId), null, null, null, null, null);
     }
 
-    if (query.moveToFirst()) {
-      setFieldsWithQueryResult(query);
+    final boolean found = query.moveToFirst();
+    Metrics.operation(Operation.QUERY, getTableName(), start);
+    if (found) {
+      Metrics.rowsRead(getTableName(), 1);
+      start = Metrics.start();
+      readRow(new RowReader(query, ModelInfo.get(mClass).getEagerAccessors()));
       query.close();
       db.close();
+      Metrics.operation(Operation.HYDRATE, getTableName(), start);
     } else {
       query.close();
       db.close();
@@ -241,122 +203,186 @@ public abstract class RoboModel {
     }
   }
 
+  /**
+   * Saves this model and, in the same transaction, the graph of its @HasMany children. Children that did not change
+   * since they were last saved are not written again.
+   * 
+   * @throws IllegalStateException
+   *           if the graph of children has a cycle
+   */
   public void save() {
-    final SQLiteDatabase database = mDatabaseManager.openOrCreateDatabase(getDatabaseName());
+    mDatabaseManager.saveTrees(getDatabaseName(), Collections.singletonList(this));
+  }
+
+  /**
+   * @return the values of the columns to write when saving, in a new set of values. Lazy columns that were not loaded
+   *         are left out.
+   */
+  TypedContentValues getContentValues() {
+    final TypedContentValues cv = new TypedContentValues(ModelInfo.get(mClass).getLayout());
+    fillContentValues(cv);
+    return cv;
+  }
 
-    List<Field> fields = getSavedFields();
-    final TypedContentValues cv = new TypedContentValues(fields.size());
-    for (final Field field : fields) {
-      saveField(field, cv);
+  /**
+   * Clears cv, which must have the layout of this model, and puts the values of the columns to write when saving.
+   * Lazy columns that were not loaded are left out.
+   */
+  void fillContentValues(TypedContentValues cv) {
+    cv.clear();
+    final List<FieldAccessor> accessors = ModelInfo.get(mClass).getColumnAccessors();
+    for (int slot = 0; slot < accessors.size(); slot++) {
+      final FieldAccessor accessor = accessors.get(slot);
+      if (mUnloadedLazyFields.isEmpty() || !mUnloadedLazyFields.contains(accessor.getField())) {
+        saveField(accessor, slot, cv);
+      } else if (accessor.get(this) != null) {
+        // Assigned without being loaded: the new value replaces the stored one
+        saveField(accessor, slot, cv);
+        mUnloadedLazyFields.remove(accessor.getField());
+      }
     }
+  }
 
-    // First try to save it. Then deal with errors (like table/field not existing);
-    try {
-      mId = mDatabaseManager.insertOrUpdate(getTableName(), cv, mId, database);
-    } catch (final SQLiteException ex) {
-      mDatabaseManager.createOrPopulateTable(getTableName(), fields, database);
-      mId = mDatabaseManager.insertOrUpdate(getTableName(), cv, mId, database);
-    } finally {
-      database.close();
+  /**
+   * Puts the column of the field of accessor, a @HasMany excluded, in the given slot of cv
+   */
+  void saveField(FieldAccessor accessor, int slot, TypedContentValues cv) {
+    final Field field = accessor.getField();
+    switch (accessor.getKind()) {
+    case STRING:
+      cv.putString(slot, (String) accessor.get(this));
+      break;
+    case BOOLEAN:
+      cv.putBoolean(slot, accessor.getBoolean(this));
+      break;
+    case BYTE:
+      cv.putLong(slot, accessor.getByte(this));
+      break;
+    case DOUBLE:
+      cv.putDouble(slot, accessor.getDouble(this));
+      break;
+    case FLOAT:
+      cv.putDouble(slot, accessor.getFloat(this));
+      break;
+    case INTEGER:
+      cv.putLong(slot, accessor.getInt(this));
+      break;
+    case LONG:
+      cv.putLong(slot, accessor.getLong(this));
+      break;
+    case SHORT:
+      cv.putLong(slot, accessor.getShort(this));
+      break;
+    case ORDINAL_ENUM:
+      final Enum<?> ordinal = (Enum<?>) accessor.get(this);
+      if (ordinal != null) {
+        cv.putLong(slot, ordinal.ordinal());
+      }
+      break;
+    case NAMED_ENUM:
+      final Enum<?> named = (Enum<?>) accessor.get(this);
+      if (named != null) {
+        cv.putString(slot, named.name());
+      }
+      break;
+    case CHILDREN:
+      // Do nothing - children are saved afterwards
+      break;
+    case PARENT:
+      final RoboModel parent = (RoboModel) accessor.get(this);
+      if (parent != null) {
+        cv.putLong(slot, parent.getId());
+      } else {
+        cv.putNull(slot);
+      }
+      break;
+    case BINARY:
+      cv.putBlob(slot, BinaryCodec.write(field, accessor.get(this)));
+      break;
+    case DEFERRED:
+      cv.putString(slot, JsonAdapters.writeDeferred(field, (Deferred<?>) accessor.get(this)));
+      break;
+    case JSON:
+      // Try to JSONify it (db column must be of type text)
+      cv.putString(slot, JsonAdapters.write(field, accessor.get(this)));
+      break;
+    }
+  }
+
+  /**
+   * Fetches every @Lazy field that has not been loaded yet, with a single query.
+   */
+  public void loadLazy() throws InstanceNotFoundException {
+    if (!mUnloadedLazyFields.isEmpty()) {
+      loadColumns(new ArrayList<Field>(mUnloadedLazyFields));
     }
+  }
 
-    // Save children
-    saveChildModels();
+  /**
+   * Fetches the @Lazy field with the given name, if it has not been loaded yet. Accessors of lazy fields can call
+   * this before returning the value, as it does not hit the database once the field is loaded.
+   * 
+   * @param fieldName
+   *          the name of a field annotated with @Lazy
+   */
+  public void loadLazy(String fieldName) throws InstanceNotFoundException {
+    final Field field = ModelInfo.get(getClass()).getLazyField(fieldName);
+    if (field == null) {
+      throw new IllegalArgumentException("No @Lazy field named " + fieldName + " in " + getTableName());
+    }
+    if (mUnloadedLazyFields.contains(field)) {
+      loadColumns(Collections.singletonList(field));
+    }
   }
 
-  void saveField(Field field, TypedContentValues cv) {
-    final Class<?> type = field.getType();
-    final boolean wasAccessible = field.isAccessible();
-    field.setAccessible(true);
+  private void loadColumns(List<Field> fields) throws InstanceNotFoundException {
+    final String[] columns = new String[fields.size()];
+    for (int i = 0; i < columns.length; i++) {
+      columns[i] = fields.get(i).getName();
+    }
 
+    long start = Metrics.start();
+    final StorageDatabase db = mDatabaseManager.openOrCreateDatabase(getDatabaseName());
+    StorageCursor query;
     try {
-      if (type == String.class) {
-        cv.put(field.getName(), (String) field.get(this));
-      } else if (type == Boolean.TYPE) {
-        cv.put(field.getName(), field.getBoolean(this));
-      } else if (type == Byte.TYPE) {
-        cv.put(field.getName(), field.getByte(this));
-      } else if (type == Double.TYPE) {
-        cv.put(field.getName(), field.getDouble(this));
-      } else if (type == Float.TYPE) {
-        cv.put(field.getName(), field.getFloat(this));
-      } else if (type == Integer.TYPE) {
-        cv.put(field.getName(), field.getInt(this));
-      } else if (type == Long.TYPE) {
-        cv.put(field.getName(), field.getLong(this));
-      } else if (type == Short.TYPE) {
-        cv.put(field.getName(), field.getShort(this));
-      } else if (type.isEnum()) {
-        final Object value = field.get(this);
-        if (value != null) {
-          final Method method = type.getMethod("name");
-          final String str = (String) method.invoke(value);
-          cv.put(field.getName(), str);
-        }
-      } else if (field.isAnnotationPresent(HasMany.class)) {
-        // Do nothing - children are saved afterwards
-      } else if (field.isAnnotationPresent(BelongsTo.class)) {
-        RoboModel parent = (RoboModel) field.get(this);
-        if (parent != null) {
-          cv.put(field.getName(), parent.getId());
-        } else {
-          cv.putNull(field.getName());
-        }
-      } else {
-        // Try to JSONify it (db column must be of type text)
-        final String json = mGson.toJson(field.get(this));
-        cv.put(field.getName(), json);
-      }
-    } catch (final IllegalAccessException e) {
-      final String msg = String.format("Field %s is not accessible", type, field.getName());
-      throw new IllegalArgumentException(msg);
-    } catch (final NoSuchMethodException e) {
-      // Should not happen
-      throw new RuntimeException(e);
-    } catch (final InvocationTargetException e) {
-      // Should not happen
-      throw new RuntimeException(e);
-    } finally {
-      field.setAccessible(wasAccessible);
+      query = db.query(getTableName(), columns, where(mId), null, null, null, null, null);
+    } catch (final StorageException e) {
+      mDatabaseManager.createOrPopulateTable(getTableName(), getSavedFields(), db);
+      query = db.query(getTableName(), columns, where(mId), null, null, null, null, null);
     }
-  }
 
-  private void setFieldsWithQueryResult(Cursor query) {
-    // Iterate over the columns and auto-assign values on corresponding fields
-    final String[] columns = query.getColumnNames();
-    for (final String column : columns) {
-      // Skip id column
-      if (column.equals(_ID)) {
-        continue;
+    try {
+      final boolean found = query.moveToFirst();
+      Metrics.operation(Operation.QUERY, getTableName(), start);
+      if (!found) {
+        final String msg = String.format("No entry in database with id %d for model %s", getId(), getTableName());
+        throw new InstanceNotFoundException(msg);
       }
-
-      final List<Field> fields = getSavedFields();
+      Metrics.rowsRead(getTableName(), 1);
+      start = Metrics.start();
+      final ModelInfo info = ModelInfo.get(mClass);
+      final List<FieldAccessor> accessors = new ArrayList<FieldAccessor>(fields.size());
       for (final Field field : fields) {
-        loadField(field, query);
+        accessors.add(info.getAccessor(field));
       }
+      new RowReader(query, accessors).read(this);
+      mUnloadedLazyFields.removeAll(fields);
+      Metrics.operation(Operation.HYDRATE, getTableName(), start);
+    } finally {
+      query.close();
+      db.close();
     }
   }
 
   @Override
   public String toString() {
-    final List<Field> fields = getSavedFields();
-
     final StringBuilder b = new StringBuilder();
     b.append(getTableName() + " {id: " + getId() + ", ");
-    String fieldName;
-    for (final Field f : fields) {
-      fieldName = f.getName();
-      if (f.isAnnotationPresent(HasMany.class)) {
-        b.append(fieldName + ": (RoboModel Child), ");
+    for (final FieldAccessor accessor : ModelInfo.get(getClass()).getAccessors()) {
+      if (accessor.getKind() == FieldAccessor.Kind.CHILDREN) {
+        b.append(accessor.getName() + ": (RoboModel Child), ");
       } else {
-        final boolean accessible = f.isAccessible();
-        f.setAccessible(true);
-        try {
-          b.append(fieldName + ": " + f.get(this) + ", ");
-        } catch (final IllegalAccessException e) {
-          b.append(fieldName + ": (INACCESSIBLE), ");
-        }
-        f.setAccessible(accessible);
+        b.append(accessor.getName() + ": " + accessor.get(this) + ", ");
       }
     }
     b.append("}");
@@ -365,16 +391,15 @@ public abstract class RoboModel {
   }
 
   public String toJson() {
-    Gson gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
-    return gson.toJson(this);
+    return JsonAdapters.gson().toJson(this);
   }
 
   /**
-   * Saves referenced child RoboModels annotated with @HasMany
-   * 
-   * @param model
+   * @return the child RoboModels referenced by fields annotated with @HasMany, ready to be saved with a reference
+   *         to this model
    */
-  private void saveChildModels() {
+  List<RoboModel> getChildModels() {
+    final List<RoboModel> children = new ArrayList<RoboModel>();
     Field[] fields = this.getClass().getFields();
     for (Field field : fields) {
       if (field.isAnnotationPresent(HasMany.class)) {
@@ -385,6 +410,9 @@ public abstract class RoboModel {
           Class<? extends RoboModel> childModel = field.getAnnotation(HasMany.class).value();
           if (Iterable.class.isAssignableFrom(field.getType())) {
             Iterable<?> list = (Iterable<?>) field.get(this);
+            if (list == null) {
+              continue;
+            }
             for (Object item : list) {
               RoboModel cast = childModel.cast(item);
 
@@ -393,7 +421,7 @@ public abstract class RoboModel {
               cast.ensureDependencies(mContext);
 
               cast.ensureParentReference(this);
-              cast.save();
+              children.add(cast);
             }
           } else {
             //TODO ??
@@ -405,6 +433,7 @@ public abstract class RoboModel {
         }
       }
     }
+    return children;
   }
 
   void ensureParentReference(RoboModel parentModel) {
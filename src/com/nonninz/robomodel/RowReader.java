@@ -0,0 +1,260 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import static android.provider.BaseColumns._ID;
+
+import java.util.List;
+
+import com.nonninz.robomodel.FieldAccessor.Kind;
+import com.nonninz.robomodel.storage.StorageCursor;
+
+/**
+ * RowReader:
+ * 1. Reads the rows of a cursor into the fields of models, one row at a time
+ * 2. Is bound to the cursor once: the column index of every field is resolved then, and reused for every row
+ * 3. Can instead copy the rows as they are stored, and decode them into models later, on any thread
+ */
+final class RowReader {
+  private final StorageCursor mCursor;
+  private final FieldAccessor[] mAccessors;
+  private final int[] mColumnIndexes;
+  private final int mIdIndex;
+
+  /**
+   * @param accessors
+   *          the fields to read. All of them but @HasMany and @BelongsTo must have a column in cursor.
+   */
+  RowReader(StorageCursor cursor, List<FieldAccessor> accessors) {
+    mCursor = cursor;
+    mAccessors = accessors.toArray(new FieldAccessor[accessors.size()]);
+    mColumnIndexes = new int[mAccessors.length];
+    for (int i = 0; i < mAccessors.length; i++) {
+      final Kind kind = mAccessors[i].getKind();
+      mColumnIndexes[i] = kind == Kind.CHILDREN || kind == Kind.PARENT ? -1 : cursor.getColumnIndex(mAccessors[i]
+          .getName());
+    }
+    mIdIndex = cursor.getColumnIndex(_ID);
+  }
+
+  /**
+   * @return the id of the current row, or {@link RoboModel#UNSAVED_MODEL_ID} if the cursor has no id column
+   */
+  long getId() {
+    return mIdIndex >= 0 ? mCursor.getLong(mIdIndex) : RoboModel.UNSAVED_MODEL_ID;
+  }
+
+  /**
+   * @return the id of a row copied by {@link #copyRow()}
+   */
+  static long getId(Object[] row) {
+    return (Long) row[row.length - 1];
+  }
+
+  /**
+   * Sets the fields of model from the current row
+   */
+  void read(RoboModel model) {
+    for (int i = 0; i < mAccessors.length; i++) {
+      readField(model, mAccessors[i], mColumnIndexes[i]);
+    }
+  }
+
+  /**
+   * Copies the columns of the current row without decoding them, followed by its id
+   */
+  Object[] copyRow() {
+    final Object[] row = new Object[mAccessors.length + 1];
+    for (int i = 0; i < mAccessors.length; i++) {
+      row[i] = copyColumn(mAccessors[i].getKind(), mColumnIndexes[i]);
+    }
+    row[mAccessors.length] = getId();
+    return row;
+  }
+
+  private Object copyColumn(Kind kind, int columnIndex) {
+    switch (kind) {
+    case BOOLEAN:
+    case BYTE:
+    case INTEGER:
+    case LONG:
+    case SHORT:
+      return mCursor.getLong(columnIndex);
+    case ORDINAL_ENUM:
+      return mCursor.isNull(columnIndex) ? null : Long.valueOf(mCursor.getLong(columnIndex));
+    case DOUBLE:
+    case FLOAT:
+      return mCursor.getDouble(columnIndex);
+    case BINARY:
+      return mCursor.getBlob(columnIndex);
+    case CHILDREN:
+    case PARENT:
+      return null;
+    default:
+      return mCursor.getString(columnIndex);
+    }
+  }
+
+  /**
+   * Sets the fields of model from a row copied by {@link #copyRow()}, decoding the JSON and binary columns. @HasMany
+   * fields are left to {@link #loadChildren(RoboModel)}. The cursor is not used: this can run on any thread, after the
+   * cursor is closed.
+   */
+  void apply(RoboModel model, Object[] row) {
+    for (int i = 0; i < mAccessors.length; i++) {
+      applyColumn(model, mAccessors[i], row[i]);
+    }
+  }
+
+  private static void applyColumn(RoboModel model, FieldAccessor accessor, Object value) {
+    switch (accessor.getKind()) {
+    case STRING:
+      accessor.set(model, value);
+      break;
+    case BOOLEAN:
+      accessor.setBoolean(model, (Long) value == 1);
+      break;
+    case BYTE:
+      accessor.setByte(model, ((Long) value).byteValue());
+      break;
+    case DOUBLE:
+      accessor.setDouble(model, (Double) value);
+      break;
+    case FLOAT:
+      accessor.setFloat(model, ((Double) value).floatValue());
+      break;
+    case INTEGER:
+      accessor.setInt(model, ((Long) value).intValue());
+      break;
+    case LONG:
+      accessor.setLong(model, (Long) value);
+      break;
+    case SHORT:
+      accessor.setShort(model, ((Long) value).shortValue());
+      break;
+    case ORDINAL_ENUM:
+      if (value != null) {
+        accessor.set(model, EnumTable.get(accessor.getField().getType()).forOrdinal(((Long) value).intValue()));
+      }
+      break;
+    case NAMED_ENUM:
+      final String name = (String) value;
+      if (name != null && name.length() > 0) {
+        accessor.set(model, EnumTable.get(accessor.getField().getType()).forName(name));
+      }
+      break;
+    case CHILDREN:
+    case PARENT:
+      break;
+    case BINARY:
+      final byte[] bytes = (byte[]) value;
+      accessor.set(model, BinaryCodec.read(accessor.getField(), bytes));
+      Metrics.jsonDecoded(bytes != null ? bytes.length : 0);
+      break;
+    case DEFERRED:
+      accessor.set(model, JsonAdapters.readDeferred(accessor.getField(), (String) value));
+      break;
+    case JSON:
+      final String json = (String) value;
+      accessor.set(model, JsonAdapters.read(accessor.getField(), json));
+      Metrics.jsonDecoded(json != null ? json.length() : 0);
+      break;
+    }
+  }
+
+  /**
+   * Sets the @HasMany fields of model, whose row was set by {@link #apply(RoboModel, Object[])}
+   */
+  void loadChildren(RoboModel model) {
+    for (final FieldAccessor accessor : mAccessors) {
+      if (accessor.getKind() == Kind.CHILDREN) {
+        model.loadChildren(accessor);
+      }
+    }
+  }
+
+  private void readField(RoboModel model, FieldAccessor accessor, int columnIndex) {
+    final StorageCursor query = mCursor;
+
+    /*
+     * TODO: There is the potential of a problem here:
+     * What happens if the developer changes the type of a field between releases?
+     * 
+     * If he saves first, then the column type will be changed (In the future).
+     * If he loads first, we don't know if an Exception will be thrown if the
+     * types are incompatible, because it's undocumented in the Cursor documentation.
+     */
+
+    switch (accessor.getKind()) {
+    case STRING:
+      accessor.set(model, query.getString(columnIndex));
+      break;
+    case BOOLEAN:
+      accessor.setBoolean(model, query.getInt(columnIndex) == 1);
+      break;
+    case BYTE:
+      accessor.setByte(model, (byte) query.getShort(columnIndex));
+      break;
+    case DOUBLE:
+      accessor.setDouble(model, query.getDouble(columnIndex));
+      break;
+    case FLOAT:
+      accessor.setFloat(model, query.getFloat(columnIndex));
+      break;
+    case INTEGER:
+      accessor.setInt(model, query.getInt(columnIndex));
+      break;
+    case LONG:
+      accessor.setLong(model, query.getLong(columnIndex));
+      break;
+    case SHORT:
+      accessor.setShort(model, query.getShort(columnIndex));
+      break;
+    case ORDINAL_ENUM:
+      if (!query.isNull(columnIndex)) {
+        accessor.set(model, EnumTable.get(accessor.getField().getType()).forOrdinal(query.getInt(columnIndex)));
+      }
+      break;
+    case NAMED_ENUM:
+      final String name = query.getString(columnIndex);
+      if (name != null && name.length() > 0) {
+        accessor.set(model, EnumTable.get(accessor.getField().getType()).forName(name));
+      }
+      break;
+    case CHILDREN:
+      model.loadChildren(accessor);
+      break;
+    case PARENT:
+      // TODO: load parent????????
+      break;
+    case BINARY:
+      final byte[] bytes = query.getBlob(columnIndex);
+      accessor.set(model, BinaryCodec.read(accessor.getField(), bytes));
+      Metrics.jsonDecoded(bytes != null ? bytes.length : 0);
+      break;
+    case DEFERRED:
+      // Keep the JSON, it is decoded on first access
+      accessor.set(model, JsonAdapters.readDeferred(accessor.getField(), query.getString(columnIndex)));
+      break;
+    case JSON:
+      // Try to de-json it (db column must be of type text)
+      final String json = query.getString(columnIndex);
+      accessor.set(model, JsonAdapters.read(accessor.getField(), json));
+      Metrics.jsonDecoded(json != null ? json.length() : 0);
+      break;
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A query that took longer than the threshold of the {@link SlowQueryLog}, with the plan SQLite chose for it
+ */
+public final class SlowQuery {
+  private final long mTimestamp;
+  private final String mTableName;
+  private final String mSql;
+  private final String[] mSelectionArgs;
+  private final long mDurationNanos;
+  private final List<String> mPlan;
+  private final boolean mFullScan;
+  private final List<String> mScannedForeignKeys;
+
+  SlowQuery(String tableName, String sql, String[] selectionArgs, long durationNanos, List<String> plan,
+      boolean fullScan, List<String> scannedForeignKeys) {
+    mTimestamp = System.currentTimeMillis();
+    mTableName = tableName;
+    mSql = sql;
+    mSelectionArgs = selectionArgs != null ? selectionArgs.clone() : null;
+    mDurationNanos = durationNanos;
+    mPlan = Collections.unmodifiableList(plan);
+    mFullScan = fullScan;
+    mScannedForeignKeys = Collections.unmodifiableList(scannedForeignKeys);
+  }
+
+  /**
+   * @return when the query ended, in milliseconds since the epoch
+   */
+  public long getTimestamp() {
+    return mTimestamp;
+  }
+
+  public String getTableName() {
+    return mTableName;
+  }
+
+  public String getSql() {
+    return mSql;
+  }
+
+  public String[] getSelectionArgs() {
+    return mSelectionArgs != null ? mSelectionArgs.clone() : null;
+  }
+
+  public long getDurationNanos() {
+    return mDurationNanos;
+  }
+
+  /**
+   * @return the detail lines of EXPLAIN QUERY PLAN, empty if the plan could not be read
+   */
+  public List<String> getPlan() {
+    return mPlan;
+  }
+
+  /**
+   * @return true if the plan reads the whole table of the model
+   */
+  public boolean isFullScan() {
+    return mFullScan;
+  }
+
+  /**
+   * @return the @BelongsTo columns the query filters on while scanning the whole table: each one is probably missing
+   *         an index
+   */
+  public List<String> getScannedForeignKeys() {
+    return mScannedForeignKeys;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder().append(TimeUnit.NANOSECONDS.toMillis(mDurationNanos))
+        .append(" ms: ").append(mSql);
+    if (mSelectionArgs != null && mSelectionArgs.length > 0) {
+      builder.append(' ').append(Arrays.toString(mSelectionArgs));
+    }
+    builder.append(", plan ").append(mPlan);
+    if (!mScannedForeignKeys.isEmpty()) {
+      builder.append(", full scan on @BelongsTo ").append(mScannedForeignKeys);
+    }
+    return builder.toString();
+  }
+}
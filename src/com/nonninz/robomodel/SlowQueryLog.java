@@ -0,0 +1,193 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+
+import roboguice.util.Ln;
+
+import com.nonninz.robomodel.annotations.BelongsTo;
+import com.nonninz.robomodel.exceptions.StorageException;
+import com.nonninz.robomodel.storage.StorageCursor;
+import com.nonninz.robomodel.storage.StorageDatabase;
+
+/**
+ * SlowQueryLog:
+ * 1. Records the queries of RoboManagers that take longer than a threshold, with their EXPLAIN QUERY PLAN
+ * 2. Keeps the latest records in a bounded ring buffer, and hands each one to a listener
+ * 3. Flags the queries that scan a whole table while filtering on a @BelongsTo column, which usually means that the
+ * column needs an index
+ * 
+ * Install it with {@link RoboManager#setSlowQueryLog(SlowQueryLog)}. The plan is read right after the slow query, on
+ * its thread: only slow queries pay for it.
+ */
+public class SlowQueryLog {
+  /**
+   * Receives every slow query, on the thread that ran it
+   */
+  public interface Listener {
+    void onSlowQuery(SlowQuery query);
+  }
+
+  private final long mThresholdNanos;
+  private final AtomicReferenceArray<SlowQuery> mRecords;
+  private final AtomicLong mCount = new AtomicLong();
+  private volatile Listener mListener;
+
+  /**
+   * @param thresholdMs
+   *          queries taking this long or longer are recorded
+   * @param capacity
+   *          how many of the latest slow queries to keep
+   */
+  public SlowQueryLog(long thresholdMs, int capacity) {
+    if (thresholdMs < 0) {
+      throw new IllegalArgumentException("Threshold can not be negative");
+    }
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be at least 1");
+    }
+    mThresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+    mRecords = new AtomicReferenceArray<SlowQuery>(capacity);
+  }
+
+  public void setListener(Listener listener) {
+    mListener = listener;
+  }
+
+  long getThresholdNanos() {
+    return mThresholdNanos;
+  }
+
+  /**
+   * @return the slow queries still in the buffer, oldest first
+   */
+  public List<SlowQuery> getRecords() {
+    final long count = mCount.get();
+    final int capacity = mRecords.length();
+    final List<SlowQuery> records = new ArrayList<SlowQuery>();
+    for (long i = Math.max(0, count - capacity); i < count; i++) {
+      final SlowQuery record = mRecords.get((int) (i % capacity));
+      if (record != null) {
+        records.add(record);
+      }
+    }
+    return records;
+  }
+
+  /**
+   * @return the number of slow queries recorded since the log was created or cleared, including the ones no longer
+   *         in the buffer
+   */
+  public long getCount() {
+    return mCount.get();
+  }
+
+  public void clear() {
+    for (int i = 0; i < mRecords.length(); i++) {
+      mRecords.set(i, null);
+    }
+    mCount.set(0);
+  }
+
+  /**
+   * Records a slow query. db must still be open: the plan is read from it.
+   */
+  void record(StorageDatabase db, Class<? extends RoboModel> klass, String sql, String[] selectionArgs,
+      long durationNanos) {
+    final String tableName = klass.getSimpleName();
+    final List<String> plan = explain(db, sql, selectionArgs);
+    boolean fullScan = false;
+    for (final String detail : plan) {
+      fullScan |= isFullScan(detail, tableName);
+    }
+
+    final List<String> scannedForeignKeys = new ArrayList<String>();
+    if (fullScan) {
+      final String where = getWhereClause(sql);
+      for (final Field field : ModelInfo.get(klass).getFields()) {
+        if (field.isAnnotationPresent(BelongsTo.class) && references(where, field.getName())) {
+          scannedForeignKeys.add(field.getName());
+        }
+      }
+    }
+
+    final SlowQuery query = new SlowQuery(tableName, sql, selectionArgs, durationNanos, plan, fullScan,
+        scannedForeignKeys);
+    mRecords.set((int) (mCount.getAndIncrement() % mRecords.length()), query);
+    Ln.w("Slow query on %s: %s", tableName, query);
+
+    final Listener listener = mListener;
+    if (listener != null) {
+      listener.onSlowQuery(query);
+    }
+  }
+
+  private static List<String> explain(StorageDatabase db, String sql, String[] selectionArgs) {
+    final List<String> plan = new ArrayList<String>();
+    try {
+      final StorageCursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+      try {
+        // The detail is the last column in all the versions of SQLite
+        int detail = cursor.getColumnIndex("detail");
+        if (detail < 0) {
+          detail = cursor.getColumnCount() - 1;
+        }
+        for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+          plan.add(cursor.getString(detail));
+        }
+      } finally {
+        cursor.close();
+      }
+    } catch (final StorageException e) {
+      Ln.w("Can not explain %s: %s", sql, e.getMessage());
+    }
+    return plan;
+  }
+
+  /**
+   * Recognizes a scan of tableName in the formats of old and new versions of SQLite: "TABLE t" without index,
+   * "SCAN TABLE t" or "SCAN t"
+   */
+  static boolean isFullScan(String detail, String tableName) {
+    final String[] words = detail.trim().split("\\s+");
+    if (words.length >= 2 && words[0].equalsIgnoreCase("SCAN")) {
+      final int table = words[1].equalsIgnoreCase("TABLE") && words.length > 2 ? 2 : 1;
+      return words[table].equalsIgnoreCase(tableName);
+    }
+    if (words.length >= 2 && words[0].equalsIgnoreCase("TABLE") && words[1].equalsIgnoreCase(tableName)) {
+      final String upper = detail.toUpperCase(Locale.US);
+      return !upper.contains(" WITH INDEX") && !upper.contains("PRIMARY KEY");
+    }
+    return false;
+  }
+
+  private static String getWhereClause(String sql) {
+    final int where = sql.toUpperCase(Locale.US).indexOf(" WHERE ");
+    return where >= 0 ? sql.substring(where + 7) : "";
+  }
+
+  private static boolean references(String where, String column) {
+    return Pattern.compile("\\b" + Pattern.quote(column) + "\\b", Pattern.CASE_INSENSITIVE).matcher(where).find();
+  }
+}
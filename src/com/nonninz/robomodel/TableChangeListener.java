@@ -0,0 +1,31 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+/**
+ * Receives a notification after models of an observed table are saved or deleted.
+ * 
+ * @see RoboManager#observe(TableChangeListener, java.util.concurrent.Executor)
+ */
+public interface TableChangeListener {
+  /**
+   * Called once for any number of writes to the table that happened within the same notification window.
+   * 
+   * @param tableName
+   *          the table that changed
+   */
+  void onTableChanged(String tableName);
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TableVersions:
+ * 1. Keeps a monotonically increasing version for every table written through {@link DatabaseManager}
+ * 2. Lets caches tell whether a table changed since they last read it
+ *
+ * Versions live in memory only and start from 0 in every process. Writes that bypass RoboModel and RoboManager (e.g.
+ * raw SQL) are not tracked.
+ */
+final class TableVersions {
+  private static final Map<String, AtomicLong> sVersions = new ConcurrentHashMap<String, AtomicLong>();
+
+  private TableVersions() {
+  }
+
+  static long get(String databaseName, String tableName) {
+    return counter(databaseName, tableName).get();
+  }
+
+  static void bump(String databaseName, String tableName) {
+    counter(databaseName, tableName).incrementAndGet();
+  }
+
+  private static AtomicLong counter(String databaseName, String tableName) {
+    final String key = databaseName + '.' + tableName;
+    AtomicLong counter = sVersions.get(key);
+    if (counter == null) {
+      synchronized (sVersions) {
+        counter = sVersions.get(key);
+        if (counter == null) {
+          counter = new AtomicLong();
+          sVersions.put(key, counter);
+        }
+      }
+    }
+    return counter;
+  }
+}
@@ -1,12 +1,12 @@
 /**
  * Copyright 2012 Francesco Donadon
- * 
+ *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
  * You may obtain a copy of the License at
- * 
+ *
  * http://www.apache.org/licenses/LICENSE-2.0
- * 
+ *
  * Unless required by applicable law or agreed to in writing, software
  * distributed under the License is distributed on an "AS IS" BASIS,
  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
@@ -15,62 +15,288 @@
  */
 package com.nonninz.robomodel;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
 import android.content.ContentValues;
 
+import com.nonninz.robomodel.storage.StorageStatement;
+
 /**
- * This class is a wrapper of {@link ContentValues} that also stores the type of the field.
+ * TypedContentValues:
+ * 1. Holds the values of the columns of a model, with their type, as written by a save
+ * 2. Stores each value in the slot of its column, given by the {@link Layout} of the model: integers, booleans and
+ * reals are kept in primitive arrays and never boxed
+ * 3. Is cleared and refilled for every save (see {@link ModelInfo#obtainValues()}) and binds its values straight to
+ * compiled statements
+ *
+ * The public constructors, kept for existing callers, create values without a model: their layout grows with every
+ * new column put.
  */
 public final class TypedContentValues {
   enum ElementType {
     BOOLEAN, INTEGER, REAL, TEXT, BLOB
   }
 
+  /**
+   * The columns of a model, in the order of their slots. Shared by all the values of the model.
+   */
+  static final class Layout {
+    private final String[] mColumns;
+    private final Map<String, Integer> mSlots;
+
+    Layout(String[] columns) {
+      mColumns = columns;
+      final Map<String, Integer> slots = new HashMap<String, Integer>(columns.length * 2);
+      for (int i = 0; i < columns.length; i++) {
+        slots.put(columns[i], i);
+      }
+      mSlots = Collections.unmodifiableMap(slots);
+    }
+
+    int size() {
+      return mColumns.length;
+    }
+
+    /**
+     * @return the columns, in slot order. Must not be modified.
+     */
+    String[] getColumns() {
+      return mColumns;
+    }
+
+    /**
+     * @return the slot of column, or -1 if the model has no such column
+     */
+    int getSlot(String column) {
+      final Integer slot = mSlots.get(column);
+      return slot != null ? slot : -1;
+    }
+  }
+
   public static final String TAG = "TypedContentValues2";
 
-  /** Holds the types values */
-  private HashMap<String, ElementType> mTypes;
-  private final ContentValues mValues;
+  private Layout mLayout;
+  // Whether columns missing from the layout are added to it, instead of rejected
+  private final boolean mGrowable;
+  // Whether each slot has a value, and its type: null for NULL
+  private boolean[] mPresent;
+  private ElementType[] mTypes;
+  // INTEGER and BOOLEAN values (as 0 or 1)
+  private long[] mLongs;
+  private double[] mDoubles;
+  // TEXT and BLOB values
+  private Object[] mObjects;
+  private int mSize;
 
   /**
-   * Creates an empty set of values using the default initial size
+   * Creates an empty set of values for the columns of layout
    */
+  TypedContentValues(Layout layout) {
+    this(layout, false);
+  }
+
+  private TypedContentValues(Layout layout, boolean growable) {
+    final int size = layout.size();
+    mLayout = layout;
+    mGrowable = growable;
+    mPresent = new boolean[size];
+    mTypes = new ElementType[size];
+    mLongs = new long[size];
+    mDoubles = new double[size];
+    mObjects = new Object[size];
+  }
+
+  /**
+   * Creates an empty set of values that takes any column
+   * 
+   * @deprecated the values of a model are filled by the model itself, for its own columns
+   */
+  @Deprecated
   public TypedContentValues() {
-    mValues = new ContentValues();
-    mTypes = new HashMap<String, ElementType>();
+    this(new Layout(new String[0]), true);
   }
 
   /**
-   * Creates an empty set of values using the given initial size
+   * Creates an empty set of values that takes any column
    * 
    * @param size
-   *          the initial size of the set of values
+   *          ignored: the values grow with their columns
+   * @deprecated the values of a model are filled by the model itself, for its own columns
    */
+  @Deprecated
   public TypedContentValues(int size) {
-    mValues = new ContentValues(size);
-    mTypes = new HashMap<String, ElementType>(size);
+    this();
   }
 
   /**
-   * Creates a set of values copied from the given set
+   * Creates a set of values copied from the given set, that takes any column
    * 
    * @param from
    *          the values to copy
+   * @deprecated the values of a model are filled by the model itself, for its own columns
    */
+  @Deprecated
   public TypedContentValues(TypedContentValues from) {
-    mTypes = new HashMap<String, ElementType>(from.mTypes);
-    mValues = new ContentValues(from.mValues);
+    this(from.mLayout, true);
+    from.copyTo(this);
+  }
+
+  Layout getLayout() {
+    return mLayout;
   }
 
   /**
    * Removes all values.
    */
   public void clear() {
-    mValues.clear();
-    mTypes.clear();
+    Arrays.fill(mPresent, false);
+    Arrays.fill(mObjects, null);
+    mSize = 0;
+  }
+
+  /**
+   * Copies these values into target, reusing it if it has the same layout.
+   * 
+   * @return target, or a new set of values if it could not be reused
+   */
+  TypedContentValues copyTo(TypedContentValues target) {
+    if (target == null || target.mLayout != mLayout) {
+      target = new TypedContentValues(mLayout);
+    }
+    final int size = mLayout.size();
+    System.arraycopy(mPresent, 0, target.mPresent, 0, size);
+    System.arraycopy(mTypes, 0, target.mTypes, 0, size);
+    System.arraycopy(mLongs, 0, target.mLongs, 0, size);
+    System.arraycopy(mDoubles, 0, target.mDoubles, 0, size);
+    System.arraycopy(mObjects, 0, target.mObjects, 0, size);
+    target.mSize = mSize;
+    return target;
+  }
+
+  private void set(int slot, ElementType type) {
+    if (!mPresent[slot]) {
+      mPresent[slot] = true;
+      mSize++;
+    }
+    mTypes[slot] = type;
+  }
+
+  void putLong(int slot, long value) {
+    set(slot, ElementType.INTEGER);
+    mLongs[slot] = value;
+    mObjects[slot] = null;
+  }
+
+  void putBoolean(int slot, boolean value) {
+    set(slot, ElementType.BOOLEAN);
+    mLongs[slot] = value ? 1 : 0;
+    mObjects[slot] = null;
+  }
+
+  void putDouble(int slot, double value) {
+    set(slot, ElementType.REAL);
+    mDoubles[slot] = value;
+    mObjects[slot] = null;
+  }
+
+  /**
+   * Puts value, or NULL if it is null
+   */
+  void putString(int slot, String value) {
+    set(slot, value != null ? ElementType.TEXT : null);
+    mObjects[slot] = value;
+  }
+
+  /**
+   * Puts value, or NULL if it is null
+   */
+  void putBlob(int slot, byte[] value) {
+    set(slot, value != null ? ElementType.BLOB : null);
+    mObjects[slot] = value;
+  }
+
+  void putNull(int slot) {
+    set(slot, null);
+    mObjects[slot] = null;
+  }
+
+  /**
+   * Binds the value of slot to the parameter at index of statement, NULL if it is missing
+   */
+  void bind(StorageStatement statement, int index, int slot) {
+    final ElementType type = mPresent[slot] ? mTypes[slot] : null;
+    if (type == null) {
+      statement.bindNull(index);
+      return;
+    }
+    switch (type) {
+    case BOOLEAN:
+    case INTEGER:
+      statement.bindLong(index, mLongs[slot]);
+      break;
+    case REAL:
+      statement.bindDouble(index, mDoubles[slot]);
+      break;
+    case TEXT:
+      statement.bindString(index, (String) mObjects[slot]);
+      break;
+    case BLOB:
+      statement.bindBlob(index, (byte[]) mObjects[slot]);
+      break;
+    }
+  }
+
+  /**
+   * Binds all the slots, in order, to the first parameters of statement. Missing values are bound as NULL.
+   */
+  void bind(StorageStatement statement) {
+    for (int slot = 0; slot < mPresent.length; slot++) {
+      bind(statement, slot + 1, slot);
+    }
+  }
+
+  private int getSlot(String key) {
+    final int slot = mLayout.getSlot(key);
+    if (slot >= 0) {
+      return slot;
+    } else if (!mGrowable) {
+      throw new IllegalArgumentException("No column " + key);
+    }
+    return addColumn(key);
+  }
+
+  /**
+   * @return the slot of the new last column
+   */
+  private int addColumn(String key) {
+    final int size = mLayout.size();
+    final String[] columns = new String[size + 1];
+    System.arraycopy(mLayout.getColumns(), 0, columns, 0, size);
+    columns[size] = key;
+    // Layouts are shared by copies: replace it rather than change it
+    mLayout = new Layout(columns);
+
+    final boolean[] present = new boolean[size + 1];
+    System.arraycopy(mPresent, 0, present, 0, size);
+    mPresent = present;
+    final ElementType[] types = new ElementType[size + 1];
+    System.arraycopy(mTypes, 0, types, 0, size);
+    mTypes = types;
+    final long[] longs = new long[size + 1];
+    System.arraycopy(mLongs, 0, longs, 0, size);
+    mLongs = longs;
+    final double[] doubles = new double[size + 1];
+    System.arraycopy(mDoubles, 0, doubles, 0, size);
+    mDoubles = doubles;
+    final Object[] objects = new Object[size + 1];
+    System.arraycopy(mObjects, 0, objects, 0, size);
+    mObjects = objects;
+    return size;
   }
 
   /**
@@ -81,7 +307,8 @@ public final class TypedContentValues {
    * @return {@code true} if the value is present, {@code false} otherwise
    */
   public boolean containsKey(String key) {
-    return mValues.containsKey(key);
+    final int slot = mLayout.getSlot(key);
+    return slot >= 0 && mPresent[slot];
   }
 
   @Override
@@ -89,19 +316,86 @@ public final class TypedContentValues {
     if (!(object instanceof TypedContentValues)) {
       return false;
     }
-    boolean equals = mValues.equals(((TypedContentValues) object).mValues);
-    return equals && mTypes.equals(((TypedContentValues) object).mTypes);
+    final TypedContentValues other = (TypedContentValues) object;
+    if (mSize != other.mSize) {
+      return false;
+    }
+    // The values of a model share its layout. Values without a model may have their columns in any order.
+    final boolean sameLayout = mLayout == other.mLayout
+        || Arrays.equals(mLayout.getColumns(), other.mLayout.getColumns());
+    final String[] columns = mLayout.getColumns();
+    for (int slot = 0; slot < mPresent.length; slot++) {
+      if (!mPresent[slot]) {
+        continue;
+      }
+      final int otherSlot = sameLayout ? slot : other.mLayout.getSlot(columns[slot]);
+      if (otherSlot < 0 || !other.mPresent[otherSlot] || !sameValue(slot, other, otherSlot)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean sameValue(int slot, TypedContentValues other, int otherSlot) {
+    final ElementType type = mTypes[slot];
+    if (type != other.mTypes[otherSlot]) {
+      return false;
+    } else if (type == null) {
+      return true;
+    }
+    switch (type) {
+    case BOOLEAN:
+    case INTEGER:
+      return mLongs[slot] == other.mLongs[otherSlot];
+    case REAL:
+      return Double.compare(mDoubles[slot], other.mDoubles[otherSlot]) == 0;
+    case BLOB:
+      return Arrays.equals((byte[]) mObjects[slot], (byte[]) other.mObjects[otherSlot]);
+    default:
+      return mObjects[slot].equals(other.mObjects[otherSlot]);
+    }
   }
 
   /**
-   * Gets a value. Valid value types are {@link String}, {@link Boolean}, and {@link Number} implementations.
+   * Gets a value. Valid value types are {@link String}, {@link Boolean}, {@link Long}, {@link Double} and byte[].
    * 
    * @param key
    *          the value to get
    * @return the data for the value
    */
   public Object get(String key) {
-    return mValues.get(key);
+    final int slot = mLayout.getSlot(key);
+    if (slot < 0 || !mPresent[slot] || mTypes[slot] == null) {
+      return null;
+    }
+    switch (mTypes[slot]) {
+    case BOOLEAN:
+      return mLongs[slot] != 0;
+    case INTEGER:
+      return mLongs[slot];
+    case REAL:
+      return mDoubles[slot];
+    default:
+      return mObjects[slot];
+    }
+  }
+
+  private Number getAsNumber(String key) {
+    final Object value = get(key);
+    if (value instanceof Number) {
+      return (Number) value;
+    } else if (value instanceof String) {
+      try {
+        return Long.valueOf((String) value);
+      } catch (final NumberFormatException e) {
+        try {
+          return Double.valueOf((String) value);
+        } catch (final NumberFormatException e1) {
+          return null;
+        }
+      }
+    }
+    return null;
   }
 
   /**
@@ -112,7 +406,15 @@ public final class TypedContentValues {
    * @return the Boolean value, or null if the value is missing or cannot be converted
    */
   public Boolean getAsBoolean(String key) {
-    return mValues.getAsBoolean(key);
+    final Object value = get(key);
+    if (value instanceof Boolean) {
+      return (Boolean) value;
+    } else if (value instanceof String) {
+      return Boolean.valueOf((String) value);
+    } else if (value instanceof Number) {
+      return ((Number) value).longValue() != 0;
+    }
+    return null;
   }
 
   /**
@@ -123,7 +425,8 @@ public final class TypedContentValues {
    * @return the Byte value, or null if the value is missing or cannot be converted
    */
   public Byte getAsByte(String key) {
-    return mValues.getAsByte(key);
+    final Number value = getAsNumber(key);
+    return value != null ? value.byteValue() : null;
   }
 
   /**
@@ -134,7 +437,8 @@ public final class TypedContentValues {
    * @return the byte[] value, or null is the value is missing or not a byte[]
    */
   public byte[] getAsByteArray(String key) {
-    return mValues.getAsByteArray(key);
+    final Object value = get(key);
+    return value instanceof byte[] ? (byte[]) value : null;
   }
 
   /**
@@ -145,7 +449,8 @@ public final class TypedContentValues {
    * @return the Double value, or null if the value is missing or cannot be converted
    */
   public Double getAsDouble(String key) {
-    return mValues.getAsDouble(key);
+    final Number value = getAsNumber(key);
+    return value != null ? value.doubleValue() : null;
   }
 
   /**
@@ -156,7 +461,8 @@ public final class TypedContentValues {
    * @return the Float value, or null if the value is missing or cannot be converted
    */
   public Float getAsFloat(String key) {
-    return mValues.getAsFloat(key);
+    final Number value = getAsNumber(key);
+    return value != null ? value.floatValue() : null;
   }
 
   /**
@@ -167,7 +473,8 @@ public final class TypedContentValues {
    * @return the Integer value, or null if the value is missing or cannot be converted
    */
   public Integer getAsInteger(String key) {
-    return mValues.getAsInteger(key);
+    final Number value = getAsNumber(key);
+    return value != null ? value.intValue() : null;
   }
 
   /**
@@ -178,7 +485,8 @@ public final class TypedContentValues {
    * @return the Long value, or null if the value is missing or cannot be converted
    */
   public Long getAsLong(String key) {
-    return mValues.getAsLong(key);
+    final Number value = getAsNumber(key);
+    return value != null ? value.longValue() : null;
   }
 
   /**
@@ -189,7 +497,8 @@ public final class TypedContentValues {
    * @return the Short value, or null if the value is missing or cannot be converted
    */
   public Short getAsShort(String key) {
-    return mValues.getAsShort(key);
+    final Number value = getAsNumber(key);
+    return value != null ? value.shortValue() : null;
   }
 
   /**
@@ -200,7 +509,8 @@ public final class TypedContentValues {
    * @return the String for the value
    */
   public String getAsString(String key) {
-    return mValues.getAsString(key);
+    final Object value = get(key);
+    return value != null ? value.toString() : null;
   }
 
   /**
@@ -208,17 +518,42 @@ public final class TypedContentValues {
    * 
    * @param key
    *          the value to get
-   * @return the type of the value, or null is the value is missing
+   * @return the type of the value, or null is the value is missing or NULL
    */
   public ElementType getType(String key) {
-    return mTypes.get(key);
+    final int slot = mLayout.getSlot(key);
+    return slot >= 0 && mPresent[slot] ? mTypes[slot] : null;
   }
 
   @Override
   public int hashCode() {
+    // A sum over the columns, as equals() does not depend on their order
     int code = 17;
-    code = 31 * code + mValues.hashCode();
-    code = 31 * code + mTypes.hashCode();
+    final String[] columns = mLayout.getColumns();
+    for (int slot = 0; slot < mPresent.length; slot++) {
+      if (!mPresent[slot]) {
+        continue;
+      }
+      int value = 0;
+      if (mTypes[slot] != null) {
+        switch (mTypes[slot]) {
+        case BOOLEAN:
+        case INTEGER:
+          value = (int) (mLongs[slot] ^ (mLongs[slot] >>> 32));
+          break;
+        case REAL:
+          final long bits = Double.doubleToLongBits(mDoubles[slot]);
+          value = (int) (bits ^ (bits >>> 32));
+          break;
+        case BLOB:
+          value = Arrays.hashCode((byte[]) mObjects[slot]);
+          break;
+        default:
+          value = mObjects[slot].hashCode();
+        }
+      }
+      code += columns[slot].hashCode() ^ value;
+    }
     return code;
   }
 
@@ -229,10 +564,15 @@ public final class TypedContentValues {
    *          the name of the value to put
    * @param value
    *          the data for the value to put
+   * @throws IllegalArgumentException
+   *           if the model has no column key
    */
   public void put(String key, Boolean value) {
-    mValues.put(key, value);
-    mTypes.put(key, ElementType.BOOLEAN);
+    if (value != null) {
+      putBoolean(getSlot(key), value);
+    } else {
+      putNull(getSlot(key));
+    }
   }
 
   /**
@@ -242,10 +582,11 @@ public final class TypedContentValues {
    *          the name of the value to put
    * @param value
    *          the data for the value to put
+   * @throws IllegalArgumentException
+   *           if the model has no column key
    */
   public void put(String key, Byte value) {
-    mValues.put(key, value);
-    mTypes.put(key, ElementType.INTEGER);
+    put(key, value != null ? Long.valueOf(value) : null);
   }
 
   /**
@@ -255,10 +596,11 @@ public final class TypedContentValues {
    *          the name of the value to put
    * @param value
    *          the data for the value to put
+   * @throws IllegalArgumentException
+   *           if the model has no column key
    */
   public void put(String key, byte[] value) {
-    mValues.put(key, value);
-    mTypes.put(key, ElementType.BLOB);
+    putBlob(getSlot(key), value);
   }
 
   /**
@@ -268,10 +610,15 @@ public final class TypedContentValues {
    *          the name of the value to put
    * @param value
    *          the data for the value to put
+   * @throws IllegalArgumentException
+   *           if the model has no column key
    */
   public void put(String key, Double value) {
-    mValues.put(key, value);
-    mTypes.put(key, ElementType.REAL);
+    if (value != null) {
+      putDouble(getSlot(key), value);
+    } else {
+      putNull(getSlot(key));
+    }
   }
 
   /**
@@ -281,10 +628,11 @@ public final class TypedContentValues {
    *          the name of the value to put
    * @param value
    *          the data for the value to put
+   * @throws IllegalArgumentException
+   *           if the model has no column key
    */
   public void put(String key, Float value) {
-    mValues.put(key, value);
-    mTypes.put(key, ElementType.REAL);
+    put(key, value != null ? Double.valueOf(value) : null);
   }
 
   /**
@@ -294,10 +642,11 @@ public final class TypedContentValues {
    *          the name of the value to put
    * @param value
    *          the data for the value to put
+   * @throws IllegalArgumentException
+   *           if the model has no column key
    */
   public void put(String key, Integer value) {
-    mValues.put(key, value);
-    mTypes.put(key, ElementType.INTEGER);
+    put(key, value != null ? Long.valueOf(value) : null);
   }
 
   /**
@@ -307,10 +656,15 @@ public final class TypedContentValues {
    *          the name of the value to put
    * @param value
    *          the data for the value to put
+   * @throws IllegalArgumentException
+   *           if the model has no column key
    */
   public void put(String key, Long value) {
-    mValues.put(key, value);
-    mTypes.put(key, ElementType.INTEGER);
+    if (value != null) {
+      putLong(getSlot(key), value);
+    } else {
+      putNull(getSlot(key));
+    }
   }
 
   /**
@@ -320,10 +674,11 @@ public final class TypedContentValues {
    *          the name of the value to put
    * @param value
    *          the data for the value to put
+   * @throws IllegalArgumentException
+   *           if the model has no column key
    */
   public void put(String key, Short value) {
-    mValues.put(key, value);
-    mTypes.put(key, ElementType.INTEGER);
+    put(key, value != null ? Long.valueOf(value) : null);
   }
 
   /**
@@ -333,21 +688,33 @@ public final class TypedContentValues {
    *          the name of the value to put
    * @param value
    *          the data for the value to put
+   * @throws IllegalArgumentException
+   *           if the model has no column key
    */
   public void put(String key, String value) {
-    mValues.put(key, value);
-    mTypes.put(key, ElementType.TEXT);
+    putString(getSlot(key), value);
   }
 
   /**
-   * Adds all values from the passed in ContentValues.
+   * Adds all values from the passed in values.
    * 
    * @param other
-   *          the ContentValues from which to copy
+   *          the values from which to copy
+   * @throws IllegalArgumentException
+   *           if the model has no column of other
    */
   public void putAll(TypedContentValues other) {
-    mValues.putAll(other.mValues);
-    mTypes.putAll(other.mTypes);
+    final String[] columns = other.mLayout.getColumns();
+    for (int slot = 0; slot < columns.length; slot++) {
+      if (!other.mPresent[slot]) {
+        continue;
+      }
+      final int target = getSlot(columns[slot]);
+      set(target, other.mTypes[slot]);
+      mLongs[target] = other.mLongs[slot];
+      mDoubles[target] = other.mDoubles[slot];
+      mObjects[target] = other.mObjects[slot];
+    }
   }
 
   /**
@@ -355,10 +722,11 @@ public final class TypedContentValues {
    * 
    * @param key
    *          the name of the value to make null
+   * @throws IllegalArgumentException
+   *           if the model has no column key
    */
   public void putNull(String key) {
-    mValues.putNull(key);
-    mTypes.put(key, null);
+    putNull(getSlot(key));
   }
 
   /**
@@ -368,8 +736,12 @@ public final class TypedContentValues {
    *          the name of the value to remove
    */
   public void remove(String key) {
-    mValues.remove(key);
-    mTypes.remove(key);
+    final int slot = mLayout.getSlot(key);
+    if (slot >= 0 && mPresent[slot]) {
+      mPresent[slot] = false;
+      mObjects[slot] = null;
+      mSize--;
+    }
   }
 
   /**
@@ -378,19 +750,49 @@ public final class TypedContentValues {
    * @return the number of values
    */
   public int size() {
-    return mValues.size();
+    return mSize;
   }
 
+  /**
+   * @return the columns that have a value, in slot order
+   */
   public Set<String> keySet() {
-    return mTypes.keySet();
+    final Set<String> keys = new LinkedHashSet<String>(mSize * 2);
+    final String[] columns = mLayout.getColumns();
+    for (int slot = 0; slot < columns.length; slot++) {
+      if (mPresent[slot]) {
+        keys.add(columns[slot]);
+      }
+    }
+    return keys;
   }
 
   /**
    * Create a {@link ContentValues} instance with the contents of this instance.
    */
-
   public ContentValues toContentValues() {
-    return new ContentValues(mValues);
+    final ContentValues values = new ContentValues(mSize);
+    final String[] columns = mLayout.getColumns();
+    for (int slot = 0; slot < columns.length; slot++) {
+      if (!mPresent[slot]) {
+        continue;
+      }
+      final Object value = get(columns[slot]);
+      if (value == null) {
+        values.putNull(columns[slot]);
+      } else if (value instanceof Boolean) {
+        values.put(columns[slot], (Boolean) value);
+      } else if (value instanceof Long) {
+        values.put(columns[slot], (Long) value);
+      } else if (value instanceof Double) {
+        values.put(columns[slot], (Double) value);
+      } else if (value instanceof byte[]) {
+        values.put(columns[slot], (byte[]) value);
+      } else {
+        values.put(columns[slot], (String) value);
+      }
+    }
+    return values;
   }
 
   /**
@@ -399,6 +801,6 @@ public final class TypedContentValues {
    * @return a set of all of the keys and values
    */
   public Set<Map.Entry<String, Object>> valueSet() {
-    return mValues.valueSet();
+    return toContentValues().valueSet();
   }
 }
@@ -33,4 +33,9 @@ import com.nonninz.robomodel.RoboModel;
 @Target({ ElementType.FIELD })
 public @interface HasMany {
   Class<? extends RoboModel> value();
+
+  /**
+   * Whether deleting a model also deletes these children, and theirs
+   */
+  boolean cascade() default true;
 }
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel.annotations;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Selects how a field is stored in its column.
+ * 
+ * Fields without this annotation are stored with {@link Codec#TEXT}.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.FIELD })
+public @interface Stored {
+  enum Codec {
+    /**
+     * Complex types are serialized to JSON in a TEXT column
+     */
+    TEXT,
+    /**
+     * Complex types are serialized to a compact binary form in a BLOB column. Only applies to fields that would
+     * otherwise be stored as JSON.
+     */
+    BINARY,
+    /**
+     * Enums are stored as their ordinal in an INTEGER column instead of their name. Only applies to enum fields, and
+     * reordering the constants changes the meaning of stored values.
+     */
+    ORDINAL
+  }
+
+  Codec codec() default Codec.TEXT;
+}
@@ -0,0 +1,27 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel.exceptions;
+
+/**
+ * Thrown by the simple queries of a storage statement when they return no row
+ */
+public class NoResultException extends StorageException {
+  private static final long serialVersionUID = -2859302153471230127L;
+
+  public NoResultException(String msg) {
+    super(msg);
+  }
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel.exceptions;
+
+/**
+ * Thrown by a storage backend when a statement can not be compiled or run, e.g. because its table or one of its
+ * columns do not exist.
+ */
+public class StorageException extends RuntimeException {
+  private static final long serialVersionUID = 4916153098423526441L;
+
+  public StorageException(String msg) {
+    super(msg);
+  }
+
+  public StorageException(String msg, Throwable cause) {
+    super(msg, cause);
+  }
+}
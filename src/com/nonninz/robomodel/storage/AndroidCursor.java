@@ -0,0 +1,114 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel.storage;
+
+import android.database.Cursor;
+
+/**
+ * {@link StorageCursor} on an Android Cursor
+ */
+class AndroidCursor implements StorageCursor {
+  private final Cursor mCursor;
+
+  AndroidCursor(Cursor cursor) {
+    mCursor = cursor;
+  }
+
+  @Override
+  public int getCount() {
+    return mCursor.getCount();
+  }
+
+  @Override
+  public int getPosition() {
+    return mCursor.getPosition();
+  }
+
+  @Override
+  public boolean moveToFirst() {
+    return mCursor.moveToFirst();
+  }
+
+  @Override
+  public boolean moveToLast() {
+    return mCursor.moveToLast();
+  }
+
+  @Override
+  public boolean moveToNext() {
+    return mCursor.moveToNext();
+  }
+
+  @Override
+  public boolean isAfterLast() {
+    return mCursor.isAfterLast();
+  }
+
+  @Override
+  public int getColumnCount() {
+    return mCursor.getColumnCount();
+  }
+
+  @Override
+  public int getColumnIndex(String columnName) {
+    return mCursor.getColumnIndex(columnName);
+  }
+
+  @Override
+  public boolean isNull(int columnIndex) {
+    return mCursor.isNull(columnIndex);
+  }
+
+  @Override
+  public byte[] getBlob(int columnIndex) {
+    return mCursor.getBlob(columnIndex);
+  }
+
+  @Override
+  public String getString(int columnIndex) {
+    return mCursor.getString(columnIndex);
+  }
+
+  @Override
+  public short getShort(int columnIndex) {
+    return mCursor.getShort(columnIndex);
+  }
+
+  @Override
+  public int getInt(int columnIndex) {
+    return mCursor.getInt(columnIndex);
+  }
+
+  @Override
+  public long getLong(int columnIndex) {
+    return mCursor.getLong(columnIndex);
+  }
+
+  @Override
+  public float getFloat(int columnIndex) {
+    return mCursor.getFloat(columnIndex);
+  }
+
+  @Override
+  public double getDouble(int columnIndex) {
+    return mCursor.getDouble(columnIndex);
+  }
+
+  @Override
+  public void close() {
+    mCursor.close();
+  }
+}
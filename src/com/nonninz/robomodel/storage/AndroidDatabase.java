@@ -0,0 +1,146 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel.storage;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+import com.nonninz.robomodel.exceptions.StorageException;
+
+/**
+ * {@link StorageDatabase} on an Android SQLiteDatabase. SQLiteExceptions are rethrown as StorageExceptions. Closing it
+ * leaves the SQLiteDatabase open for the other users of the database.
+ */
+class AndroidDatabase implements StorageDatabase {
+  private final SQLiteDatabase mDatabase;
+
+  AndroidDatabase(SQLiteDatabase database) {
+    mDatabase = database;
+  }
+
+  @Override
+  public StorageCursor query(String table, String[] columns, String selection, String[] selectionArgs,
+      String groupBy, String having, String orderBy, String limit) {
+    try {
+      return new AndroidCursor(mDatabase.query(table, columns, selection, selectionArgs, groupBy, having, orderBy,
+          limit));
+    } catch (final SQLiteException e) {
+      throw new StorageException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public StorageCursor rawQuery(String sql, String[] selectionArgs) {
+    try {
+      return new AndroidCursor(mDatabase.rawQuery(sql, selectionArgs));
+    } catch (final SQLiteException e) {
+      throw new StorageException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public long insert(String table, String[] columns, Object[] values) {
+    try {
+      return mDatabase.insertOrThrow(table, null, toContentValues(columns, values));
+    } catch (final SQLiteException e) {
+      throw new StorageException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public int update(String table, String[] columns, Object[] values, String whereClause, String[] whereArgs) {
+    try {
+      return mDatabase.update(table, toContentValues(columns, values), whereClause, whereArgs);
+    } catch (final SQLiteException e) {
+      throw new StorageException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public int delete(String table, String whereClause, String[] whereArgs) {
+    try {
+      return mDatabase.delete(table, whereClause, whereArgs);
+    } catch (final SQLiteException e) {
+      throw new StorageException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public void execSQL(String sql) {
+    try {
+      mDatabase.execSQL(sql);
+    } catch (final SQLiteException e) {
+      throw new StorageException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public StorageStatement compileStatement(String sql) {
+    try {
+      return new AndroidStatement(mDatabase.compileStatement(sql));
+    } catch (final SQLiteException e) {
+      throw new StorageException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public void beginTransaction() {
+    mDatabase.beginTransaction();
+  }
+
+  @Override
+  public void setTransactionSuccessful() {
+    mDatabase.setTransactionSuccessful();
+  }
+
+  @Override
+  public void endTransaction() {
+    try {
+      mDatabase.endTransaction();
+    } catch (final SQLiteException e) {
+      throw new StorageException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public void close() {
+    // The connection is kept by AndroidStorageProvider
+  }
+
+  private static ContentValues toContentValues(String[] columns, Object[] values) {
+    final ContentValues contentValues = new ContentValues(columns.length);
+    for (int i = 0; i < columns.length; i++) {
+      final Object value = values[i];
+      if (value == null) {
+        contentValues.putNull(columns[i]);
+      } else if (value instanceof String) {
+        contentValues.put(columns[i], (String) value);
+      } else if (value instanceof Boolean) {
+        contentValues.put(columns[i], (Boolean) value);
+      } else if (value instanceof Float || value instanceof Double) {
+        contentValues.put(columns[i], ((Number) value).doubleValue());
+      } else if (value instanceof Number) {
+        contentValues.put(columns[i], ((Number) value).longValue());
+      } else if (value instanceof byte[]) {
+        contentValues.put(columns[i], (byte[]) value);
+      } else {
+        contentValues.put(columns[i], value.toString());
+      }
+    }
+    return contentValues;
+  }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel.storage;
+
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+
+import com.nonninz.robomodel.exceptions.NoResultException;
+import com.nonninz.robomodel.exceptions.StorageException;
+
+/**
+ * {@link StorageStatement} on an Android SQLiteStatement
+ */
+class AndroidStatement implements StorageStatement {
+  private final SQLiteStatement mStatement;
+
+  AndroidStatement(SQLiteStatement statement) {
+    mStatement = statement;
+  }
+
+  @Override
+  public void bindNull(int index) {
+    mStatement.bindNull(index);
+  }
+
+  @Override
+  public void bindLong(int index, long value) {
+    mStatement.bindLong(index, value);
+  }
+
+  @Override
+  public void bindDouble(int index, double value) {
+    mStatement.bindDouble(index, value);
+  }
+
+  @Override
+  public void bindString(int index, String value) {
+    mStatement.bindString(index, value);
+  }
+
+  @Override
+  public void bindBlob(int index, byte[] value) {
+    mStatement.bindBlob(index, value);
+  }
+
+  @Override
+  public void clearBindings() {
+    mStatement.clearBindings();
+  }
+
+  @Override
+  public void execute() {
+    try {
+      mStatement.execute();
+    } catch (final SQLiteException e) {
+      throw new StorageException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public long executeInsert() {
+    try {
+      return mStatement.executeInsert();
+    } catch (final SQLiteException e) {
+      throw new StorageException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public long simpleQueryForLong() {
+    try {
+      return mStatement.simpleQueryForLong();
+    } catch (final SQLiteDoneException e) {
+      throw new NoResultException(e.getMessage());
+    } catch (final SQLiteException e) {
+      throw new StorageException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public String simpleQueryForString() {
+    try {
+      return mStatement.simpleQueryForString();
+    } catch (final SQLiteDoneException e) {
+      throw new NoResultException(e.getMessage());
+    } catch (final SQLiteException e) {
+      throw new StorageException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public void close() {
+    mStatement.close();
+  }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel.storage;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+import com.nonninz.robomodel.exceptions.StorageException;
+
+/**
+ * AndroidStorageProvider:
+ * 1. The default {@link StorageProvider}: the private SQLite databases of an Android context
+ * 2. Keeps one SQLiteDatabase open per database file in the process, shared by all the {@link StorageDatabase} opened
+ * on it, so its compiled statements and per-connection PRAGMAs last. The PRAGMAs of the database are run once, when
+ * it is opened.
+ * 
+ * A database file deleted behind its back, e.g. through {@link Context#deleteDatabase(String)}, is opened again.
+ */
+public class AndroidStorageProvider implements StorageProvider {
+  // By path: every provider of the process shares them
+  private static final Map<String, SQLiteDatabase> sConnections = new HashMap<String, SQLiteDatabase>();
+
+  private final Context mContext;
+
+  public AndroidStorageProvider(Context context) {
+    mContext = context;
+  }
+
+  @Override
+  public StorageDatabase openDatabase(String name) {
+    final String path = mContext.getDatabasePath(name).getPath();
+    synchronized (sConnections) {
+      SQLiteDatabase connection = sConnections.get(path);
+      if (connection != null && connection.isOpen() && new File(path).exists()) {
+        return new AndroidDatabase(connection);
+      }
+      if (connection != null) {
+        sConnections.remove(path);
+        connection.close();
+      }
+
+      try {
+        connection = mContext.openOrCreateDatabase(name, Context.MODE_PRIVATE, null);
+      } catch (final SQLiteException e) {
+        throw new StorageException(e.getMessage(), e);
+      }
+      try {
+        Storage.applyPragmas(new AndroidDatabase(connection), name);
+      } catch (final StorageException e) {
+        connection.close();
+        throw e;
+      }
+      sConnections.put(path, connection);
+      return new AndroidDatabase(connection);
+    }
+  }
+
+  @Override
+  public boolean deleteDatabase(String name) {
+    final SQLiteDatabase connection;
+    synchronized (sConnections) {
+      connection = sConnections.remove(mContext.getDatabasePath(name).getPath());
+    }
+    if (connection != null) {
+      connection.close();
+    }
+    return mContext.deleteDatabase(name);
+  }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel.storage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import android.content.Context;
+
+/**
+ * Storage:
+ * 1. Chooses the {@link StorageProvider} of RoboModel: the databases of the Android context, unless another backend
+ * is installed
+ * 2. Holds the PRAGMAs of each database, run by the providers when they open it
+ * 3. Holds the SQL helpers shared by the backends
+ */
+public final class Storage {
+  private static volatile StorageProvider sProvider;
+  private static final Map<String, String[]> sPragmas = new ConcurrentHashMap<String, String[]>();
+
+  private Storage() {
+  }
+
+  /**
+   * Makes RoboModel open its databases from provider instead of the Android context, e.g. to run it on a desktop JVM.
+   * Databases opened before are not affected.
+   * 
+   * @param provider
+   *          the backend to use, or null to use the Android one again
+   */
+  public static void setProvider(StorageProvider provider) {
+    sProvider = provider;
+  }
+
+  /**
+   * @return the installed provider, or the one of context if there is none
+   */
+  public static StorageProvider getProvider(Context context) {
+    final StorageProvider provider = sProvider;
+    return provider != null ? provider : new AndroidStorageProvider(context);
+  }
+
+  /**
+   * Sets the PRAGMAs of a database, e.g. "journal_mode = WAL" or "synchronous = NORMAL". The providers keep one
+   * connection per database and run them on it when they open it. Connections already open are not affected.
+   * 
+   * @param pragmas
+   *          the PRAGMAs without the PRAGMA keyword, none to stop running them
+   */
+  public static void setPragmas(String databaseName, String... pragmas) {
+    if (pragmas.length == 0) {
+      sPragmas.remove(databaseName);
+    } else {
+      sPragmas.put(databaseName, pragmas.clone());
+    }
+  }
+
+  /**
+   * Runs the PRAGMAs of a database on a connection just opened to it. Providers call it before handing the connection
+   * out.
+   * 
+   * @throws com.nonninz.robomodel.exceptions.StorageException
+   *           if a PRAGMA fails. The connection is left open.
+   */
+  public static void applyPragmas(StorageDatabase db, String databaseName) {
+    final String[] pragmas = sPragmas.get(databaseName);
+    if (pragmas == null) {
+      return;
+    }
+    for (final String pragma : pragmas) {
+      // Some PRAGMAs return a row, which execSQL rejects on Android: run them all as queries
+      final StorageCursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+      try {
+        cursor.moveToFirst();
+      } finally {
+        cursor.close();
+      }
+    }
+  }
+
+  /**
+   * Builds a SELECT statement the way Android's SQLiteQueryBuilder does
+   * 
+   * @param columns
+   *          the columns to return, or null for all of them
+   */
+  public static String buildQueryString(boolean distinct, String tables, String[] columns, String where,
+      String groupBy, String having, String orderBy, String limit) {
+    if (isEmpty(groupBy) && !isEmpty(having)) {
+      throw new IllegalArgumentException("HAVING clauses are only permitted when using a groupBy clause");
+    }
+
+    final StringBuilder query = new StringBuilder(120).append("SELECT ");
+    if (distinct) {
+      query.append("DISTINCT ");
+    }
+    if (columns != null && columns.length != 0) {
+      for (int i = 0; i < columns.length; i++) {
+        query.append(i > 0 ? ", " : "").append(columns[i]);
+      }
+      query.append(' ');
+    } else {
+      query.append("* ");
+    }
+    query.append("FROM ").append(tables);
+    appendClause(query, " WHERE ", where);
+    appendClause(query, " GROUP BY ", groupBy);
+    appendClause(query, " HAVING ", having);
+    appendClause(query, " ORDER BY ", orderBy);
+    appendClause(query, " LIMIT ", limit);
+    return query.toString();
+  }
+
+  /**
+   * @return the first column of the first row returned by sql
+   * @throws com.nonninz.robomodel.exceptions.NoResultException
+   *           if it returns no row
+   */
+  public static long longForQuery(StorageDatabase db, String sql, String[] selectionArgs) {
+    final StorageStatement statement = db.compileStatement(sql);
+    try {
+      if (selectionArgs != null) {
+        for (int i = 0; i < selectionArgs.length; i++) {
+          statement.bindString(i + 1, selectionArgs[i]);
+        }
+      }
+      return statement.simpleQueryForLong();
+    } finally {
+      statement.close();
+    }
+  }
+
+  private static void appendClause(StringBuilder query, String name, String clause) {
+    if (!isEmpty(clause)) {
+      query.append(name).append(clause);
+    }
+  }
+
+  private static boolean isEmpty(String string) {
+    return string == null || string.length() == 0;
+  }
+}
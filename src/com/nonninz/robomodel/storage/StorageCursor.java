@@ -0,0 +1,59 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel.storage;
+
+/**
+ * The rows returned by a query of a {@link StorageDatabase}, read the way Android's Cursor reads them. It starts
+ * before the first row.
+ */
+public interface StorageCursor {
+  int getCount();
+
+  int getPosition();
+
+  boolean moveToFirst();
+
+  boolean moveToLast();
+
+  boolean moveToNext();
+
+  boolean isAfterLast();
+
+  int getColumnCount();
+
+  /**
+   * @return the index of the column, or -1 if there is none
+   */
+  int getColumnIndex(String columnName);
+
+  boolean isNull(int columnIndex);
+
+  byte[] getBlob(int columnIndex);
+
+  String getString(int columnIndex);
+
+  short getShort(int columnIndex);
+
+  int getInt(int columnIndex);
+
+  long getLong(int columnIndex);
+
+  float getFloat(int columnIndex);
+
+  double getDouble(int columnIndex);
+
+  void close();
+}
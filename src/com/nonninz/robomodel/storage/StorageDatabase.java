@@ -0,0 +1,76 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel.storage;
+
+/**
+ * StorageDatabase:
+ * 1. An open database of a {@link StorageProvider}, with the operations RoboModel runs on it
+ * 2. Follows the semantics of Android's SQLiteDatabase: '?' parameters, nested transactions that fail the outermost
+ * one if they are not successful, values read with the conversions of SQLite
+ * 
+ * Every method throws {@link com.nonninz.robomodel.exceptions.StorageException} if its SQL can not be compiled or
+ * run. Values are String, Boolean, Number, byte[] or null.
+ */
+public interface StorageDatabase {
+  /**
+   * @param columns
+   *          the columns to return, or null for all of them
+   * @param selection
+   *          the WHERE clause without the WHERE keyword, or null for all the rows
+   */
+  StorageCursor query(String table, String[] columns, String selection, String[] selectionArgs, String groupBy,
+      String having, String orderBy, String limit);
+
+  StorageCursor rawQuery(String sql, String[] selectionArgs);
+
+  /**
+   * @return the id of the inserted row
+   */
+  long insert(String table, String[] columns, Object[] values);
+
+  /**
+   * @return the number of rows updated
+   */
+  int update(String table, String[] columns, Object[] values, String whereClause, String[] whereArgs);
+
+  /**
+   * @param whereClause
+   *          the rows to delete, or null for all of them
+   * @return the number of rows deleted
+   */
+  int delete(String table, String whereClause, String[] whereArgs);
+
+  /**
+   * Runs a single SQL statement that returns no data, e.g. CREATE TABLE
+   */
+  void execSQL(String sql);
+
+  /**
+   * Compiles a statement to run many times with different bindings. The caller closes it when done.
+   */
+  StorageStatement compileStatement(String sql);
+
+  void beginTransaction();
+
+  void setTransactionSuccessful();
+
+  /**
+   * Commits the transaction if it and all the transactions nested in it were successful, rolls it back otherwise
+   */
+  void endTransaction();
+
+  void close();
+}
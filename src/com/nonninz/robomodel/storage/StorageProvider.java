@@ -0,0 +1,38 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel.storage;
+
+/**
+ * StorageProvider:
+ * 1. Opens the databases where RoboModel stores its tables
+ * 2. Is the entry point of a storage backend, see {@link Storage#setProvider(StorageProvider)}
+ */
+public interface StorageProvider {
+  /**
+   * Opens the database with the given name, creating it if it does not exist. The caller closes it when done.
+   * 
+   * @throws com.nonninz.robomodel.exceptions.StorageException
+   *           if the database can not be opened
+   */
+  StorageDatabase openDatabase(String name);
+
+  /**
+   * Deletes the database with the given name and its data
+   * 
+   * @return true if the database was deleted
+   */
+  boolean deleteDatabase(String name);
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2012 Francesco Donadon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nonninz.robomodel.storage;
+
+/**
+ * A compiled statement of a {@link StorageDatabase}. Parameters are numbered from 1 and keep their binding until
+ * they are bound again or cleared.
+ */
+public interface StorageStatement {
+  void bindNull(int index);
+
+  void bindLong(int index, long value);
+
+  void bindDouble(int index, double value);
+
+  void bindString(int index, String value);
+
+  void bindBlob(int index, byte[] value);
+
+  void clearBindings();
+
+  void execute();
+
+  /**
+   * @return the id of the inserted row, or -1 if no row was inserted
+   */
+  long executeInsert();
+
+  /**
+   * @return the first column of the first row returned by the statement
+   * @throws com.nonninz.robomodel.exceptions.NoResultException
+   *           if it returns no row
+   */
+  long simpleQueryForLong();
+
+  /**
+   * @return the first column of the first row returned by the statement
+   * @throws com.nonninz.robomodel.exceptions.NoResultException
+   *           if it returns no row
+   */
+  String simpleQueryForString();
+
+  void close();
+}
@@ -4,10 +4,14 @@ import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
 
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
 import android.test.AndroidTestCase;
 
+import com.nonninz.robomodel.storage.AndroidStorageProvider;
+import com.nonninz.robomodel.storage.Storage;
+import com.nonninz.robomodel.storage.StorageCursor;
+import com.nonninz.robomodel.storage.StorageDatabase;
+import com.nonninz.robomodel.storage.StorageProvider;
+
 public class DatabaseManagerTestCase extends AndroidTestCase {
 
     private final String TEST_DB_NAME = "DatabaseManagerTestCaseDB";
@@ -33,12 +37,12 @@ public class DatabaseManagerTestCase extends AndroidTestCase {
         fields.add(model.getClass().getDeclaredField("bowlFish"));
         fields.add(model.getClass().getDeclaredField("parent"));
 
-        SQLiteDatabase db = mDatabaseManager.openOrCreateDatabase(TEST_DB_NAME);
+        StorageDatabase db = mDatabaseManager.openOrCreateDatabase(TEST_DB_NAME);
         mDatabaseManager.createOrPopulateTable("Test", fields, db);
 
         // There should be a table "Test", created with correct SQL 
         String sql = null;
-        Cursor tablesCursor = db.rawQuery("SELECT * FROM SQLITE_MASTER", null);
+        StorageCursor tablesCursor = db.rawQuery("SELECT * FROM SQLITE_MASTER", null);
         while (tablesCursor.moveToNext()) {
             String tableName = tablesCursor.getString(tablesCursor.getColumnIndex("name"));
             if (tableName.equals("Test")) {
@@ -73,31 +77,72 @@ public class DatabaseManagerTestCase extends AndroidTestCase {
                         "doubleField REAL)", sql);
     }
 
+    public void testBinaryFieldType() throws NoSuchFieldException {
+        assertEquals("BLOB", DatabaseManager.getTypeForField(TestModel.class.getDeclaredField("binaryField")));
+        assertEquals("TEXT", DatabaseManager.getTypeForField(TestModel.class.getDeclaredField("listField")));
+    }
+
+    public void testOrdinalEnumFieldType() throws NoSuchFieldException {
+        assertEquals("INTEGER", DatabaseManager.getTypeForField(TestModel.class.getDeclaredField("ordinalEnum")));
+        assertEquals("TEXT", DatabaseManager.getTypeForField(TestModel.class.getDeclaredField("enumOne")));
+    }
+
     public void testDeleteAll() throws SecurityException, NoSuchFieldException {
-        SQLiteDatabase db = mDatabaseManager.openOrCreateDatabase(TEST_DB_NAME);
-        db.execSQL("CREATE TABLE Test (springField TEXT, _id integer primary key autoincrement)");
-        db.execSQL("INSERT INTO Test (springField) VALUES ('Test1')");
-        db.execSQL("INSERT INTO Test (springField) VALUES ('Test2')");
-        db.execSQL("INSERT INTO Test (springField) VALUES ('Test2')");
+        StorageDatabase db = mDatabaseManager.openOrCreateDatabase(TEST_DB_NAME);
+        db.execSQL("CREATE TABLE TestModel (springField TEXT, _id integer primary key autoincrement)");
+        db.execSQL("INSERT INTO TestModel (springField) VALUES ('Test1')");
+        db.execSQL("INSERT INTO TestModel (springField) VALUES ('Test2')");
+        db.execSQL("INSERT INTO TestModel (springField) VALUES ('Test2')");
 
-        Cursor beforeCursor = db.rawQuery("SELECT * FROM Test", null);
+        StorageCursor beforeCursor = db.rawQuery("SELECT * FROM TestModel", null);
         assertEquals(2, beforeCursor.getColumnCount());
 
-        mDatabaseManager.deleteAllRecords(TEST_DB_NAME, "Test");
+        assertEquals(3, mDatabaseManager.deleteCascade(TEST_DB_NAME, TestModel.class, null, null));
 
-        Cursor afterCursor = db.rawQuery("SELECT * FROM Test", null);
+        StorageCursor afterCursor = db.rawQuery("SELECT * FROM TestModel", null);
         assertEquals(0, afterCursor.getCount());
     }
 
     public void testDeleteRecord() {
-        SQLiteDatabase db = mDatabaseManager.openOrCreateDatabase(TEST_DB_NAME);
-        db.execSQL("CREATE TABLE Test (springField TEXT, _id integer primary key autoincrement)");
-        db.execSQL("INSERT INTO Test (springField) VALUES ('Test1')");
-        db.execSQL("INSERT INTO Test (springField) VALUES ('Test2')");
+        StorageDatabase db = mDatabaseManager.openOrCreateDatabase(TEST_DB_NAME);
+        db.execSQL("CREATE TABLE TestModel (springField TEXT, _id integer primary key autoincrement)");
+        db.execSQL("INSERT INTO TestModel (springField) VALUES ('Test1')");
+        db.execSQL("INSERT INTO TestModel (springField) VALUES ('Test2')");
 
-        mDatabaseManager.deleteRecord(TEST_DB_NAME, "Test", 1);
-        Cursor afterCursor = db.rawQuery("SELECT * FROM Test", null);
+        mDatabaseManager.deleteCascade(TEST_DB_NAME, TestModel.class, 1);
+        StorageCursor afterCursor = db.rawQuery("SELECT * FROM TestModel", null);
         assertEquals(1, afterCursor.getCount());
     }
 
+    public void testBuildQueryString() {
+        assertEquals("SELECT _id FROM Test WHERE a = ? ORDER BY b LIMIT 5", Storage.buildQueryString(false, "Test",
+                new String[] { "_id" }, "a = ?", null, null, "b", "5"));
+        assertEquals("SELECT DISTINCT * FROM Test GROUP BY a HAVING COUNT(*) > 1", Storage.buildQueryString(true,
+                "Test", null, null, "a", "COUNT(*) > 1", null, null));
+    }
+
+    public void testStorageProvider() {
+        final List<String> opened = new ArrayList<String>();
+        final StorageProvider android = new AndroidStorageProvider(getContext());
+        Storage.setProvider(new StorageProvider() {
+            @Override
+            public StorageDatabase openDatabase(String name) {
+                opened.add(name);
+                return android.openDatabase(name);
+            }
+
+            @Override
+            public boolean deleteDatabase(String name) {
+                return android.deleteDatabase(name);
+            }
+        });
+        try {
+            TestModel model = new TestModel(getContext());
+            model.save();
+            assertFalse(opened.isEmpty());
+            assertEquals(model.getDatabaseName(), opened.get(0));
+        } finally {
+            Storage.setProvider(null);
+        }
+    }
 }
@@ -0,0 +1,18 @@
+package com.nonninz.robomodel;
+
+import android.content.Context;
+
+import com.nonninz.robomodel.annotations.Database;
+
+@Database("events")
+public class EventTestModel extends RoboModel {
+
+    public String name;
+
+    public long timestamp;
+
+    EventTestModel(Context context) {
+        super(context);
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.nonninz.robomodel;
+
+import android.content.Context;
+
+import com.google.gson.annotations.Expose;
+import com.nonninz.robomodel.annotations.Lazy;
+
+public class LazyTestModel extends RoboModel {
+
+    @Expose
+    public String title = "Title";
+
+    @Expose
+    @Lazy
+    public String payload = "A very large payload";
+
+    LazyTestModel(Context context) {
+        super(context);
+    }
+
+}
@@ -1,14 +1,29 @@
 package com.nonninz.robomodel;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.test.AndroidTestCase;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import com.nonninz.robomodel.ChangeNotifier.RowChangeListener;
 import com.nonninz.robomodel.RoboManager;
 import com.nonninz.robomodel.TestModel.Answer;
 import com.nonninz.robomodel.exceptions.InstanceNotFoundException;
+import com.nonninz.robomodel.storage.Storage;
+import com.nonninz.robomodel.storage.StorageDatabase;
 
 public class ManagerTestCase extends AndroidTestCase {
     private RoboManager<TestModel> mManager;
@@ -20,6 +35,15 @@ public class ManagerTestCase extends AndroidTestCase {
         mManager = RoboManager.get(getContext(), TestModel.class);
 
         getContext().deleteDatabase(mManager.getDatabaseName());
+        getContext().deleteDatabase("events");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Storage.setPragmas("events");
+        RoboManager.setChangeNotificationWindow(ChangeNotifier.DEFAULT_WINDOW_MS);
+
+        super.tearDown();
     }
 
     public void testAllFindsAllInstances() {
@@ -142,6 +166,417 @@ public class ManagerTestCase extends AndroidTestCase {
         assertEquals(model.getId(), foundModels.get(0).getId());
     }
 
+    public void testQueryBuilder() {
+        for (int i = 0; i < 5; i++) {
+            TestModel model = mManager.create();
+            model.intField = i;
+            model.enumOne = i % 2 == 0 ? Answer.LIFE : Answer.EVERYTHING;
+            model.save();
+        }
+
+        List<TestModel> result = mManager.query().eq("enumOne", Answer.LIFE).gt("intField", 0)
+                        .orderByDescending("intField").limit(1).list();
+
+        assertEquals(1, result.size());
+        assertEquals(4, result.get(0).intField);
+    }
+
+    public void testCompiledQueryRebindsValues() {
+        for (int i = 0; i < 3; i++) {
+            TestModel model = mManager.create();
+            model.intField = i;
+            model.save();
+        }
+
+        CompiledQuery<TestModel> query = mManager.query().le("intField", 0).compile();
+
+        assertEquals(1, query.list(0).size());
+        assertEquals(3, query.list(2).size());
+    }
+
+    public void testQueryBuilderChecksColumns() {
+        try {
+            mManager.query().eq("noSuchField", 1);
+            fail("Unknown columns should be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            mManager.query().eq("intField", "fish");
+            fail("Values of the wrong type should be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    public void testAggregates() {
+        for (int i = 1; i <= 4; i++) {
+            TestModel model = mManager.create();
+            model.intField = i;
+            model.enumOne = i % 2 == 0 ? Answer.LIFE : Answer.EVERYTHING;
+            model.save();
+        }
+
+        assertEquals(4, mManager.count(null, null));
+        assertEquals(10.0, mManager.sum("intField", null, null), 0);
+        assertEquals(2.5, mManager.avg("intField", null, null), 0);
+        assertEquals(1.0, mManager.min("intField", null, null), 0);
+        assertEquals(4.0, mManager.max("intField", "intField < ?", new String[] { "5" }), 0);
+        assertTrue(Double.isNaN(mManager.max("intField", "intField > 4", null)));
+
+        Map<String, Double> sums = mManager.aggregateBy(Aggregate.SUM, "intField", "enumOne", null, null);
+        assertEquals(2, sums.size());
+        assertEquals(4.0, sums.get(Answer.EVERYTHING.name()), 0);
+        assertEquals(6.0, sums.get(Answer.LIFE.name()), 0);
+    }
+
+    public void testSumLongIsExact() {
+        for (long value : new long[] { (1L << 53) + 1, 1 }) {
+            TestModel model = mManager.create();
+            model.longField = value;
+            model.save();
+        }
+
+        assertEquals((1L << 53) + 2, mManager.sumLong("longField", null, null));
+        assertEquals(0, mManager.sumLong("longField", "longField > 0 AND longField < 0", null));
+    }
+
+    public void testQueryCacheReturnsCachedModels() {
+        mManager.enableQueryCache(10, 100);
+        mManager.create().save();
+        mManager.create().save();
+
+        List<TestModel> first = mManager.all();
+        List<TestModel> second = mManager.all();
+        assertEquals(2, second.size());
+        assertSame(first.get(0), second.get(0));
+    }
+
+    public void testQueryCacheInvalidatedByWrites() {
+        mManager.enableQueryCache(10, 100);
+        mManager.create().save();
+        assertEquals(1, mManager.all().size());
+
+        mManager.create().save();
+        assertEquals(2, mManager.all().size());
+
+        mManager.all().get(0).delete();
+        assertEquals(1, mManager.all().size());
+
+        mManager.deleteAll();
+        assertEquals(0, mManager.all().size());
+    }
+
+    public void testObserveCoalescesWrites() throws InterruptedException {
+        final AtomicInteger notifications = new AtomicInteger();
+        final Set<Long> notifiedIds = new HashSet<Long>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        RowChangeListener listener = new RowChangeListener() {
+            @Override
+            public void onTableChanged(String tableName) {
+                fail("Row ids should be delivered");
+            }
+
+            @Override
+            public void onRowsChanged(String tableName, Set<Long> rowIds) {
+                assertEquals("TestModel", tableName);
+                notifications.incrementAndGet();
+                notifiedIds.addAll(rowIds);
+                latch.countDown();
+            }
+        };
+
+        RoboManager.setChangeNotificationWindow(500);
+        mManager.observe(listener);
+        try {
+            Set<Long> savedIds = new HashSet<Long>();
+            for (int i = 0; i < 3; i++) {
+                TestModel model = mManager.create();
+                model.save();
+                savedIds.add(model.getId());
+            }
+
+            // One notification with all the rows leaves none of them pending for another one
+            assertTrue(latch.await(2, TimeUnit.SECONDS));
+            assertEquals(1, notifications.get());
+            assertEquals(savedIds, notifiedIds);
+        } finally {
+            mManager.unobserve(listener);
+        }
+    }
+
+    public void testLiveQueryReloadsOnlyChangedRows() throws InterruptedException {
+        TestModel untouched = mManager.create();
+        untouched.save();
+        TestModel changed = mManager.create();
+        changed.save();
+
+        final CountDownLatch latch = new CountDownLatch(2);
+        LiveQuery<TestModel> live = mManager.live(null, null, null);
+        live.start(new LiveQuery.Listener<TestModel>() {
+            @Override
+            public void onResultsChanged(List<TestModel> results) {
+                latch.countDown();
+            }
+        }, null);
+
+        try {
+            List<TestModel> before = live.getResults();
+            assertEquals(2, before.size());
+
+            changed.springField = "Changed";
+            changed.save();
+            assertTrue(latch.await(2, TimeUnit.SECONDS));
+
+            List<TestModel> after = live.getResults();
+            assertEquals(2, after.size());
+            assertSame(before.get(0), after.get(0));
+            assertNotSame(before.get(1), after.get(1));
+            assertEquals("Changed", after.get(1).springField);
+        } finally {
+            live.stop();
+        }
+    }
+
+    public void testImportJson() throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 1001; i++) {
+            json.append(i > 0 ? "," : "").append("{\"intField\": ").append(i).append("}");
+        }
+        json.append("]");
+
+        assertEquals(1001, mManager.importJson(new StringReader(json.toString())));
+        assertEquals(1001, mManager.all().size());
+        assertEquals(1, mManager.where("intField = 1000").size());
+    }
+
+    public void testExportJson() throws IOException {
+        TestModel first = mManager.create();
+        first.intField = 1;
+        first.save();
+        TestModel second = mManager.create();
+        second.intField = 2;
+        second.springField = null;
+        second.enumOne = Answer.EVERYTHING;
+        second.save();
+
+        StringWriter out = new StringWriter();
+        assertEquals(2, mManager.exportJson(out, null, null));
+
+        JsonParser parser = new JsonParser();
+        JsonArray expected = new JsonArray();
+        expected.add(parser.parse(first.toJson()));
+        expected.add(parser.parse(second.toJson()));
+        assertEquals(expected, parser.parse(out.toString()));
+    }
+
+    public void testExportJsonWithSelection() throws IOException {
+        TestModel model = mManager.create();
+        model.save();
+
+        StringWriter out = new StringWriter();
+        assertEquals(0, mManager.exportJson(out, "intField = ?", new String[] { "0" }));
+        assertEquals("[]", out.toString());
+    }
+
+    public void testUpsertAll() throws InstanceNotFoundException {
+        TestModel stored = mManager.create();
+        stored.intField = 1;
+        stored.save();
+
+        TestModel update = mManager.create();
+        update.intField = 1;
+        update.longField = 2;
+        TestModel insert = mManager.create();
+        insert.intField = 2;
+        mManager.upsertAll(Arrays.asList(update, insert), "intField");
+
+        assertEquals(2, mManager.all().size());
+        assertEquals(stored.getId(), update.getId());
+        assertEquals(2, mManager.find(stored.getId()).longField);
+        assertTrue(insert.isSaved());
+    }
+
+    public void testUpsertAllWithUnknownColumn() {
+        try {
+            mManager.upsertAll(Arrays.asList(mManager.create()), "noSuchField");
+            fail("Upserting on a missing column should fail");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    public void testMetrics() {
+        RoboMetrics metrics = new RoboMetrics();
+        RoboManager.setMetricsListener(metrics);
+        try {
+            mManager.enableQueryCache(10, 100);
+            mManager.create().save();
+            mManager.create().save();
+            assertEquals(2, mManager.all().size());
+            assertEquals(2, mManager.all().size());
+            mManager.deleteAll();
+
+            assertEquals(2, metrics.getTimings(RoboMetricsListener.Operation.SAVE).getCount());
+            assertEquals(1, metrics.getTimings(RoboMetricsListener.Operation.DELETE).getCount());
+            // The id query, then one for the rows of both models
+            assertEquals(2, metrics.getTimings(RoboMetricsListener.Operation.QUERY).getCount());
+            assertEquals(1, metrics.getTimings(RoboMetricsListener.Operation.HYDRATE).getCount());
+            assertEquals(4, metrics.getRowsRead());
+            assertTrue(metrics.getJsonDecoded() > 0);
+            assertEquals(1, metrics.getCacheHits());
+            assertEquals(1, metrics.getCacheMisses());
+        } finally {
+            RoboManager.setMetricsListener(null);
+        }
+    }
+
+    public void testMetricsHistogram() {
+        RoboMetrics metrics = new RoboMetrics();
+        for (int i = 1; i <= 100; i++) {
+            metrics.onOperation(RoboMetricsListener.Operation.QUERY, "TestModel", i * 1000);
+        }
+
+        RoboMetrics.Histogram histogram = metrics.getTimings(RoboMetricsListener.Operation.QUERY);
+        assertEquals(100, histogram.getCount());
+        assertEquals(100000, histogram.getMaxNanos());
+        assertEquals(50500, histogram.getMeanNanos());
+        // Within a factor of two of the exact percentiles
+        long median = histogram.getPercentileNanos(0.5);
+        assertTrue(median >= 50000 && median < 100000);
+        assertEquals(100000, histogram.getPercentileNanos(1));
+
+        metrics.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(0.5));
+    }
+
+    public void testWhereLoadsRowsInOrder() {
+        // More models than are loaded by a single query
+        for (int i = 0; i < 501; i++) {
+            TestModel model = mManager.create();
+            model.intField = i;
+            model.save();
+        }
+
+        List<TestModel> models = mManager.where(null, null, null, null, "intField DESC");
+        assertEquals(501, models.size());
+        for (int i = 0; i < 501; i++) {
+            assertEquals(500 - i, models.get(i).intField);
+            assertTrue(models.get(i).isSaved());
+        }
+    }
+
+    public void testParallelLoading() {
+        for (int i = 0; i < 200; i++) {
+            TestModel model = mManager.create();
+            model.intField = i;
+            model.save();
+        }
+
+        mManager.enableParallelLoading(100, null);
+        try {
+            List<TestModel> models = mManager.where(null, null, null, null, "intField DESC");
+            assertEquals(200, models.size());
+            for (int i = 0; i < 200; i++) {
+                TestModel model = models.get(i);
+                assertEquals(199 - i, model.intField);
+                assertEquals(new TestModel(getContext()).springField, model.springField);
+                assertEquals(Arrays.asList(45.4642, 9.19), model.binaryField);
+            }
+        } finally {
+            mManager.disableParallelLoading();
+        }
+    }
+
+    public void testSlowQueryLog() {
+        final AtomicInteger notified = new AtomicInteger();
+        SlowQueryLog log = new SlowQueryLog(0, 2);
+        log.setListener(new SlowQueryLog.Listener() {
+            @Override
+            public void onSlowQuery(SlowQuery query) {
+                notified.incrementAndGet();
+            }
+        });
+        mManager.create().save();
+        RoboManager.setSlowQueryLog(log);
+        try {
+            for (int i = 0; i < 3; i++) {
+                mManager.where("parent = ?", new String[] { "1" });
+            }
+        } finally {
+            RoboManager.setSlowQueryLog(null);
+        }
+
+        assertEquals(3, log.getCount());
+        assertEquals(3, notified.get());
+        List<SlowQuery> records = log.getRecords();
+        assertEquals(2, records.size());
+        SlowQuery query = records.get(1);
+        assertEquals("TestModel", query.getTableName());
+        assertEquals("1", query.getSelectionArgs()[0]);
+        assertFalse(query.getPlan().isEmpty());
+        if (query.isFullScan()) {
+            assertEquals(Arrays.asList("parent"), query.getScannedForeignKeys());
+        }
+
+        log.clear();
+        assertTrue(log.getRecords().isEmpty());
+    }
+
+    public void testSearch() {
+        RoboManager<NoteTestModel> notes = RoboManager.get(getContext(), NoteTestModel.class);
+        NoteTestModel pie = notes.create();
+        pie.title = "Apple pie";
+        pie.body = "Slice the apples, then bake the apple filling";
+        pie.save();
+        NoteTestModel bread = notes.create();
+        bread.title = "Banana bread";
+        bread.body = "Mash the bananas";
+        bread.save();
+        NoteTestModel juice = notes.create();
+        juice.title = "Juice";
+        juice.body = "One apple";
+        juice.save();
+
+        List<NoteTestModel> found = notes.search("apple*", 10);
+        assertEquals(2, found.size());
+        assertEquals(pie.getId(), found.get(0).getId());
+        assertEquals(juice.getId(), found.get(1).getId());
+        assertEquals(1, notes.search("apple*", 1).size());
+
+        juice.body = "Apple, apple, apple and apple";
+        juice.save();
+        assertEquals(juice.getId(), notes.search("apple", 10).get(0).getId());
+        pie.delete();
+        assertEquals(1, notes.search("apple", 10).size());
+        assertEquals(bread.getId(), notes.search("banana", 10).get(0).getId());
+    }
+
+    public void testDatabaseRouting() throws InstanceNotFoundException {
+        Storage.setPragmas("events", "user_version = 3", "foreign_keys = ON");
+        RoboManager<EventTestModel> events = RoboManager.get(getContext(), EventTestModel.class);
+        assertEquals("events", events.getDatabaseName());
+        assertEquals(getContext().getPackageName(), mManager.getDatabaseName());
+
+        EventTestModel event = events.create();
+        event.name = "click";
+        event.save();
+        mManager.create().save();
+        assertEquals("click", events.find(event.getId()).name);
+        assertEquals(1, events.count(null, null));
+        assertEquals(1, mManager.count(null, null));
+
+        StorageDatabase db = Storage.getProvider(getContext()).openDatabase("events");
+        try {
+            assertEquals(3, Storage.longForQuery(db, "PRAGMA user_version", null));
+            // Not stored in the file: still set because the connection is kept open
+            assertEquals(1, Storage.longForQuery(db, "PRAGMA foreign_keys", null));
+        } finally {
+            db.close();
+        }
+    }
+
     public void testFromJson() {
         TestModel expected = new TestModel(mContext);
         Gson gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
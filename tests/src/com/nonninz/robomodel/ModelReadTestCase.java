@@ -1,5 +1,7 @@
 package com.nonninz.robomodel;
 
+import java.util.Arrays;
+
 import android.content.Context;
 import android.test.AndroidTestCase;
 
@@ -42,6 +44,10 @@ public class ModelReadTestCase extends AndroidTestCase {
         assertEquals(Answer.EVERYTHING, mModel.enumThree);
     }
 
+    public void testOrdinalEnumSavedCorrectly() {
+        assertEquals(Answer.UNIVERSE, mModel.ordinalEnum);
+    }
+
     public void testFloatSavedCorrectly() {
         assertEquals(42.42f, mModel.floatField);
     }
@@ -62,4 +68,19 @@ public class ModelReadTestCase extends AndroidTestCase {
         assertEquals("BTW thanks for all the fish!", mModel.springField);
     }
 
+    public void testJsonFieldSavedCorrectly() {
+        // Elements are decoded with the generic type of the field, not as raw Doubles
+        assertEquals(Arrays.asList(4, 2), mModel.listField);
+    }
+
+    public void testDeferredFieldSavedCorrectly() {
+        assertFalse(mModel.deferredField.isDecoded());
+        assertEquals(Arrays.asList("so", "long"), mModel.deferredField.get());
+        assertTrue(mModel.deferredField.isDecoded());
+    }
+
+    public void testBinaryFieldSavedCorrectly() {
+        assertEquals(Arrays.asList(45.4642, 9.19), mModel.binaryField);
+    }
+
 }
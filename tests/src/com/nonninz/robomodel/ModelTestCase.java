@@ -1,5 +1,8 @@
 package com.nonninz.robomodel;
 
+import java.io.IOException;
+import java.io.StringReader;
+
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
@@ -78,6 +81,116 @@ public class ModelTestCase extends AndroidTestCase {
         }
     }
 
+    public void testSaveTreeSkipsUnchangedChildren() throws InstanceNotFoundException {
+        RoboManager<ParentTestModel> parentManager = RoboManager.get(getContext(),
+                        ParentTestModel.class);
+        ParentTestModel parent = parentManager.create();
+        TestModel unchanged = mManager.create();
+        TestModel changed = mManager.create();
+        parent.testModels.add(unchanged);
+        parent.testModels.add(changed);
+        parent.save();
+
+        // Written behind the back of the instances in the tree
+        TestModel copy = mManager.find(unchanged.getId());
+        copy.intField = 1;
+        copy.save();
+        copy = mManager.find(changed.getId());
+        copy.intField = 1;
+        copy.save();
+
+        changed.intField = 2;
+        parent.save();
+
+        assertEquals(1, mManager.find(unchanged.getId()).intField);
+        assertEquals(2, mManager.find(changed.getId()).intField);
+    }
+
+    public void testSaveReusesValues() throws InstanceNotFoundException {
+        TestModel model = mManager.create();
+        model.save();
+        TypedContentValues saved = model.mSavedValues;
+        assertEquals(Long.valueOf(model.intField), saved.getAsLong("intField"));
+        assertFalse(saved.containsKey("testModels"));
+
+        model.intField = 42;
+        model.save();
+        assertSame(saved, model.mSavedValues);
+        assertEquals(Long.valueOf(42), saved.getAsLong("intField"));
+        assertEquals(model.getContentValues(), saved);
+        assertEquals(42, mManager.find(model.getId()).intField);
+    }
+
+    public void testSaveGraph() throws InstanceNotFoundException {
+        RoboManager<NodeTestModel> nodeManager = RoboManager.get(getContext(), NodeTestModel.class);
+        NodeTestModel root = nodeManager.create();
+        NodeTestModel child = nodeManager.create();
+        NodeTestModel grandChild = nodeManager.create();
+        root.children.add(child);
+        child.children.add(grandChild);
+
+        root.save();
+
+        assertEquals(3, nodeManager.all().size());
+        assertEquals(1, nodeManager.find(root.getId()).children.size());
+        assertEquals(1, nodeManager.find(child.getId()).children.size());
+        assertEquals(grandChild.getId(), nodeManager.find(child.getId()).children.get(0).getId());
+    }
+
+    public void testSaveGraphWithCycle() {
+        RoboManager<NodeTestModel> nodeManager = RoboManager.get(getContext(), NodeTestModel.class);
+        NodeTestModel first = nodeManager.create();
+        NodeTestModel second = nodeManager.create();
+        first.children.add(second);
+        second.children.add(first);
+
+        try {
+            first.save();
+            fail("Saving a cycle should fail");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertFalse(first.isSaved());
+        assertEquals(0, nodeManager.all().size());
+    }
+
+    public void testDeleteCascades() {
+        RoboManager<ParentTestModel> parentManager = RoboManager.get(getContext(),
+                        ParentTestModel.class);
+        ParentTestModel deleted = parentManager.create();
+        ParentTestModel kept = parentManager.create();
+        for (int i = 0; i < 3; i++) {
+            deleted.testModels.add(mManager.create());
+            kept.testModels.add(mManager.create());
+        }
+        deleted.save();
+        kept.save();
+
+        deleted.delete();
+
+        assertEquals(1, parentManager.all().size());
+        assertEquals(3, mManager.all().size());
+        assertEquals(3, mManager.where("parent = " + kept.getId()).size());
+    }
+
+    public void testDeleteCascadesThroughLevels() {
+        RoboManager<NodeTestModel> nodeManager = RoboManager.get(getContext(), NodeTestModel.class);
+        NodeTestModel root = nodeManager.create();
+        root.name = "root";
+        NodeTestModel node = root;
+        for (int i = 0; i < 4; i++) {
+            NodeTestModel child = nodeManager.create();
+            node.children.add(child);
+            node = child;
+        }
+        NodeTestModel other = nodeManager.create();
+        root.save();
+        other.save();
+
+        assertEquals(1, nodeManager.delete("name = ?", new String[] { "root" }));
+        assertEquals(1, nodeManager.all().size());
+    }
+
     public void testLoadTree() throws InstanceNotFoundException {
         RoboManager<ParentTestModel> parentManager = RoboManager.get(getContext(),
                         ParentTestModel.class);
@@ -114,6 +227,32 @@ public class ModelTestCase extends AndroidTestCase {
         assertEquals("Modified", model.springField);
     }
 
+    public void testLazyFieldNotLoaded() throws InstanceNotFoundException {
+        RoboManager<LazyTestModel> lazyManager = RoboManager.get(getContext(), LazyTestModel.class);
+        lazyManager.create().save();
+
+        LazyTestModel loaded = lazyManager.last();
+        assertEquals("Title", loaded.title);
+        assertNull(loaded.payload);
+
+        loaded.loadLazy("payload");
+        assertEquals("A very large payload", loaded.payload);
+    }
+
+    public void testSaveKeepsUnloadedLazyField() throws InstanceNotFoundException {
+        RoboManager<LazyTestModel> lazyManager = RoboManager.get(getContext(), LazyTestModel.class);
+        lazyManager.create().save();
+
+        LazyTestModel loaded = lazyManager.last();
+        loaded.title = "Modified";
+        loaded.save();
+
+        LazyTestModel reloaded = lazyManager.last();
+        reloaded.loadLazy();
+        assertEquals("Modified", reloaded.title);
+        assertEquals("A very large payload", reloaded.payload);
+    }
+
     public void testToJson() {
         TestModel model = mManager.create();
         assertEquals(String.class, model.toJson().getClass());
@@ -161,6 +300,22 @@ public class ModelTestCase extends AndroidTestCase {
         assertEquals(53252, saved.testModels.get(0).intField);
     }
 
+    public void testImportTreeFromJson() throws IOException {
+        String json = "[{" +
+                        "test: \"11\"," +
+                        "testModels:" +
+                        "[{springField: \"Hello1212\"}, {springField: \"Hello1313\"}]" +
+                        "}]";
+
+        RoboManager<ParentTestModel> parentManager = RoboManager.get(getContext(),
+                        ParentTestModel.class);
+        assertEquals(1, parentManager.importJson(new StringReader(json)));
+
+        assertEquals(1, parentManager.all().size());
+        assertEquals(2, mManager.all().size());
+        assertEquals(2, parentManager.all().get(0).testModels.size());
+    }
+
     public void testCreateMultiLevelTreeFromJson() throws InstanceNotFoundException {
         String json = "{" +
                         "parentTestModels:" +
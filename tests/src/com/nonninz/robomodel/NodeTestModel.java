@@ -0,0 +1,28 @@
+package com.nonninz.robomodel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+
+import com.google.gson.annotations.Expose;
+import com.nonninz.robomodel.annotations.BelongsTo;
+import com.nonninz.robomodel.annotations.HasMany;
+
+public class NodeTestModel extends RoboModel {
+
+    @Expose
+    public String name = "node";
+
+    @BelongsTo(NodeTestModel.class)
+    public NodeTestModel parent;
+
+    @Expose
+    @HasMany(NodeTestModel.class)
+    public List<NodeTestModel> children = new ArrayList<NodeTestModel>();
+
+    NodeTestModel(Context context) {
+        super(context);
+    }
+
+}
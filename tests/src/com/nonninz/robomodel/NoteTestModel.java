@@ -0,0 +1,25 @@
+package com.nonninz.robomodel;
+
+import android.content.Context;
+
+import com.google.gson.annotations.Expose;
+import com.nonninz.robomodel.annotations.FullText;
+
+public class NoteTestModel extends RoboModel {
+
+    @Expose
+    @FullText
+    public String title;
+
+    @Expose
+    @FullText
+    public String body;
+
+    @Expose
+    public int pages;
+
+    NoteTestModel(Context context) {
+        super(context);
+    }
+
+}
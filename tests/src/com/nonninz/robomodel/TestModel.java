@@ -1,9 +1,15 @@
 package com.nonninz.robomodel;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import android.content.Context;
 
 import com.google.gson.annotations.Expose;
 import com.nonninz.robomodel.annotations.BelongsTo;
+import com.nonninz.robomodel.annotations.Stored;
+import com.nonninz.robomodel.annotations.Stored.Codec;
 
 public class TestModel extends RoboModel {
 
@@ -41,4 +47,12 @@ public class TestModel extends RoboModel {
     public Answer enumTwo = Answer.UNIVERSE;
     @Expose
     public Answer enumThree = Answer.EVERYTHING;
+    @Expose
+    @Stored(codec = Codec.ORDINAL)
+    public Answer ordinalEnum = Answer.UNIVERSE;
+    @Expose
+    public List<Integer> listField = new ArrayList<Integer>(Arrays.asList(4, 2));
+    @Stored(codec = Codec.BINARY)
+    public List<Double> binaryField = new ArrayList<Double>(Arrays.asList(45.4642, 9.19));
+    public Deferred<List<String>> deferredField = new Deferred<List<String>>(Arrays.asList("so", "long"));
 }